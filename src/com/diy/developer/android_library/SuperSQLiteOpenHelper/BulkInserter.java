@@ -0,0 +1,700 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/*	Class: BulkInserter
+ * 	Description: This class inserts many rows into a single table through
+ * 		one compiled INSERT statement.  The statement and the mapping from
+ * 		column name to bind index are built once when the inserter is
+ * 		created.  Each row is bound by position, inserted, and the bindings
+ * 		are cleared so any column that is not bound for the next row is
+ * 		inserted as null.
+ *
+ * 		If a chunk size is given, the inserter runs its own transactions
+ * 		and commits every chunkSize rows.  With a chunk size of 0, every
+ * 		row is inserted in whatever transaction the caller already has
+ * 		open (this is how the imports keep their all-or-nothing rollback).
+ *
+ * 		With a merge mode (see SuperSQLiteOpenHelper.MERGE_MODE_*), the
+ * 		table's keys are read once: a bound rowid, the primary key and each
+ * 		UNIQUE index.  Before each row is inserted, a compiled lookup per
+ * 		key checks whether an existing row already has it.  A row that
+ * 		collides is skipped, replaced (INSERT OR REPLACE) or updated on the
+ * 		key it collided on; any other row goes through the plain INSERT,
+ * 		so NOT NULL, CHECK and foreign key errors are thrown as without a
+ * 		merge mode.  Every row is counted exactly once as inserted, updated
+ * 		or skipped.
+ *
+ * 		The inserter is not thread safe and must be closed when done.
+ */
+final class BulkInserter {
+	private final SQLiteDatabase db;
+	private final String table;
+	private final String[] columns;
+	private final Map<String, Integer> bindIndexes;
+	private final SQLiteStatement statement;
+	private final int chunkSize;
+
+	// Merging (values and present are null without a merge mode)
+	private final int mergeMode;
+	private final Object[] values;
+	private final BitSet present;
+	private final SQLiteStatement replaceStatement;
+	// bind indexes of each key a row can collide on, and the queries that
+	//	look for an existing row with the same key (compiled on first use)
+	private final List<int[]> uniqueKeys;
+	private final SQLiteStatement[] keyQueries;
+	// UPDATE statements by the key they match on and the columns they update
+	private final Map<String, SQLiteStatement> updateStatements = new HashMap<String, SQLiteStatement>();
+
+	private boolean inChunk = false;
+	private int rowsInChunk = 0;
+	private int insertedInChunk = 0;
+	private int updatedInChunk = 0;
+	private int skippedInChunk = 0;
+	private long rowsInserted = 0;
+	private long rowsUpdated = 0;
+	private long rowsSkipped = 0;
+
+
+	/*	Function: BulkInserter (Constructor)
+	 * 	Description: Compiles the INSERT statement for the given table and
+	 * 		columns.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database to insert into
+	 * 		table (String)		- the table to insert into
+	 * 		columns (String[])	- the columns to insert, in bind order
+	 * 		chunkSize (int)		- rows per transaction (0 to use the caller's)
+	 * 	Output: The new object
+	 * 	Throws: SQLException if the statement could not be compiled
+	 */
+	BulkInserter(SQLiteDatabase db, String table, String[] columns, int chunkSize) throws SQLException{
+		this( db, table, columns, chunkSize, SuperSQLiteOpenHelper.MERGE_MODE_NONE );
+	}
+
+	/*	Function: BulkInserter (Constructor)
+	 * 	Description: Compiles the statements for the given table, columns and
+	 * 		merge mode.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database to insert into
+	 * 		table (String)		- the table to insert into
+	 * 		columns (String[])	- the columns to insert, in bind order
+	 * 		chunkSize (int)		- rows per transaction (0 to use the caller's)
+	 * 		mergeMode (int)		- what to do with rows that collide
+	 * 								(SuperSQLiteOpenHelper.MERGE_MODE_*)
+	 * 	Output: The new object
+	 * 	Throws: SQLException if a statement could not be compiled
+	 * 		IllegalArgumentException if the merge mode is not valid
+	 */
+	BulkInserter(SQLiteDatabase db, String table, String[] columns, int chunkSize, int mergeMode) throws SQLException{
+		this.db = db;
+		this.table = table;
+		this.columns = columns;
+		this.chunkSize = chunkSize;
+		this.mergeMode = mergeMode;
+		this.bindIndexes = new HashMap<String, Integer>( columns.length * 2 );
+		for( int x = 0; x<columns.length; ++x){
+			bindIndexes.put( columns[x], x+1 );
+		}
+
+		switch( mergeMode ){
+		case SuperSQLiteOpenHelper.MERGE_MODE_NONE:
+			this.statement = db.compileStatement( buildInsertSQL(table, columns, null) );
+			this.values = null;
+			this.present = null;
+			this.replaceStatement = null;
+			this.uniqueKeys = null;
+			this.keyQueries = null;
+			return;
+		case SuperSQLiteOpenHelper.MERGE_MODE_IGNORE:
+		case SuperSQLiteOpenHelper.MERGE_MODE_REPLACE:
+		case SuperSQLiteOpenHelper.MERGE_MODE_UPSERT:
+			break;
+		default:
+			throw new IllegalArgumentException( "Unknown merge mode " + mergeMode );
+		}
+
+		this.values = new Object[ columns.length ];
+		this.present = new BitSet( columns.length );
+		this.uniqueKeys = getUniqueKeys();
+		this.keyQueries = new SQLiteStatement[ uniqueKeys.size() ];
+		this.statement = db.compileStatement( buildInsertSQL(table, columns, null) );
+		if( mergeMode == SuperSQLiteOpenHelper.MERGE_MODE_REPLACE ){
+			try{
+				this.replaceStatement = db.compileStatement( buildInsertSQL(table, columns, "OR REPLACE") );
+			}catch( SQLException e ){
+				statement.close();
+				throw e;
+			}
+		}else{
+			this.replaceStatement = null;
+		}
+	}
+
+	/*	Function: buildInsertSQL
+	 * 	Description: Builds the parameterized INSERT statement for a table.
+	 * 	Inputs:
+	 * 		table (String)		- the table to insert into
+	 * 		columns (String[])	- the columns to insert, in bind order
+	 * 		conflict (String)	- "OR REPLACE", "OR IGNORE", etc. (null for none)
+	 * 	Output: String
+	 * 		The SQL statement
+	 * 	Throws: None
+	 */
+	static String buildInsertSQL( String table, String[] columns, String conflict ){
+		String insert = (conflict == null)? "INSERT INTO " : "INSERT " + conflict + " INTO ";
+
+		if( columns.length == 0 )
+			return insert + table + " DEFAULT VALUES";
+
+		StringBuilder sql = new StringBuilder( 32 + columns.length * 16 );
+		sql.append( insert ).append( table ).append( " (" );
+		for( int x = 0; x<columns.length; ++x){
+			if( x > 0 )
+				sql.append( ',' );
+			sql.append( columns[x] );
+		}
+		sql.append( ") VALUES (" );
+		for( int x = 0; x<columns.length; ++x){
+			sql.append( (x > 0)? ",?" : "?" );
+		}
+		return sql.append( ')' ).toString();
+	}
+
+	// Returns the table this inserter fills
+	String getTable(){
+		return table;
+	}
+
+	// Returns the columns this inserter binds, in bind order
+	String[] getColumns(){
+		return columns;
+	}
+
+	// Returns the rows inserted in the current, uncommitted chunk
+	int getRowsInChunk(){
+		return rowsInChunk;
+	}
+
+	// Returns the total rows inserted (not ignored) by this inserter
+	long getRowsInserted(){
+		return rowsInserted;
+	}
+
+	// Returns the total rows that replaced or updated an existing row
+	long getRowsUpdated(){
+		return rowsUpdated;
+	}
+
+	// Returns the total rows that were not written (ignored on a conflict)
+	long getRowsSkipped(){
+		return rowsSkipped;
+	}
+
+	/*	Function: getBindIndex
+	 * 	Description: Gets the bind index of a column.
+	 * 	Inputs:
+	 * 		column (String)	- the column name
+	 * 	Output: int
+	 * 		The 1-based bind index
+	 * 		0 if the column is not part of the statement
+	 * 	Throws: None
+	 */
+	int getBindIndex( String column ){
+		Integer index = bindIndexes.get( column );
+		return (index == null)? 0 : index;
+	}
+
+	// Bind a value to the current row by bind index
+	void bindNull( int index ){
+		statement.bindNull( index );
+		keep( index, null );
+	}
+	void bindLong( int index, long value ){
+		statement.bindLong( index, value );
+		if( values != null )
+			keep( index, value );
+	}
+	void bindDouble( int index, double value ){
+		statement.bindDouble( index, value );
+		if( values != null )
+			keep( index, value );
+	}
+	void bindString( int index, String value ){
+		if( value == null )
+			statement.bindNull( index );
+		else
+			statement.bindString( index, value );
+		keep( index, value );
+	}
+	void bindBlob( int index, byte[] value ){
+		if( value == null )
+			statement.bindNull( index );
+		else
+			statement.bindBlob( index, value );
+		keep( index, value );
+	}
+
+	/*	Function: bindValue
+	 * 	Description: Binds a value as stored in ContentValues by its type.
+	 * 	Inputs:
+	 * 		index (int)		- the bind index
+	 * 		value (Object)	- the value (String, number, Boolean, byte[] or null)
+	 * 	Output: None
+	 * 	Throws: IllegalArgumentException if the type cannot be stored
+	 */
+	void bindValue( int index, Object value ){
+		bindValue( statement, index, value );
+		keep( index, value );
+	}
+
+	// binds a value to a statement by its type
+	private static void bindValue( SQLiteStatement target, int index, Object value ){
+		if( value == null ){
+			target.bindNull( index );
+		}else if( value instanceof String ){
+			target.bindString( index, (String) value );
+		}else if( value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte ){
+			target.bindLong( index, ((Number) value).longValue() );
+		}else if( value instanceof Double || value instanceof Float ){
+			target.bindDouble( index, ((Number) value).doubleValue() );
+		}else if( value instanceof Boolean ){
+			target.bindLong( index, ((Boolean) value)? 1 : 0 );
+		}else if( value instanceof byte[] ){
+			target.bindBlob( index, (byte[]) value );
+		}else{
+			throw new IllegalArgumentException( "Cannot bind " + value.getClass().getName() );
+		}
+	}
+
+	// keeps a bound value for a merge
+	private void keep( int index, Object value ){
+		if( values != null ){
+			values[index-1] = value;
+			present.set( index-1 );
+		}
+	}
+
+	/*	Function: insert
+	 * 	Description: Inserts the currently bound row and clears the bindings
+	 * 		for the next one.  If this inserter manages its own transactions,
+	 * 		a new one is started with the first row of each chunk and
+	 * 		committed once the chunk is full.  With a merge mode, a row that
+	 * 		collides with an existing row's key is ignored, replaced or
+	 * 		updated instead.
+	 * 	Inputs: None
+	 * 	Output: long
+	 * 		The row ID of the inserted row
+	 * 		-1 if no row was inserted (skipped, replaced or updated)
+	 * 	Throws: SQLException if the row could not be inserted
+	 */
+	long insert() throws SQLException{
+		long rval;
+		boolean updated = false;
+		int collided;
+
+		if( chunkSize > 0 && !inChunk ){
+			db.beginTransaction();
+			inChunk = true;
+		}
+
+		try{
+			collided = (values == null)? -1 : findCollision();
+			if( collided < 0 ){
+				rval = statement.executeInsert();
+			}else{
+				rval = -1;
+				updated = merge( collided );
+			}
+		}finally{
+			statement.clearBindings();
+			if( values != null ){
+				Arrays.fill( values, null );
+				present.clear();
+			}
+		}
+
+		if( rval != -1 ){
+			++rowsInserted;
+			if( inChunk )
+				++insertedInChunk;
+		}else if( updated ){
+			++rowsUpdated;
+			if( inChunk )
+				++updatedInChunk;
+		}else{
+			++rowsSkipped;
+			if( inChunk )
+				++skippedInChunk;
+		}
+
+		if( chunkSize > 0 && ++rowsInChunk >= chunkSize )
+			commitChunk();
+
+		return rval;
+	}
+
+	/*	Function: merge
+	 * 	Description: Merges the kept row into the row it collided with.
+	 * 	Inputs:
+	 * 		key (int)	- the key it collided on (see findCollision)
+	 * 	Output: boolean
+	 * 		True if an existing row was replaced or updated
+	 * 		False if the row was skipped
+	 * 	Throws: SQLException if the row could not be written
+	 */
+	private boolean merge( int key ) throws SQLException{
+		SQLiteStatement update;
+		int[] keyColumns;
+		int bind = 1;
+
+		switch( mergeMode ){
+		case SuperSQLiteOpenHelper.MERGE_MODE_REPLACE:
+			try{
+				for( int x = 0; x<values.length; ++x){
+					bindValue( replaceStatement, x+1, values[x] );
+				}
+				return replaceStatement.executeInsert() != -1;
+			}finally{
+				replaceStatement.clearBindings();
+			}
+		case SuperSQLiteOpenHelper.MERGE_MODE_UPSERT:
+			update = getUpdateStatement( key );
+			if( update == null )
+				return false;
+			keyColumns = uniqueKeys.get( key );
+			try{
+				// the bound columns, then the key
+				for( int x = present.nextSetBit(0); x >= 0; x = present.nextSetBit(x+1) ){
+					if( isUpdated(keyColumns, x+1) )
+						bindValue( update, bind++, values[x] );
+				}
+				for( int thisKey : keyColumns ){
+					bindValue( update, bind++, values[thisKey-1] );
+				}
+				return update.executeUpdateDelete() > 0;
+			}finally{
+				update.clearBindings();
+			}
+		default:
+			return false;
+		}
+	}
+
+	/*	Function: findCollision
+	 * 	Description: Checks if the kept row has the same key as an existing
+	 * 		row, trying the keys in order.  Keys with a column that was not
+	 * 		bound or is null cannot collide and are not checked.
+	 * 	Inputs: None
+	 * 	Output: int
+	 * 		The position of the first key an existing row has
+	 * 		-1 if the row collides with nothing
+	 * 	Throws: SQLException if the table could not be read
+	 */
+	private int findCollision() throws SQLException{
+		int[] thisKey;
+		boolean bound;
+		StringBuilder sql;
+
+		for( int x = 0; x<uniqueKeys.size(); ++x){
+			thisKey = uniqueKeys.get( x );
+			bound = true;
+			for( int thisIndex : thisKey ){
+				if( !present.get(thisIndex-1) || values[thisIndex-1] == null )
+					bound = false;
+			}
+			if( !bound )
+				continue;
+
+			if( keyQueries[x] == null ){
+				sql = new StringBuilder( "SELECT EXISTS (SELECT 1 FROM " ).append( table ).append( " WHERE " );
+				appendKey( sql, thisKey );
+				keyQueries[x] = db.compileStatement( sql.append( ')' ).toString() );
+			}
+			try{
+				for( int y = 0; y<thisKey.length; ++y){
+					bindValue( keyQueries[x], y+1, values[thisKey[y]-1] );
+				}
+				if( keyQueries[x].simpleQueryForLong() != 0 )
+					return x;
+			}finally{
+				keyQueries[x].clearBindings();
+			}
+		}
+
+		return -1;
+	}
+
+	// appends "a=? AND b=?" for the columns of a key
+	private void appendKey( StringBuilder sql, int[] key ){
+		for( int x = 0; x<key.length; ++x){
+			if( x > 0 )
+				sql.append( " AND " );
+			sql.append( columns[key[x]-1] ).append( "=?" );
+		}
+	}
+
+	/*	Function: getUniqueKeys
+	 * 	Description: Gets the bind indexes of every key a row can collide
+	 * 		on: a bound rowid column first, then the primary key, then each
+	 * 		UNIQUE index.  Keys on a column that is not inserted, on an
+	 * 		expression, or with a WHERE clause are left out (a collision on
+	 * 		those fails the insert).
+	 * 	Inputs: None
+	 * 	Output: List<int[]>
+	 * 		The bind indexes of each key
+	 * 	Throws: SQLException if the table could not be read
+	 */
+	private List<int[]> getUniqueKeys() throws SQLException{
+		List<int[]> rval = new ArrayList<int[]>();
+		List<String> indexNames = new ArrayList<String>();
+		int[] thisKey;
+		Cursor cur;
+		int partialColumn;
+		int nameColumn;
+		int index;
+
+		for( int x = 0; x<columns.length; ++x){
+			if( isRowid(columns[x]) ){
+				rval.add( new int[]{ x+1 } );
+				break;
+			}
+		}
+
+		thisKey = getKeyIndexes();
+		if( thisKey.length > 0 )
+			rval.add( thisKey );
+
+		cur = db.rawQuery( "PRAGMA index_list(" + table + ")", null );
+		try{
+			// partial is only reported by SQLite 3.8.9 and up
+			partialColumn = cur.getColumnIndex( "partial" );
+			while( cur.moveToNext() ){
+				if( cur.getInt(cur.getColumnIndexOrThrow("unique")) != 0
+						&& (partialColumn < 0 || cur.getInt(partialColumn) == 0) )
+					indexNames.add( cur.getString(cur.getColumnIndexOrThrow("name")) );
+			}
+		}finally{
+			cur.close();
+		}
+
+		for( String thisIndex : indexNames ){
+			List<Integer> keyColumns = new ArrayList<Integer>();
+			cur = db.rawQuery( "PRAGMA index_info(\"" + thisIndex.replace("\"", "\"\"") + "\")", null );
+			try{
+				while( cur.moveToNext() ){
+					// expressions have no name
+					nameColumn = cur.getColumnIndexOrThrow( "name" );
+					index = cur.isNull( nameColumn )? 0 : getBindIndex( cur.getString(nameColumn) );
+					if( index == 0 ){
+						keyColumns = null;
+						break;
+					}
+					keyColumns.add( index );
+				}
+			}finally{
+				cur.close();
+			}
+
+			if( keyColumns != null && !keyColumns.isEmpty() ){
+				thisKey = new int[ keyColumns.size() ];
+				for( int x = 0; x<thisKey.length; ++x){
+					thisKey[x] = keyColumns.get(x);
+				}
+				rval.add( thisKey );
+			}
+		}
+
+		return rval;
+	}
+
+	// Returns true if a column name is one of SQLite's names for the rowid
+	private static boolean isRowid( String column ){
+		return "rowid".equalsIgnoreCase( column ) || "oid".equalsIgnoreCase( column )
+				|| "_rowid_".equalsIgnoreCase( column );
+	}
+
+	/*	Function: getUpdateStatement
+	 * 	Description: Gets the UPDATE statement that sets the columns bound in
+	 * 		this row on the row with the same values for a key.  Statements
+	 * 		are compiled once per key and set of columns.
+	 * 	Inputs:
+	 * 		key (int)	- the key to match on (see findCollision)
+	 * 	Output: SQLiteStatement
+	 * 		The statement
+	 * 		Null if the row has nothing to update
+	 * 	Throws: SQLException if the statement could not be compiled
+	 */
+	private SQLiteStatement getUpdateStatement( int key ) throws SQLException{
+		String cacheKey = key + ":" + present;
+		SQLiteStatement rval = updateStatements.get( cacheKey );
+		int[] keyColumns = uniqueKeys.get( key );
+		StringBuilder sql;
+		boolean first = true;
+
+		if( rval != null )
+			return rval;
+
+		sql = new StringBuilder( "UPDATE " ).append( table ).append( " SET " );
+		for( int x = present.nextSetBit(0); x >= 0; x = present.nextSetBit(x+1) ){
+			if( !isUpdated(keyColumns, x+1) )
+				continue;
+			if( !first )
+				sql.append( ',' );
+			sql.append( columns[x] ).append( "=?" );
+			first = false;
+		}
+		if( first )
+			return null;
+		sql.append( " WHERE " );
+		appendKey( sql, keyColumns );
+
+		rval = db.compileStatement( sql.toString() );
+		updateStatements.put( cacheKey, rval );
+		return rval;
+	}
+
+	// Returns true if a bound column is set by an update on a key (the
+	//	key's own columns and the rowid are left as they are)
+	private boolean isUpdated( int[] key, int index ){
+		if( isRowid(columns[index-1]) )
+			return false;
+		for( int thisKey : key ){
+			if( thisKey == index )
+				return false;
+		}
+		return true;
+	}
+
+	/*	Function: getKeyIndexes
+	 * 	Description: Gets the bind indexes of the table's primary key
+	 * 		columns, in key order.
+	 * 	Inputs: None
+	 * 	Output: int[]
+	 * 		The bind indexes (empty if the table has no primary key or a key
+	 * 			column is not one of the inserted columns)
+	 * 	Throws: SQLException if the table could not be read
+	 */
+	private int[] getKeyIndexes() throws SQLException{
+		List<Integer> keys = new ArrayList<Integer>();
+		Cursor cur = db.rawQuery( "PRAGMA table_info(" + table + ")", null );
+		int nameColumn;
+		int pkColumn;
+		int position;
+		int index;
+		int[] rval;
+
+		try{
+			nameColumn = cur.getColumnIndexOrThrow( "name" );
+			pkColumn = cur.getColumnIndexOrThrow( "pk" );
+			// pk is the position in the key (1-based), 0 if not in it
+			while( cur.moveToNext() ){
+				position = cur.getInt( pkColumn );
+				if( position > 0 ){
+					index = getBindIndex( cur.getString(nameColumn) );
+					if( index == 0 )
+						return new int[0];
+					while( keys.size() < position )
+						keys.add( 0 );
+					keys.set( position-1, index );
+				}
+			}
+		}finally{
+			cur.close();
+		}
+
+		rval = new int[ keys.size() ];
+		for( int x = 0; x<rval.length; ++x){
+			rval[x] = keys.get(x);
+		}
+		return rval;
+	}
+
+	/*	Function: commitChunk
+	 * 	Description: Commits the rows of the current chunk.  Does nothing if
+	 * 		this inserter runs in the caller's transaction.
+	 * 	Inputs: None
+	 * 	Output: int
+	 * 		The number of rows committed
+	 * 	Throws: SQLException if the transaction could not be committed
+	 */
+	int commitChunk() throws SQLException{
+		int rval = rowsInChunk;
+
+		if( inChunk ){
+			inChunk = false;
+			rowsInChunk = 0;
+			insertedInChunk = 0;
+			updatedInChunk = 0;
+			skippedInChunk = 0;
+			db.setTransactionSuccessful();
+			db.endTransaction();
+		}
+
+		return rval;
+	}
+
+	/*	Function: close
+	 * 	Description: Releases the compiled statements.  If a chunk is still
+	 * 		open it has not been committed and is rolled back.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	void close(){
+		if( inChunk ){
+			inChunk = false;
+			rowsInserted -= insertedInChunk;
+			rowsUpdated -= updatedInChunk;
+			rowsSkipped -= skippedInChunk;
+			rowsInChunk = 0;
+			insertedInChunk = 0;
+			updatedInChunk = 0;
+			skippedInChunk = 0;
+			db.endTransaction();
+		}
+		statement.close();
+		if( replaceStatement != null )
+			replaceStatement.close();
+		for( SQLiteStatement thisStatement : updateStatements.values() ){
+			thisStatement.close();
+		}
+		updateStatements.clear();
+		if( keyQueries != null ){
+			for( SQLiteStatement thisStatement : keyQueries ){
+				if( thisStatement != null )
+					thisStatement.close();
+			}
+		}
+	}
+}
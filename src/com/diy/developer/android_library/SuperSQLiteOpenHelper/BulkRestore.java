@@ -0,0 +1,209 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+
+/*	Class: BulkRestore
+ * 	Description: This class sets a connection up for loading many rows at
+ * 		once and puts it back afterwards.  It is used by the imports in
+ * 		bulk restore mode, in this order:
+ *
+ * 		applySettings		(outside the transaction) journal in memory, no
+ * 							syncs, a large page cache, foreign keys off
+ * 		dropIndexes			(in the transaction) drop and remember the
+ * 							non-unique indexes
+ * 		rebuild				(in the transaction) recreate the indexes and
+ * 							check foreign keys before the commit
+ * 		restoreSettings		(outside the transaction) put back every setting
+ *
+ * 		The indexes are dropped and recreated inside the import transaction,
+ * 		so a rollback brings them back as they were.  WAL databases keep
+ * 		their journal mode (it cannot be changed while other connections are
+ * 		open).
+ */
+final class BulkRestore {
+	// Page cache for the load, in KiB (negative means KiB to SQLite)
+	private static final int BULK_CACHE_SIZE = -64 * 1024;
+
+	private final SQLiteDatabase db;
+	private String journalMode = null;
+	private String synchronous = null;
+	private String cacheSize = null;
+	private boolean foreignKeys = false;
+	private boolean applied = false;
+	private final List<String> indexSQL = new ArrayList<String>();
+
+
+	/*	Function: BulkRestore (Constructor)
+	 * 	Description: Creates a bulk restore for a writable connection.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the connection the import runs on
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	BulkRestore(SQLiteDatabase db){
+		this.db = db;
+	}
+
+	/*	Function: applySettings
+	 * 	Description: Remembers the current settings and switches to the bulk
+	 * 		load settings.  Must be called outside a transaction.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: SQLException if a setting could not be changed (the settings
+	 * 		already changed are put back)
+	 */
+	void applySettings(){
+		journalMode = pragma( "journal_mode" );
+		synchronous = pragma( "synchronous" );
+		cacheSize = pragma( "cache_size" );
+		foreignKeys = "1".equals( pragma("foreign_keys") );
+		applied = true;
+
+		try{
+			if( !"wal".equalsIgnoreCase(journalMode) )
+				pragma( "journal_mode=MEMORY" );
+			pragma( "synchronous=OFF" );
+			pragma( "cache_size=" + BULK_CACHE_SIZE );
+			if( foreignKeys )
+				pragma( "foreign_keys=OFF" );
+		}catch( SQLException e ){
+			try{
+				restoreSettings();
+			}catch( SQLException f ){
+				// the first failure is the one reported
+			}
+			throw e;
+		}
+	}
+
+	/*	Function: dropIndexes
+	 * 	Description: Drops the non-unique indexes of the data tables and
+	 * 		remembers how to create them.  UNIQUE indexes are kept, so a
+	 * 		duplicate is still caught (or merged) on the record that brings
+	 * 		it, and so are the indexes SQLite made for PRIMARY KEY and UNIQUE
+	 * 		constraints (they have no SQL).  Must be called inside the import
+	 * 		transaction.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: SQLException if an index could not be dropped
+	 */
+	void dropIndexes(){
+		List<String> names = new ArrayList<String>();
+		// SQLite stores the start of the statement as "CREATE UNIQUE INDEX"
+		Cursor cur = db.rawQuery( "SELECT name, sql FROM sqlite_master WHERE type='index' AND sql IS NOT NULL " +
+				"AND sql NOT LIKE 'CREATE UNIQUE %' AND tbl_name != ?",
+				new String[]{ ChangeTracker.CHANGELOG_TABLE } );
+		try{
+			while( cur.moveToNext() ){
+				names.add( cur.getString(0) );
+				indexSQL.add( cur.getString(1) );
+			}
+		}finally{
+			cur.close();
+		}
+
+		for( String thisIndex : names ){
+			db.execSQL( "DROP INDEX \"" + thisIndex.replace("\"", "\"\"") + "\"" );
+		}
+	}
+
+	/*	Function: rebuild
+	 * 	Description: Recreates the dropped indexes, then checks every foreign
+	 * 		key if they were on before the load.  Must be called inside the
+	 * 		import transaction, before it is marked successful.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: SQLException if an index could not be created or a foreign
+	 * 		key is broken
+	 */
+	void rebuild(){
+		Cursor cur;
+
+		for( String sql : indexSQL ){
+			db.execSQL( sql );
+		}
+		indexSQL.clear();
+
+		if( foreignKeys ){
+			cur = db.rawQuery( "PRAGMA foreign_key_check", null );
+			try{
+				if( cur.moveToFirst() )
+					throw new SQLiteConstraintException( "Foreign key broken in " + cur.getString(0) +
+							" rowid " + cur.getString(1) );
+			}finally{
+				cur.close();
+			}
+		}
+	}
+
+	/*	Function: restoreSettings
+	 * 	Description: Puts back the settings remembered by applySettings.
+	 * 		Must be called outside a transaction.  Does nothing if the
+	 * 		settings were never changed.  Every setting is tried even if one
+	 * 		fails.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: SQLException for the first setting that could not be put
+	 * 		back (the connection should then be closed, which drops them all)
+	 */
+	void restoreSettings(){
+		SQLException failure = null;
+
+		if( !applied )
+			return;
+		applied = false;
+
+		failure = restore( "journal_mode=" + journalMode, failure );
+		failure = restore( "synchronous=" + synchronous, failure );
+		failure = restore( "cache_size=" + cacheSize, failure );
+		failure = restore( "foreign_keys=" + (foreignKeys? "ON" : "OFF"), failure );
+		if( failure != null )
+			throw failure;
+	}
+
+	// puts back one setting, returning the first failure so far
+	private SQLException restore( String setting, SQLException failure ){
+		try{
+			pragma( setting );
+		}catch( SQLException e ){
+			if( failure == null )
+				return e;
+		}
+		return failure;
+	}
+
+	// runs a pragma and returns its first value (null if none)
+	private String pragma( String pragma ){
+		Cursor cur = db.rawQuery( "PRAGMA " + pragma, null );
+		try{
+			return cur.moveToFirst()? cur.getString(0) : null;
+		}finally{
+			cur.close();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.nio.charset.Charset;
+
+import android.database.AbstractCursor;
+
+/*	Class: CachedCursor
+ * 	Description: A read-only cursor over rows held in memory by the query
+ * 		cache.  Many cursors can share the same rows; each only has its own
+ * 		position.  Values keep the type SQLite returned them with and are
+ * 		converted on read the same way a database cursor would (numbers to
+ * 		text, text to numbers, null to 0).  The cursor holds no database
+ * 		resources, so it stays usable after the helper is closed.
+ */
+final class CachedCursor extends AbstractCursor {
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private final String[] columns;
+	private final Object[][] rows;
+
+
+	/*	Function: CachedCursor (Constructor)
+	 * 	Description: Creates a cursor over cached rows.
+	 * 	Inputs:
+	 * 		columns (String[])	- the column names
+	 * 		rows (Object[][])	- the rows (Long, Double, String, byte[] or null
+	 * 								cells), not copied
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	CachedCursor(String[] columns, Object[][] rows){
+		this.columns = columns;
+		this.rows = rows;
+	}
+
+	@Override
+	public int getCount(){
+		return rows.length;
+	}
+
+	@Override
+	public String[] getColumnNames(){
+		return columns;
+	}
+
+	@Override
+	public int getType( int column ){
+		Object value = get( column );
+		if( value == null )
+			return FIELD_TYPE_NULL;
+		if( value instanceof Long )
+			return FIELD_TYPE_INTEGER;
+		if( value instanceof Double )
+			return FIELD_TYPE_FLOAT;
+		if( value instanceof byte[] )
+			return FIELD_TYPE_BLOB;
+		return FIELD_TYPE_STRING;
+	}
+
+	@Override
+	public boolean isNull( int column ){
+		return get( column ) == null;
+	}
+
+	@Override
+	public String getString( int column ){
+		Object value = get( column );
+		if( value == null )
+			return null;
+		if( value instanceof byte[] )
+			return new String( (byte[]) value, UTF8 );
+		return value.toString();
+	}
+
+	@Override
+	public byte[] getBlob( int column ){
+		Object value = get( column );
+		if( value == null )
+			return null;
+		// the rows are shared, so hand out a copy
+		if( value instanceof byte[] )
+			return ((byte[]) value).clone();
+		return value.toString().getBytes( UTF8 );
+	}
+
+	@Override
+	public long getLong( int column ){
+		Object value = get( column );
+		if( value instanceof Number )
+			return ((Number) value).longValue();
+		if( value instanceof String ){
+			try{
+				return (long) Double.parseDouble( ((String) value).trim() );
+			}catch( NumberFormatException e ){
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public double getDouble( int column ){
+		Object value = get( column );
+		if( value instanceof Number )
+			return ((Number) value).doubleValue();
+		if( value instanceof String ){
+			try{
+				return Double.parseDouble( ((String) value).trim() );
+			}catch( NumberFormatException e ){
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int getInt( int column ){
+		return (int) getLong( column );
+	}
+
+	@Override
+	public short getShort( int column ){
+		return (short) getLong( column );
+	}
+
+	@Override
+	public float getFloat( int column ){
+		return (float) getDouble( column );
+	}
+
+	// returns a cell of the current row
+	private Object get( int column ){
+		int position = getPosition();
+		if( position < 0 || position >= rows.length )
+			throw new IndexOutOfBoundsException( "Cursor is at " + position + " of " + rows.length + " rows" );
+		return rows[position][column];
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/*	Class: ChangeTracker
+ * 	Description: This class holds the SQL for change tracking.  A changelog
+ * 		table records the rowid of every row inserted, updated or deleted
+ * 		in a schema table, in the order it happened, through triggers on
+ * 		each table.  Every entry gets a sequence number larger than all
+ * 		earlier ones, so a delta export only has to read the entries after
+ * 		the last sequence it exported.
+ *
+ * 		The triggers only use rowids, so adding columns does not change
+ * 		them.  Tables that are rebuilt by a migration lose their triggers,
+ * 		which is why install is run again after every upgrade or downgrade.
+ * 		WITHOUT ROWID tables have no rowid to record, so they are not
+ * 		tracked and are left out of delta exports.
+ *
+ * 		Every delete fires the triggers, including the ones made by a clean
+ * 		or by an import that does not append, so those log a delete for
+ * 		every row that was in the database.
+ */
+final class ChangeTracker {
+	// Changelog table (left out of exports, imports and cleans)
+	static final String CHANGELOG_TABLE = "__changelog";
+	// Operations recorded in the changelog
+	static final int OP_INSERT = 1;
+	static final int OP_UPDATE = 2;
+	static final int OP_DELETE = 3;
+	// Delta export file format
+	static final String XML_CHANGES_TAG = "Changes";
+	static final String XML_DELETED_TAG = "deleted";
+	static final String XML_ROWID_ATTRIBUTE = "rowid";
+	static final String XML_SINCE_ATTRIBUTE = "since";
+	static final String XML_THROUGH_ATTRIBUTE = "through";
+	// Matches the CREATE TABLE statement of a WITHOUT ROWID table
+	private static final Pattern WITHOUT_ROWID = Pattern.compile( "(?is).*\\)\\s*WITHOUT\\s+ROWID\\s*;?\\s*" );
+
+	private ChangeTracker(){
+	}
+
+	/*	Function: getInstallSQL
+	 * 	Description: Gets the statements that create the changelog and the
+	 * 		triggers of every table in the schema at a version.  All of them
+	 * 		are IF NOT EXISTS, so they can be run on a database that is
+	 * 		already (partly) tracked.
+	 * 	Inputs:
+	 * 		schema (CompiledSchema)	- the schema
+	 * 		version (int)			- the version the database is at
+	 * 		untracked (Set<String>)	- tables to leave without triggers
+	 * 	Output: List<String>
+	 * 		The statements, in order
+	 * 	Throws: None
+	 */
+	static List<String> getInstallSQL( CompiledSchema schema, int version, Set<String> untracked ){
+		List<String> rval = new ArrayList<String>();
+		String name;
+		String literal;
+		String insert = "INSERT INTO " + CHANGELOG_TABLE + " (tbl,row_id,op) ";
+
+		// seq is a plain rowid alias: the newest entry is never pruned, so
+		//	new entries always get a larger number
+		rval.add( "CREATE TABLE IF NOT EXISTS " + CHANGELOG_TABLE +
+				" (seq INTEGER PRIMARY KEY, tbl TEXT NOT NULL, row_id INTEGER NOT NULL, op INTEGER NOT NULL)" );
+		rval.add( "CREATE INDEX IF NOT EXISTS " + CHANGELOG_TABLE + "_tbl ON " + CHANGELOG_TABLE + " (tbl,seq)" );
+
+		for( CompiledSchema.Table thisTable : schema.getTables() ){
+			name = thisTable.getName();
+			if( !thisTable.existsAt(version) || untracked.contains(name) )
+				continue;
+			literal = "'" + name.replace( "'", "''" ) + "'";
+
+			rval.add( "CREATE TRIGGER IF NOT EXISTS " + getTriggerName(name, "insert") + " AFTER INSERT ON " + name +
+					" BEGIN " + insert + "VALUES (" + literal + ",NEW.rowid," + OP_INSERT + "); END" );
+			// a changed rowid is a delete of the old row
+			rval.add( "CREATE TRIGGER IF NOT EXISTS " + getTriggerName(name, "update") + " AFTER UPDATE ON " + name +
+					" BEGIN " + insert + "SELECT " + literal + ",OLD.rowid," + OP_DELETE + " WHERE OLD.rowid != NEW.rowid; " +
+					insert + "VALUES (" + literal + ",NEW.rowid," + OP_UPDATE + "); END" );
+			rval.add( "CREATE TRIGGER IF NOT EXISTS " + getTriggerName(name, "delete") + " AFTER DELETE ON " + name +
+					" BEGIN " + insert + "VALUES (" + literal + ",OLD.rowid," + OP_DELETE + "); END" );
+		}
+
+		return rval;
+	}
+
+	// Returns the name of one of a table's triggers
+	private static String getTriggerName( String table, String operation ){
+		return "\"" + CHANGELOG_TABLE + "_" + table.replace( "\"", "" ) + "_" + operation + "\"";
+	}
+
+	/*	Function: install
+	 * 	Description: Creates the changelog and any missing triggers.
+	 * 		WITHOUT ROWID tables are skipped.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)		- the database
+	 * 		schema (CompiledSchema)	- the schema
+	 * 		version (int)			- the version the database is at
+	 * 	Output: None
+	 * 	Throws: SQLException if the statements could not be run
+	 */
+	static void install( SQLiteDatabase db, CompiledSchema schema, int version ){
+		for( String sql : getInstallSQL(schema, version, getUntrackedTables(db)) ){
+			db.execSQL( sql );
+		}
+	}
+
+	/*	Function: getUntrackedTables
+	 * 	Description: Gets the tables of a database that cannot be tracked
+	 * 		because they have no rowid.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: Set<String>
+	 * 		The names of the WITHOUT ROWID tables
+	 * 	Throws: SQLException if the tables could not be read
+	 */
+	static Set<String> getUntrackedTables( SQLiteDatabase db ){
+		Set<String> rval = new HashSet<String>();
+		Cursor cur = db.rawQuery( "SELECT name, sql FROM sqlite_master WHERE type='table' AND sql IS NOT NULL", null );
+		try{
+			while( cur.moveToNext() ){
+				if( WITHOUT_ROWID.matcher(cur.getString(1)).matches() )
+					rval.add( cur.getString(0) );
+			}
+		}finally{
+			cur.close();
+		}
+		return rval;
+	}
+
+	// Returns true if the database has a changelog
+	static boolean isInstalled( SQLiteDatabase db ){
+		Cursor cur = db.rawQuery( "SELECT 1 FROM sqlite_master WHERE type='table' AND name=?",
+				new String[]{ CHANGELOG_TABLE } );
+		try{
+			return cur.moveToFirst();
+		}finally{
+			cur.close();
+		}
+	}
+
+	// Returns the sequence number of the newest change (0 if none)
+	static long getLastSequence( SQLiteDatabase db ){
+		Cursor cur = db.rawQuery( "SELECT max(seq) FROM " + CHANGELOG_TABLE, null );
+		try{
+			return (cur.moveToFirst() && !cur.isNull(0))? cur.getLong(0) : 0;
+		}finally{
+			cur.close();
+		}
+	}
+
+	/*	Function: prune
+	 * 	Description: Deletes changelog entries up to a sequence number.  The
+	 * 		newest entry is always kept so sequence numbers keep growing.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 		through (long)		- the last sequence number to delete
+	 * 	Output: None
+	 * 	Throws: SQLException if the entries could not be deleted
+	 */
+	static void prune( SQLiteDatabase db, long through ){
+		db.execSQL( "DELETE FROM " + CHANGELOG_TABLE + " WHERE seq <= ? AND seq < (SELECT max(seq) FROM " +
+				CHANGELOG_TABLE + ")", new Object[]{ through } );
+	}
+
+	/*	Function: writeChanges
+	 * 	Description: Writes the net changes of one table between two
+	 * 		sequence numbers.  Each changed row is written once: as a record
+	 * 		with its current values if it still exists, or as a deleted
+	 * 		element if it does not.  Nothing is written for a table without
+	 * 		changes.
+	 * 	Inputs:
+	 * 		serializer (XmlSerializer)	- the serializer to write to
+	 * 		db (SQLiteDatabase)			- the database to read from
+	 * 		table (String)				- the table
+	 * 		since (long)				- changes after this sequence number
+	 * 		through (long)				- up to and including this one
+	 * 	Output: int
+	 * 		The number of rows written
+	 * 	Throws: IOException if the output could not be written
+	 */
+	static int writeChanges( XmlSerializer serializer, SQLiteDatabase db, String table, long since, long through )
+			throws IOException{
+		Cursor thisCur = db.rawQuery( "SELECT c.row_id, t.rowid, t.* FROM (SELECT DISTINCT row_id FROM " + CHANGELOG_TABLE +
+				" WHERE tbl = ? AND seq > ? AND seq <= ?) c LEFT JOIN " + table + " t ON t.rowid = c.row_id ORDER BY c.row_id",
+				new String[]{ table, Long.toString(since), Long.toString(through) } );
+		try{
+			String[] columnNames = thisCur.getColumnNames();
+			String value;
+			int rows = 0;
+
+			while( thisCur.moveToNext() ){
+				if( rows++ == 0 )
+					serializer.startTag( null, table );
+
+				if( thisCur.isNull(1) ){
+					serializer.startTag( null, XML_DELETED_TAG );
+					serializer.attribute( null, XML_ROWID_ATTRIBUTE, thisCur.getString(0) );
+					serializer.endTag( null, XML_DELETED_TAG );
+					continue;
+				}
+
+				serializer.startTag( null, SuperSQLiteOpenHelper.XML_RECORD_TAG );
+				serializer.attribute( null, XML_ROWID_ATTRIBUTE, thisCur.getString(0) );
+				for( int i=2; i<columnNames.length; ++i){
+					value = thisCur.getString(i);
+					if( value != null ){
+						serializer.startTag( null, columnNames[i] );
+						serializer.text( value );
+						serializer.endTag( null, columnNames[i] );
+					}
+				}
+				serializer.endTag( null, SuperSQLiteOpenHelper.XML_RECORD_TAG );
+			}
+			if( rows > 0 )
+				serializer.endTag( null, table );
+
+			return rows;
+		}finally{
+			thisCur.close();
+		}
+	}
+}
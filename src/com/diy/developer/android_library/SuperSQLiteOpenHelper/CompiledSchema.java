@@ -0,0 +1,495 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*	Class: CompiledSchema
+ * 	Description: This class is the parsed form of a DATABASE_SCHEMA array
+ * 		(see SuperSQLiteOpenHelper for the syntax).  The array is walked
+ * 		once when the helper is created: every entry is checked, column
+ * 		names are pulled out of their definitions, and the CREATE TABLE
+ * 		and ALTER TABLE statements are built up front.  The lifecycle
+ * 		methods then only read from this model.
+ *
+ * 		A version list may also hold index entries, which are kept apart
+ * 		from the columns:
+ * 			"INDEX name (columns) [WHERE ...]"			- adds an index
+ * 			"UNIQUE INDEX name (columns) [WHERE ...]"	- adds a unique index
+ * 			"DROP INDEX name"							- drops an index added in
+ * 														  an earlier version
+ *
+ * 		The model is immutable.  A schema with a bad entry is rejected with
+ * 		an IllegalArgumentException naming the table and version.
+ */
+final class CompiledSchema {
+	// Index entries in a version list
+	private static final Pattern INDEX_ENTRY = Pattern.compile( "(?is)\\s*(UNIQUE\\s+)?INDEX\\s+(.*)" );
+	private static final Pattern DROP_INDEX_ENTRY = Pattern.compile( "(?is)\\s*DROP\\s+INDEX\\s+(.*)" );
+	private static final Pattern WHERE_CLAUSE = Pattern.compile( "(?is)WHERE\\s+\\S.*" );
+
+	private final int version;
+	private final Table[] tables;
+	private final Map<String, Table> tablesByName;
+
+
+	/*	Function: CompiledSchema (Constructor)
+	 * 	Description: Checks and compiles a schema array.
+	 * 	Inputs:
+	 * 		schema (String[][][])	- the schema (syntax in SuperSQLiteOpenHelper)
+	 * 		version (int)			- the current database version
+	 * 	Output: The new object
+	 * 	Throws: IllegalArgumentException if the schema is not valid
+	 */
+	CompiledSchema(String[][][] schema, int version){
+		if( schema == null )
+			throw new IllegalArgumentException( "Database schema is null" );
+		if( version < 1 )
+			throw new IllegalArgumentException( "Database version must be at least 1, was " + version );
+
+		this.version = version;
+		this.tables = new Table[ schema.length ];
+		this.tablesByName = new LinkedHashMap<String, Table>();
+		// index names are shared by all tables of a database
+		Map<String, Table> indexOwners = new LinkedHashMap<String, Table>();
+		Table owner;
+		for( int x = 0; x<schema.length; ++x){
+			tables[x] = new Table( schema[x], x, version );
+			if( tablesByName.put(tables[x].getName().toLowerCase(Locale.US), tables[x]) != null )
+				throw new IllegalArgumentException( "Table " + tables[x].getName() + " is declared more than once" );
+			for( Index thisIndex : tables[x].indexes ){
+				owner = indexOwners.put( thisIndex.getName().toLowerCase(Locale.US), tables[x] );
+				if( owner != null && owner != tables[x] )
+					throw new IllegalArgumentException( "Index " + thisIndex.getName() + " is declared by both " +
+							owner.getName() + " and " + tables[x].getName() );
+			}
+		}
+	}
+
+	// Returns the current database version
+	int getVersion(){
+		return version;
+	}
+
+	// Returns the tables in schema order
+	Table[] getTables(){
+		return tables.clone();
+	}
+
+	// Returns the number of tables in the schema
+	int getTableCount(){
+		return tables.length;
+	}
+
+	// Returns a table by its position in the schema
+	Table getTable( int index ){
+		return tables[index];
+	}
+
+	// Returns a table by name (case insensitive), null if not in the schema
+	Table getTable( String name ){
+		return tablesByName.get( name.toLowerCase(Locale.US) );
+	}
+
+	/*	Function: getColumnName
+	 * 	Description: Pulls the column name out of a column definition.  The
+	 * 		name is the first token, which may be quoted with "", '', `` or
+	 * 		[] (the quotes are kept so the name can be used in SQL as is).
+	 * 	Inputs:
+	 * 		definition (String)	- the column definition
+	 * 	Output: String
+	 * 		The column name
+	 * 		Null if there is no name
+	 * 	Throws: None
+	 */
+	static String getColumnName( String definition ){
+		String def = definition.trim();
+		if( def.length() == 0 )
+			return null;
+
+		char first = def.charAt(0);
+		char close = (first == '"' || first == '\'' || first == '`')? first : (first == '[')? ']' : 0;
+		int end;
+		if( close != 0 ){
+			end = def.indexOf( close, 1 );
+			return (end < 0)? null : def.substring( 0, end+1 );
+		}
+
+		for( end = 0; end<def.length() && !Character.isWhitespace(def.charAt(end)); ++end );
+		return def.substring( 0, end );
+	}
+
+	/*	Function: getIndexName
+	 * 	Description: Pulls the index name off the front of an index entry.
+	 * 		The name may be quoted like a column name; otherwise it ends at
+	 * 		white space or the opening parenthesis of the column list.
+	 * 	Inputs:
+	 * 		rest (String)	- the entry after the INDEX keyword
+	 * 	Output: String
+	 * 		The index name
+	 * 		Null if there is no name
+	 * 	Throws: None
+	 */
+	static String getIndexName( String rest ){
+		String def = rest.trim();
+		int end;
+
+		if( def.length() == 0 || def.charAt(0) == '(' )
+			return null;
+		if( "\"'`[".indexOf(def.charAt(0)) >= 0 )
+			return getColumnName( def );
+		for( end = 0; end<def.length() && !Character.isWhitespace(def.charAt(end)) && def.charAt(end) != '('; ++end );
+		return def.substring( 0, end );
+	}
+
+	// returns the position after the parenthesis that closes the one at
+	//	start, -1 if it is never closed (quoted text is skipped)
+	private static int findClose( String text, int start ){
+		char quote = 0;
+		int depth = 0;
+		char c;
+
+		for( int x = start; x<text.length(); ++x){
+			c = text.charAt( x );
+			if( quote != 0 ){
+				if( c == quote )
+					quote = 0;
+			}else if( c == '\'' || c == '"' || c == '`' ){
+				quote = c;
+			}else if( c == '(' ){
+				++depth;
+			}else if( c == ')' && --depth == 0 ){
+				return x + 1;
+			}
+		}
+		return -1;
+	}
+
+	/*	Class: Index
+	 * 	Description: One index declared in a table's version lists.  It
+	 * 		exists from the version it was added in up to (but not including)
+	 * 		the version that drops it, if any.
+	 */
+	static final class Index {
+		private final String name;
+		private final String createSQL;
+		private final boolean unique;
+		private final int addedIn;
+		// 0 if never dropped (only set while the table is compiled)
+		private int droppedIn = 0;
+
+		Index(String name, String createSQL, boolean unique, int addedIn){
+			this.name = name;
+			this.createSQL = createSQL;
+			this.unique = unique;
+			this.addedIn = addedIn;
+		}
+
+		// Returns the index name
+		String getName(){
+			return name;
+		}
+
+		// Returns true if this is a UNIQUE index
+		boolean isUnique(){
+			return unique;
+		}
+
+		// Returns the CREATE INDEX IF NOT EXISTS statement
+		String getCreateSQL(){
+			return createSQL;
+		}
+
+		// Returns the DROP INDEX IF EXISTS statement
+		String getDropSQL(){
+			return "DROP INDEX IF EXISTS " + name;
+		}
+
+		// Returns true if the index exists at a version
+		boolean existsAt( int version ){
+			return version >= addedIn && (droppedIn == 0 || version < droppedIn);
+		}
+	}
+
+	/*	Class: Table
+	 * 	Description: One table of the schema.  The column definitions of all
+	 * 		versions are stored in one array in the order they were added, so
+	 * 		the columns at any version are a prefix of that array and the
+	 * 		columns added between two versions are a slice of it.
+	 */
+	static final class Table {
+		private final int index;
+		private final String name;
+		private final int firstVersion;
+		private final String constraint;
+		private final String[] definitions;
+		private final String[] columnNames;
+		private final String[] alterSQL;
+		// every index declared, in the order they were added
+		private final Index[] indexes;
+		// countAt[v] is the number of columns at version v
+		private final int[] countAt;
+		// createSQL[v] is the CREATE TABLE statement at version v (null if no columns)
+		private final String[] createSQL;
+
+		/*	Function: Table (Constructor)
+		 * 	Description: Checks and compiles one table of the schema.
+		 * 	Inputs:
+		 * 		entry (String[][])	- the table's entry in the schema
+		 * 		index (int)			- position of the table in the schema
+		 * 		version (int)		- the current database version
+		 * 	Output: The new object
+		 * 	Throws: IllegalArgumentException if the entry is not valid
+		 */
+		Table(String[][] entry, int index, int version){
+			if( entry == null || entry.length == 0 || entry[0] == null || entry[0].length < 2 )
+				throw new IllegalArgumentException( "Table " + index + " needs a {\"name\",\"first_version\"} header" );
+
+			this.index = index;
+			this.name = (entry[0][0] == null)? "" : entry[0][0].trim();
+			if( name.length() == 0 )
+				throw new IllegalArgumentException( "Table " + index + " has no name" );
+			try{
+				this.firstVersion = Integer.parseInt( entry[0][1].trim() );
+			}catch( RuntimeException e ){
+				throw new IllegalArgumentException( "Table " + name + " has a bad first version: " + entry[0][1] );
+			}
+			if( firstVersion < 1 )
+				throw new IllegalArgumentException( "Table " + name + " has a bad first version: " + firstVersion );
+			this.constraint = (entry[0].length >= 3 && entry[0][2] != null)? entry[0][2].trim() : "";
+
+			// flatten the columns, checking each one
+			List<String> defs = new ArrayList<String>();
+			List<String> names = new ArrayList<String>();
+			Set<String> seen = new HashSet<String>();
+			List<Index> indexList = new ArrayList<Index>();
+			int lastVersion = Math.max( entry.length-1, version );
+			this.countAt = new int[ lastVersion+1 ];
+			String colName;
+			for( int y = 1; y<=lastVersion; ++y){
+				if( y < entry.length && entry[y] != null ){
+					if( y < firstVersion && entry[y].length > 0 )
+						throw new IllegalArgumentException( "Table " + name + " declares columns in v" + y +
+								", before its first version v" + firstVersion );
+					for( String thisDef : entry[y] ){
+						if( thisDef != null && addIndexEntry(thisDef, y, indexList) )
+							continue;
+						colName = (thisDef == null)? null : getColumnName( thisDef );
+						if( colName == null )
+							throw new IllegalArgumentException( "Table " + name + " has an empty column in v" + y );
+						if( !seen.add(colName.toLowerCase(Locale.US)) )
+							throw new IllegalArgumentException( "Table " + name + " declares column " + colName + " more than once" );
+						defs.add( thisDef.trim() );
+						names.add( colName );
+					}
+				}
+				countAt[y] = defs.size();
+			}
+			this.definitions = defs.toArray( new String[defs.size()] );
+			this.columnNames = names.toArray( new String[names.size()] );
+			this.indexes = indexList.toArray( new Index[indexList.size()] );
+
+			// build the statements
+			this.alterSQL = new String[ definitions.length ];
+			for( int x = 0; x<definitions.length; ++x){
+				alterSQL[x] = "ALTER TABLE " + name + " ADD COLUMN " + definitions[x];
+			}
+			this.createSQL = new String[ lastVersion+1 ];
+			for( int y = 1; y<=lastVersion; ++y){
+				if( countAt[y] == 0 )
+					continue;
+				// versions that add no columns share the statement
+				createSQL[y] = (countAt[y] == countAt[y-1])? createSQL[y-1] : buildCreateSQL( name, countAt[y] );
+			}
+		}
+
+		/*	Function: addIndexEntry
+		 * 	Description: Compiles an entry of a version list if it is an index
+		 * 		entry (see the class description).
+		 * 	Inputs:
+		 * 		entry (String)			- the entry
+		 * 		version (int)			- the version the entry is in
+		 * 		indexList (List<Index>)	- the indexes declared so far
+		 * 	Output: boolean
+		 * 		True if the entry was an index entry
+		 * 		False if it is a column definition
+		 * 	Throws: IllegalArgumentException if the index entry is not valid
+		 */
+		private boolean addIndexEntry( String entry, int version, List<Index> indexList ){
+			Matcher drop = DROP_INDEX_ENTRY.matcher( entry );
+			Matcher add = INDEX_ENTRY.matcher( entry );
+			String indexName;
+			String rest;
+			String where;
+			Index current;
+			int close;
+
+			if( drop.matches() ){
+				indexName = drop.group(1).trim();
+				current = findIndex( indexList, indexName );
+				if( current == null || current.addedIn >= version )
+					throw new IllegalArgumentException( "Table " + name + " drops index " + indexName + " in v" + version +
+							" but does not add it in an earlier version" );
+				current.droppedIn = version;
+				return true;
+			}
+			if( !add.matches() )
+				return false;
+
+			indexName = getIndexName( add.group(2) );
+			rest = (indexName == null)? "" : add.group(2).trim().substring( indexName.length() ).trim();
+			close = rest.startsWith("(")? findClose( rest, 0 ) : -1;
+			// the column list must close and not be empty
+			if( close < 0 || rest.substring(1, close-1).trim().length() == 0 )
+				throw new IllegalArgumentException( "Table " + name + " has a bad index in v" + version + ": " + entry );
+			where = rest.substring( close ).trim();
+			if( where.length() > 0 && !WHERE_CLAUSE.matcher(where).matches() )
+				throw new IllegalArgumentException( "Table " + name + " has a bad index in v" + version + ": " + entry );
+			if( findIndex(indexList, indexName) != null )
+				throw new IllegalArgumentException( "Table " + name + " adds index " + indexName + " more than once" );
+
+			indexList.add( new Index(indexName, "CREATE " + ((add.group(1) != null)? "UNIQUE " : "") +
+					"INDEX IF NOT EXISTS " + indexName + " ON " + name + " " + rest.substring(0, close) +
+					((where.length() > 0)? " " + where : ""), add.group(1) != null, version) );
+			return true;
+		}
+
+		// returns the index with a name that has not been dropped, null if none
+		private static Index findIndex( List<Index> indexList, String indexName ){
+			for( Index thisIndex : indexList ){
+				if( thisIndex.droppedIn == 0 && thisIndex.name.equalsIgnoreCase(indexName) )
+					return thisIndex;
+			}
+			return null;
+		}
+
+		// builds the CREATE TABLE statement for the first count columns
+		private String buildCreateSQL( String tableName, int count ){
+			StringBuilder sql = new StringBuilder( "CREATE TABLE IF NOT EXISTS " );
+			sql.append( tableName ).append( " (" );
+			for( int x = 0; x<count; ++x){
+				if( x > 0 )
+					sql.append( ',' );
+				sql.append( definitions[x] );
+			}
+			if( constraint.length() > 0 )
+				sql.append( ',' ).append( constraint );
+			return sql.append( ')' ).toString();
+		}
+
+		// clamps a version into the range this table has data for
+		private int clamp( int version ){
+			return (version < 0)? 0 : (version >= countAt.length)? countAt.length-1 : version;
+		}
+
+		// Returns the position of the table in the schema
+		int getIndex(){
+			return index;
+		}
+
+		// Returns the table name
+		String getName(){
+			return name;
+		}
+
+		// Returns the version the table was first added in
+		int getFirstVersion(){
+			return firstVersion;
+		}
+
+		// Returns the table constraint ("" if none)
+		String getConstraint(){
+			return constraint;
+		}
+
+		// Returns the number of columns at a version
+		int getColumnCount( int version ){
+			return (version < firstVersion)? 0 : countAt[ clamp(version) ];
+		}
+
+		// Returns true if the table has any columns at a version
+		boolean existsAt( int version ){
+			return getColumnCount( version ) > 0;
+		}
+
+		// Returns the column definitions at a version
+		String[] getColumnsAt( int version ){
+			return Arrays.copyOf( definitions, getColumnCount(version) );
+		}
+
+		// Returns the column names at a version
+		String[] getColumnNamesAt( int version ){
+			return Arrays.copyOf( columnNames, getColumnCount(version) );
+		}
+
+		// Returns the CREATE TABLE statement at a version, null if the
+		//	table does not exist at that version
+		String getCreateSQL( int version ){
+			return (version < firstVersion)? null : createSQL[ clamp(version) ];
+		}
+
+		// Returns the CREATE TABLE statement at a version under another
+		//	name, null if the table does not exist at that version
+		String getCreateSQL( int version, String tableName ){
+			int count = getColumnCount( version );
+			return (count == 0)? null : buildCreateSQL( tableName, count );
+		}
+
+		// Returns the indexes that exist at a version (none if the table does not)
+		List<Index> getIndexesAt( int version ){
+			List<Index> rval = new ArrayList<Index>();
+			if( !existsAt(version) )
+				return rval;
+			for( Index thisIndex : indexes ){
+				if( thisIndex.existsAt(version) )
+					rval.add( thisIndex );
+			}
+			return rval;
+		}
+
+		/*	Function: getAlterSQL
+		 * 	Description: Gets the ALTER TABLE statements that add the columns
+		 * 		introduced after one version up to and including another.
+		 * 	Inputs:
+		 * 		fromVersion (int)	- the version the table is at
+		 * 		toVersion (int)		- the version to bring it to
+		 * 	Output: List<String>
+		 * 		The statements, in order (empty if none)
+		 * 	Throws: None
+		 */
+		List<String> getAlterSQL( int fromVersion, int toVersion ){
+			int start = getColumnCount( fromVersion );
+			int end = getColumnCount( toVersion );
+			if( end <= start )
+				return Collections.emptyList();
+			return Arrays.asList( alterSQL ).subList( start, end );
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/*	Class: ConnectionPool
+ * 	Description: This class holds one writer connection and up to a set
+ * 		number of read-only connections to the same database file.  The
+ * 		database must be in write-ahead logging mode so readers can run
+ * 		alongside each other and alongside the writer.
+ *
+ * 		Readers are opened the first time they are needed and are kept
+ * 		open for reuse.  When all readers are leased, acquireReader waits
+ * 		for one to be released.  The writer is leased to one thread at a
+ * 		time and must be released on the thread that acquired it.
+ *
+ * 		The pool remembers which readers it leased, so a reader leased from
+ * 		an earlier pool is never taken into this one.
+ */
+final class ConnectionPool {
+	// How long to wait for a reader before checking if the pool was closed
+	private static final long READER_WAIT_MS = 250;
+
+	private final SQLiteDatabase writer;
+	private final String path;
+	private final int maxReaders;
+	private final ReentrantLock writerLock = new ReentrantLock(true);
+	private final BlockingQueue<SQLiteDatabase> idleReaders;
+	// readers currently leased from this pool
+	private final Set<SQLiteDatabase> leasedReaders = new HashSet<SQLiteDatabase>();
+
+	private int openReaders = 0;
+	private boolean closed = false;
+
+
+	/*	Function: ConnectionPool (Constructor)
+	 * 	Description: Creates a pool around an open writer connection.
+	 * 	Inputs:
+	 * 		writer (SQLiteDatabase)	- the open, WAL-mode writer connection
+	 * 		maxReaders (int)		- the most read-only connections to open
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	ConnectionPool(SQLiteDatabase writer, int maxReaders){
+		this.writer = writer;
+		this.path = writer.getPath();
+		this.maxReaders = maxReaders;
+		this.idleReaders = new LinkedBlockingQueue<SQLiteDatabase>();
+	}
+
+	// Returns the most read-only connections this pool will open
+	int getMaxReaders(){
+		return maxReaders;
+	}
+
+	/*	Function: acquireWriter
+	 * 	Description: Leases the writer connection, waiting until no other
+	 * 		thread holds it.
+	 * 	Inputs: None
+	 * 	Output: SQLiteDatabase
+	 * 		The writer connection
+	 * 	Throws: None
+	 */
+	SQLiteDatabase acquireWriter(){
+		writerLock.lock();
+		return writer;
+	}
+
+	// Releases the writer lease held by this thread (does nothing if this
+	//	thread does not hold it)
+	void releaseWriter(){
+		if( writerLock.isHeldByCurrentThread() )
+			writerLock.unlock();
+	}
+
+	/*	Function: acquireReader
+	 * 	Description: Leases a read-only connection.  An idle reader is used
+	 * 		if there is one, a new one is opened if the limit has not been
+	 * 		reached, otherwise this waits for a reader to be released.
+	 * 	Inputs: None
+	 * 	Output: SQLiteDatabase
+	 * 		A read-only connection
+	 * 	Throws: SQLiteException if a new reader could not be opened
+	 * 		IllegalStateException if the pool has been closed
+	 */
+	SQLiteDatabase acquireReader(){
+		SQLiteDatabase rval = idleReaders.poll();
+		boolean interrupted = false;
+
+		if( rval == null ){
+			synchronized( this ){
+				if( closed )
+					throw new IllegalStateException( "Connection pool is closed" );
+				if( openReaders < maxReaders ){
+					rval = SQLiteDatabase.openDatabase( path, null,
+							SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS );
+					++openReaders;
+				}
+			}
+		}
+
+		// wait for another thread to release one
+		while( rval == null ){
+			synchronized( this ){
+				if( closed )
+					throw new IllegalStateException( "Connection pool is closed" );
+			}
+			try{
+				rval = idleReaders.poll( READER_WAIT_MS, TimeUnit.MILLISECONDS );
+			}catch( InterruptedException e ){
+				interrupted = true;
+			}
+		}
+		if( interrupted )
+			Thread.currentThread().interrupt();
+
+		synchronized( this ){
+			leasedReaders.add( rval );
+		}
+		return rval;
+	}
+
+	/*	Function: releaseReader
+	 * 	Description: Returns a reader to the pool.  If the pool has been
+	 * 		closed, the reader is closed instead.  A connection this pool did
+	 * 		not lease is left alone.
+	 * 	Inputs:
+	 * 		reader (SQLiteDatabase)	- a reader from acquireReader
+	 * 	Output: boolean
+	 * 		True if the reader was leased from this pool
+	 * 		False if not (the caller must deal with it)
+	 * 	Throws: None
+	 */
+	synchronized boolean releaseReader( SQLiteDatabase reader ){
+		if( !leasedReaders.remove(reader) )
+			return false;
+		if( closed ){
+			--openReaders;
+			reader.close();
+		}else{
+			idleReaders.offer( reader );
+		}
+		return true;
+	}
+
+	/*	Function: close
+	 * 	Description: Closes all idle readers.  Readers still leased are
+	 * 		closed when they are released.  The writer belongs to the helper
+	 * 		and is not closed here.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	synchronized void close(){
+		SQLiteDatabase reader;
+
+		closed = true;
+		while( (reader = idleReaders.poll()) != null ){
+			--openReaders;
+			reader.close();
+		}
+	}
+}
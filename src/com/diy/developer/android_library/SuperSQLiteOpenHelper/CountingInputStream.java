@@ -0,0 +1,69 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*	Class: CountingInputStream
+ * 	Description: An input stream that counts the bytes read through it.
+ */
+final class CountingInputStream extends FilterInputStream {
+	private volatile long count = 0;
+
+	CountingInputStream(InputStream in){
+		super(in);
+	}
+
+	// Returns the number of bytes read so far
+	long getCount(){
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException{
+		int rval = in.read();
+		if( rval >= 0 )
+			++count;
+		return rval;
+	}
+
+	@Override
+	public int read( byte[] b, int off, int len ) throws IOException{
+		int rval = in.read( b, off, len );
+		if( rval > 0 )
+			count += rval;
+		return rval;
+	}
+
+	@Override
+	public long skip( long n ) throws IOException{
+		long rval = in.skip( n );
+		count += rval;
+		return rval;
+	}
+
+	// mark/reset would throw the count off
+	@Override
+	public boolean markSupported(){
+		return false;
+	}
+}
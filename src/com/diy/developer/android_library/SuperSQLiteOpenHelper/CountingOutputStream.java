@@ -0,0 +1,52 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*	Class: CountingOutputStream
+ * 	Description: An output stream that counts the bytes written through it.
+ */
+final class CountingOutputStream extends FilterOutputStream {
+	private volatile long count = 0;
+
+	CountingOutputStream(OutputStream out){
+		super(out);
+	}
+
+	// Returns the number of bytes written so far
+	long getCount(){
+		return count;
+	}
+
+	@Override
+	public void write( int b ) throws IOException{
+		out.write( b );
+		++count;
+	}
+
+	@Override
+	public void write( byte[] b, int off, int len ) throws IOException{
+		out.write( b, off, len );
+		count += len;
+	}
+}
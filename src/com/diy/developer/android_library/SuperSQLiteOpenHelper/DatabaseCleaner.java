@@ -0,0 +1,232 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+/*	Class: DatabaseCleaner
+ * 	Description: This class empties every data table of a database in one
+ * 		transaction.  Tables are emptied children first, in the order given
+ * 		by their foreign keys, so no row is ever deleted while another row
+ * 		still points at it and no ON DELETE action has anything to do.
+ * 		Only when foreign keys form a cycle are they deferred, and only
+ * 		while the tables are emptied, so a clean inside a longer
+ * 		transaction (such as an import) leaves the later statements
+ * 		checked as usual.
+ *
+ * 		Each table is emptied with an unconditional DELETE, which SQLite
+ * 		runs by dropping the table's pages instead of visiting every row.
+ * 		(Tables with triggers, such as the change tracking ones, and tables
+ * 		in foreign keys while they are enforced are still deleted row by
+ * 		row; SQLite needs the rows for those.)
+ */
+final class DatabaseCleaner {
+	private static final String SEQUENCE_TABLE = "sqlite_sequence";
+
+	private DatabaseCleaner(){
+	}
+
+	/*	Function: clean
+	 * 	Description: Empties the tables.  If the database is already in a
+	 * 		transaction, the clean becomes part of it.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)		- the database to clean
+	 * 		tables (List<String>)	- the tables to empty (SQLite's own tables
+	 * 									are left alone)
+	 * 		resetSequences (boolean)	- true to restart AUTOINCREMENT keys
+	 * 		reclaimSpace (boolean)	- true to give the freed pages back to the
+	 * 									file system (only has an effect on
+	 * 									databases with auto_vacuum=INCREMENTAL)
+	 * 		progress (OperationProgress)	- counts each table emptied (may be
+	 * 									null)
+	 * 	Output: int
+	 * 		The number of tables emptied
+	 * 	Throws: SQLException if a table could not be emptied (nothing is
+	 * 		deleted), CancellationException if the clean was cancelled (nothing
+	 * 		is deleted)
+	 */
+	static int clean( SQLiteDatabase db, List<String> tables, boolean resetSequences, boolean reclaimSpace,
+			OperationProgress progress ){
+		List<String> cycles = new ArrayList<String>();
+		List<String> order = getDeleteOrder( db, tables, cycles );
+		boolean hasSequences = false;
+		boolean deferred = false;
+		Cursor cur;
+
+		for( String thisTable : tables ){
+			if( SEQUENCE_TABLE.equalsIgnoreCase(thisTable) )
+				hasSequences = true;
+		}
+
+		db.beginTransaction();
+		try{
+			// only cycles need it, the order takes care of the rest
+			if( !cycles.isEmpty() && !isDeferringForeignKeys(db) ){
+				pragma( db, "defer_foreign_keys=ON" );
+				deferred = true;
+			}
+			for( String thisTable : order ){
+				db.execSQL( "DELETE FROM " + thisTable );
+				if( progress != null )
+					progress.tableDone();
+			}
+			// every table is empty, so nothing is left to check
+			if( deferred )
+				pragma( db, "defer_foreign_keys=OFF" );
+			if( resetSequences && hasSequences )
+				db.execSQL( "DELETE FROM " + SEQUENCE_TABLE );
+			if( reclaimSpace ){
+				cur = db.rawQuery( "PRAGMA incremental_vacuum", null );
+				try{
+					// every step frees pages, so read it through
+					while( cur.moveToNext() ){
+					}
+				}finally{
+					cur.close();
+				}
+			}
+			db.setTransactionSuccessful();
+		}finally{
+			db.endTransaction();
+		}
+
+		return order.size();
+	}
+
+	/*	Function: getDeleteOrder
+	 * 	Description: Orders tables so that every table comes before the
+	 * 		tables its foreign keys point to.  Tables in a cycle are put last
+	 * 		in the order they were given.  SQLite's own tables are left out.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)		- the database
+	 * 		tables (List<String>)	- the tables to order
+	 * 		cycles (List<String>)	- filled with the tables in a cycle (may
+	 * 									be null)
+	 * 	Output: List<String>
+	 * 		The tables, children first
+	 * 	Throws: SQLException if the foreign keys could not be read
+	 */
+	static List<String> getDeleteOrder( SQLiteDatabase db, List<String> tables, List<String> cycles ){
+		List<String> rval = new ArrayList<String>( tables.size() );
+		List<String> remaining = new ArrayList<String>( tables.size() );
+		// the tables each table points to (SQLite names are case-insensitive)
+		Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
+		// how many remaining tables point to each table
+		Map<String, Integer> children = new HashMap<String, Integer>();
+		Iterator<String> thisTable;
+		String table;
+		String name;
+		boolean progress;
+
+		for( String theTable : tables ){
+			name = theTable.toLowerCase( Locale.US );
+			if( name.startsWith("sqlite_") )
+				continue;
+			remaining.add( theTable );
+			parents.put( name, getParents(db, theTable, name) );
+		}
+		for( Set<String> theseParents : parents.values() ){
+			for( String thisParent : theseParents ){
+				Integer count = children.get( thisParent );
+				children.put( thisParent, (count == null)? 1 : count + 1 );
+			}
+		}
+
+		// take tables nothing points to until only cycles are left
+		do{
+			progress = false;
+			thisTable = remaining.iterator();
+			while( thisTable.hasNext() ){
+				table = thisTable.next();
+				name = table.toLowerCase( Locale.US );
+				if( children.containsKey(name) )
+					continue;
+				rval.add( table );
+				thisTable.remove();
+				for( String thisParent : parents.get(name) ){
+					Integer count = children.get( thisParent );
+					if( count != null ){
+						if( count == 1 )
+							children.remove( thisParent );
+						else
+							children.put( thisParent, count - 1 );
+					}
+				}
+				progress = true;
+			}
+		}while( progress && !remaining.isEmpty() );
+
+		rval.addAll( remaining );
+		if( cycles != null )
+			cycles.addAll( remaining );
+		return rval;
+	}
+
+	// returns the lower case names of the other tables a table points to
+	private static Set<String> getParents( SQLiteDatabase db, String table, String name ){
+		Set<String> rval = new HashSet<String>();
+		Cursor cur = db.rawQuery( "PRAGMA foreign_key_list(" + table + ")", null );
+		String parent;
+
+		try{
+			int parentColumn = cur.getColumnIndexOrThrow( "table" );
+			while( cur.moveToNext() ){
+				parent = cur.getString( parentColumn ).toLowerCase( Locale.US );
+				// a table pointing to itself is emptied in one statement
+				if( !parent.equals(name) )
+					rval.add( parent );
+			}
+		}finally{
+			cur.close();
+		}
+		return rval;
+	}
+
+	// returns true if foreign keys are already deferred in this transaction
+	private static boolean isDeferringForeignKeys( SQLiteDatabase db ) throws SQLException{
+		Cursor cur = db.rawQuery( "PRAGMA defer_foreign_keys", null );
+		try{
+			return cur.moveToFirst() && cur.getInt(0) != 0;
+		}finally{
+			cur.close();
+		}
+	}
+
+	// runs a pragma, ignoring any result
+	private static void pragma( SQLiteDatabase db, String pragma ) throws SQLException{
+		Cursor cur = db.rawQuery( "PRAGMA " + pragma, null );
+		try{
+			cur.moveToFirst();
+		}finally{
+			cur.close();
+		}
+	}
+}
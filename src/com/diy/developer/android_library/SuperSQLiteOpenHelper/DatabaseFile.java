@@ -0,0 +1,150 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/*	Class: DatabaseFile
+ * 	Description: This class works on SQLite database files directly, for
+ * 		the file-level backups.  It reads and writes the schema version in
+ * 		the file header (the same value PRAGMA user_version reads), copies
+ * 		whole files through their channels and removes the journal files
+ * 		SQLite keeps next to a database.
+ *
+ * 		None of these lock anything.  The caller must make sure no
+ * 		connection writes to the files while they are used.
+ */
+final class DatabaseFile {
+	// Database file header
+	private static final byte[] HEADER_MAGIC = {
+		'S', 'Q', 'L', 'i', 't', 'e', ' ', 'f', 'o', 'r', 'm', 'a', 't', ' ', '3', 0 };
+	private static final int USER_VERSION_OFFSET = 60;
+	private static final int HEADER_SIZE = 100;
+	// Files SQLite keeps next to a database
+	private static final String[] SIDECAR_SUFFIXES = { "-journal", "-wal", "-shm" };
+
+	private DatabaseFile(){
+	}
+
+	/*	Function: readUserVersion
+	 * 	Description: Reads the schema version from a database file's header.
+	 * 	Inputs:
+	 * 		file (File)	- the database file
+	 * 	Output: int
+	 * 		The schema version
+	 * 		-1 if the file is not an SQLite database
+	 * 	Throws: IOException if the file could not be read
+	 */
+	static int readUserVersion( File file ) throws IOException{
+		RandomAccessFile in = new RandomAccessFile( file, "r" );
+		byte[] header = new byte[ HEADER_SIZE ];
+
+		try{
+			if( in.length() < HEADER_SIZE )
+				return -1;
+			in.readFully( header );
+		}finally{
+			in.close();
+		}
+
+		for( int x = 0; x<HEADER_MAGIC.length; ++x){
+			if( header[x] != HEADER_MAGIC[x] )
+				return -1;
+		}
+		return ((header[USER_VERSION_OFFSET] & 0xFF) << 24) | ((header[USER_VERSION_OFFSET+1] & 0xFF) << 16)
+				| ((header[USER_VERSION_OFFSET+2] & 0xFF) << 8) | (header[USER_VERSION_OFFSET+3] & 0xFF);
+	}
+
+	/*	Function: writeUserVersion
+	 * 	Description: Writes the schema version into a database file's header.
+	 * 	Inputs:
+	 * 		file (File)		- the database file
+	 * 		version (int)	- the schema version
+	 * 	Output: None
+	 * 	Throws: IOException if the file could not be written
+	 */
+	static void writeUserVersion( File file, int version ) throws IOException{
+		RandomAccessFile out = new RandomAccessFile( file, "rw" );
+		try{
+			out.seek( USER_VERSION_OFFSET );
+			out.writeInt( version );
+			out.getFD().sync();
+		}finally{
+			out.close();
+		}
+	}
+
+	/*	Function: copy
+	 * 	Description: Copies a file channel to channel and syncs the copy to
+	 * 		disk.  An existing destination is overwritten.
+	 * 	Inputs:
+	 * 		source (File)	- the file to copy
+	 * 		dest (File)		- the copy
+	 * 	Output: long
+	 * 		The number of bytes copied
+	 * 	Throws: IOException if the file could not be copied
+	 */
+	static long copy( File source, File dest ) throws IOException{
+		FileInputStream in = new FileInputStream( source );
+		FileOutputStream out = null;
+		FileChannel inChannel;
+		long size;
+		long position = 0;
+
+		try{
+			out = new FileOutputStream( dest );
+			inChannel = in.getChannel();
+			size = inChannel.size();
+			// transferTo may copy less than asked for
+			while( position < size ){
+				position += inChannel.transferTo( position, size - position, out.getChannel() );
+			}
+			out.getFD().sync();
+			return size;
+		}finally{
+			in.close();
+			if( out != null )
+				out.close();
+		}
+	}
+
+	// Returns true if a database has a write-ahead log with frames in it
+	static boolean hasWALFrames( File database ){
+		return new File( database.getPath() + "-wal" ).length() > 0;
+	}
+
+	// Deletes the journal files of a database (the database must be closed)
+	static void deleteSidecars( File database ){
+		for( String suffix : SIDECAR_SUFFIXES ){
+			new File( database.getPath() + suffix ).delete();
+		}
+	}
+
+	// Deletes a database file and its journal files
+	static void delete( File database ){
+		database.delete();
+		deleteSidecars( database );
+	}
+}
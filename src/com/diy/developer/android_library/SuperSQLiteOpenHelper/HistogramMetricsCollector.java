@@ -0,0 +1,146 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*	Class: HistogramMetricsCollector
+ * 	Description: A MetricsListener that keeps, for each event type, the
+ * 		number of events, the sum of their counts and durations, the
+ * 		longest duration, and a histogram of durations.  The histogram has
+ * 		one bucket per power of two nanoseconds, so recording an event is a
+ * 		handful of atomic adds with no allocation or locking, and
+ * 		percentiles are accurate to within a factor of two.  The values
+ * 		can be read at any time and sent to whatever telemetry the app
+ * 		uses.
+ */
+public class HistogramMetricsCollector implements MetricsListener {
+	// One bucket per bit of a long
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray events = new AtomicLongArray( EVENT_COUNT );
+	private final AtomicLongArray counts = new AtomicLongArray( EVENT_COUNT );
+	private final AtomicLongArray nanos = new AtomicLongArray( EVENT_COUNT );
+	private final AtomicLongArray maxNanos = new AtomicLongArray( EVENT_COUNT );
+	private final AtomicLongArray histogram = new AtomicLongArray( EVENT_COUNT * BUCKETS );
+
+
+	@Override
+	public void onEvent( int event, String table, long count, long duration ){
+		if( event < 0 || event >= EVENT_COUNT )
+			return;
+
+		long max;
+		events.incrementAndGet( event );
+		counts.addAndGet( event, count );
+		nanos.addAndGet( event, duration );
+		histogram.incrementAndGet( event * BUCKETS + bucketOf(duration) );
+		while( duration > (max = maxNanos.get(event)) && !maxNanos.compareAndSet(event, max, duration) );
+	}
+
+	// the bucket of a duration is the position of its highest bit
+	private static int bucketOf( long duration ){
+		return (duration <= 0)? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros( duration );
+	}
+
+	// Returns the number of events of a type
+	public long getEvents( int event ){
+		return events.get( event );
+	}
+
+	// Returns the sum of the counts of an event type (rows, bytes, ...)
+	public long getTotalCount( int event ){
+		return counts.get( event );
+	}
+
+	// Returns the total time spent in an event type in nanoseconds
+	public long getTotalNanos( int event ){
+		return nanos.get( event );
+	}
+
+	// Returns the longest event of a type in nanoseconds
+	public long getMaxNanos( int event ){
+		return maxNanos.get( event );
+	}
+
+	// Returns the average event of a type in nanoseconds
+	public long getMeanNanos( int event ){
+		long n = events.get( event );
+		return (n == 0)? 0 : nanos.get( event ) / n;
+	}
+
+	/*	Function: getPercentileNanos
+	 * 	Description: Gets a duration percentile of an event type.  The value
+	 * 		is the upper bound of the histogram bucket the percentile falls
+	 * 		in, capped at the longest event seen.
+	 * 	Inputs:
+	 * 		event (int)			- the event type
+	 * 		percentile (double)	- the percentile (0 to 100)
+	 * 	Output: long
+	 * 		The duration in nanoseconds (0 if there were no events)
+	 * 	Throws: None
+	 */
+	public long getPercentileNanos( int event, double percentile ){
+		long total = events.get( event );
+		long target = (long) Math.ceil( total * Math.min(Math.max(percentile, 0), 100) / 100 );
+		long seen = 0;
+
+		if( total == 0 )
+			return 0;
+		if( target == 0 )
+			target = 1;
+		for( int x = 0; x<BUCKETS; ++x){
+			seen += histogram.get( event * BUCKETS + x );
+			if( seen >= target )
+				return (x >= BUCKETS-1)? maxNanos.get(event) : Math.min( (1L << (x+1)) - 1, maxNanos.get(event) );
+		}
+		return maxNanos.get( event );
+	}
+
+	// Clears all values
+	public void reset(){
+		for( int x = 0; x<EVENT_COUNT; ++x){
+			events.set( x, 0 );
+			counts.set( x, 0 );
+			nanos.set( x, 0 );
+			maxNanos.set( x, 0 );
+		}
+		for( int x = 0; x<histogram.length(); ++x){
+			histogram.set( x, 0 );
+		}
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder rval = new StringBuilder();
+		for( int x = 0; x<EVENT_COUNT; ++x){
+			if( events.get(x) == 0 )
+				continue;
+			rval.append( "event " ).append( x )
+				.append( ": n=" ).append( events.get(x) )
+				.append( " count=" ).append( counts.get(x) )
+				.append( " mean=" ).append( getMeanNanos(x) )
+				.append( "ns p50=" ).append( getPercentileNanos(x, 50) )
+				.append( "ns p99=" ).append( getPercentileNanos(x, 99) )
+				.append( "ns max=" ).append( maxNanos.get(x) ).append( "ns\n" );
+		}
+		return rval.toString();
+	}
+}
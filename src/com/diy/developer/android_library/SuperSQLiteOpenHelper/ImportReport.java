@@ -0,0 +1,123 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*	Class: ImportReport
+ * 	Description: This class holds what an import did to each table: how
+ * 		many rows were inserted as new rows, how many updated or replaced a
+ * 		row that was already there, and how many were skipped because they
+ * 		collided with an existing row.  Rows are only updated or skipped
+ * 		when appending with a merge mode (see
+ * 		SuperSQLiteOpenHelper.setMergeMode).
+ *
+ * 		A report is read only once the import has returned.
+ */
+public final class ImportReport {
+	// inserted, updated and skipped rows of each table, in import order
+	private final Map<String, long[]> tables = new LinkedHashMap<String, long[]>();
+
+
+	// Only created by the helper
+	ImportReport(){
+	}
+
+	/*	Function: add
+	 * 	Description: Adds the rows written to one table.
+	 * 	Inputs:
+	 * 		table (String)		- the table
+	 * 		inserted (long)		- rows inserted as new rows
+	 * 		updated (long)		- rows that updated or replaced an existing row
+	 * 		skipped (long)		- rows that were not written
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	void add( String table, long inserted, long updated, long skipped ){
+		long[] counts = tables.get( table );
+
+		if( counts == null ){
+			counts = new long[3];
+			tables.put( table, counts );
+		}
+		counts[0] += inserted;
+		counts[1] += updated;
+		counts[2] += skipped;
+	}
+
+	// Returns the tables that were imported, in import order
+	public Set<String> getTables(){
+		return Collections.unmodifiableSet( tables.keySet() );
+	}
+
+	// Returns the rows inserted into a table as new rows
+	public long getInserted( String table ){
+		return getCount( table, 0 );
+	}
+
+	// Returns the rows of a table that updated or replaced an existing row
+	public long getUpdated( String table ){
+		return getCount( table, 1 );
+	}
+
+	// Returns the rows of a table that were skipped
+	public long getSkipped( String table ){
+		return getCount( table, 2 );
+	}
+
+	// Returns the rows inserted into all tables
+	public long getTotalInserted(){
+		return getTotal( 0 );
+	}
+
+	// Returns the rows of all tables that updated or replaced a row
+	public long getTotalUpdated(){
+		return getTotal( 1 );
+	}
+
+	// Returns the rows of all tables that were skipped
+	public long getTotalSkipped(){
+		return getTotal( 2 );
+	}
+
+	// returns one count of a table (0 if it was not imported)
+	private long getCount( String table, int which ){
+		long[] counts = tables.get( table );
+		return (counts == null)? 0 : counts[which];
+	}
+
+	// returns one count summed over all tables
+	private long getTotal( int which ){
+		long rval = 0;
+		for( long[] counts : tables.values() ){
+			rval += counts[which];
+		}
+		return rval;
+	}
+
+	@Override
+	public String toString(){
+		return "ImportReport[inserted=" + getTotalInserted() + ", updated=" + getTotalUpdated() +
+				", skipped=" + getTotalSkipped() + "]";
+	}
+}
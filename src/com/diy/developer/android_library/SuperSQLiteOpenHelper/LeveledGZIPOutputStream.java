@@ -0,0 +1,49 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*	Class: LeveledGZIPOutputStream
+ * 	Description: A GZIPOutputStream with a chosen compression level (the
+ * 		standard one always uses the default level).  Like any gzip stream,
+ * 		it ends with a CRC32 and the length of the uncompressed data, which
+ * 		GZIPInputStream checks when it reaches the end.
+ */
+final class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+	/*	Function: LeveledGZIPOutputStream (Constructor)
+	 * 	Description: Creates a gzip stream and writes the gzip header.
+	 * 	Inputs:
+	 * 		out (OutputStream)	- the stream to write the compressed data to
+	 * 		size (int)			- size of the output buffer in bytes
+	 * 		level (int)			- compression level, 0-9 or
+	 * 								Deflater.DEFAULT_COMPRESSION
+	 * 	Output: The new object
+	 * 	Throws: IOException if the header could not be written
+	 * 		IllegalArgumentException if the level is not valid
+	 */
+	LeveledGZIPOutputStream(OutputStream out, int size, int level) throws IOException{
+		super( out, size );
+		def.setLevel( level );
+	}
+}
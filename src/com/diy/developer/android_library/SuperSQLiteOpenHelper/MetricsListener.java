@@ -0,0 +1,72 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+/*	Interface: MetricsListener
+ * 	Description: Receives timed events from a SuperSQLiteOpenHelper (see
+ * 		setMetricsListener).  Every event has a type, the table it is about
+ * 		(or null), a count whose meaning depends on the type, and how long
+ * 		it took in nanoseconds.  Events are sent on the thread doing the
+ * 		work, so listeners should return quickly.  When no listener is
+ * 		set, the helper does not time anything.
+ *
+ * 	Event types		table	count						nanos
+ * 		TABLE_EXPORTED	yes		rows written				time for the table
+ * 		TABLE_IMPORTED	yes		rows inserted				time for the table
+ * 		EXPORT			no		bytes written (0 if none)	whole export
+ * 		IMPORT			no		bytes read (0 if none)		whole import
+ * 		CLEAN			no		tables emptied				whole clean
+ * 		CREATE			no		statements executed			onCreate
+ * 		UPGRADE			no		statements executed			onUpgrade
+ * 		DOWNGRADE		no		statements executed			onDowngrade
+ * 		TRANSACTION		no		rows written				begin to commit/rollback
+ * 		CONNECTION_OPENED	no	connections opened so far	time to open (includes
+ * 																onCreate/onUpgrade)
+ * 		CONNECTION_CLOSED	no	connections closed so far	time to close
+ * 		FIRST_CONNECTION	no	1							helper created to first
+ * 																usable connection
+ */
+public interface MetricsListener {
+	int EVENT_TABLE_EXPORTED = 0;
+	int EVENT_TABLE_IMPORTED = 1;
+	int EVENT_EXPORT = 2;
+	int EVENT_IMPORT = 3;
+	int EVENT_CLEAN = 4;
+	int EVENT_CREATE = 5;
+	int EVENT_UPGRADE = 6;
+	int EVENT_DOWNGRADE = 7;
+	int EVENT_TRANSACTION = 8;
+	int EVENT_CONNECTION_OPENED = 9;
+	int EVENT_CONNECTION_CLOSED = 10;
+	int EVENT_FIRST_CONNECTION = 11;
+	// Number of event types
+	int EVENT_COUNT = 12;
+
+	/*	Function: onEvent
+	 * 	Description: Called when a timed event finishes.
+	 * 	Inputs:
+	 * 		event (int)		- the event type (EVENT_*)
+	 * 		table (String)	- the table the event is about, or null
+	 * 		count (long)	- the count for the event (see above)
+	 * 		nanos (long)	- how long the event took in nanoseconds
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	void onEvent( int event, String table, long count, long nanos );
+}
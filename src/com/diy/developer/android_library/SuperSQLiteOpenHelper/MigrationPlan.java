@@ -0,0 +1,705 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+/*	Class: MigrationPlan
+ * 	Description: This class holds the statements that move a database from
+ * 		one schema version to another, worked out per table before anything
+ * 		is run.  Tables whose columns are the same in both versions are left
+ * 		alone.
+ *
+ * 		On upgrade, every column a table gains between the two versions is
+ * 		gathered into one step.  ALTER TABLE ... ADD COLUMN only changes the
+ * 		schema and does not touch the rows, so it is used whenever SQLite
+ * 		allows it.  A column it cannot add (a key, a unique column, a NOT
+ * 		NULL column without a default, a non-constant default) makes the
+ * 		table be rebuilt once instead, which costs a copy of every row.
+ *
+ * 		On downgrade, the database is compared as it really is (its tables,
+ * 		columns and indexes) with the target version, since an older app
+ * 		has no schema entries for the versions it is coming down from.  A
+ * 		table with columns the target does not have has them dropped in
+ * 		place when the SQLite library supports ALTER TABLE ... DROP COLUMN
+ * 		(3.35.0 and up); otherwise, or if the drop is refused (for example
+ * 		for a key column), the table is rebuilt by copying it into a new
+ * 		table of the old shape.
+ *
+ * 		Indexes declared in the schema are dropped before any table is
+ * 		changed (so a dropped column is never held by one) and created after
+ * 		every table is done, so rows copied by a rebuild are indexed once
+ * 		rather than row by row.  A table that is created or rebuilt gets all
+ * 		of its indexes; other tables only get the ones that are new.
+ *
+ * 		On upgrade, only tables in the schema are touched.  On downgrade,
+ * 		every table and index the target version does not declare is
+ * 		dropped, including ones a newer version added.  SQLite's own
+ * 		tables, android_metadata and the changelog are always left alone.
+ *
+ * 		A plan can be read without running it (see
+ * 		SuperSQLiteOpenHelper.planMigration) to see the SQL that will run and
+ * 		how many rows will be copied.
+ */
+public final class MigrationPlan {
+	// First SQLite version with ALTER TABLE ... DROP COLUMN (3.35.0)
+	private static final int SQLITE_DROP_COLUMN_VERSION = 3035000;
+	// Prefix of the table a rebuild copies into
+	private static final String REBUILD_PREFIX = "__new_";
+
+	// What a step does to its table
+	static final int ACTION_CREATE = 1;
+	static final int ACTION_DROP = 2;
+	static final int ACTION_ALTER = 3;
+	static final int ACTION_REBUILD = 4;
+	static final int ACTION_INDEX = 5;
+
+	/*	Class: Step
+	 * 	Description: The statements for one table.  If an ALTER step fails,
+	 * 		its rebuild statements are run instead.  estimatedRows is the
+	 * 		number of rows the step copies (0 unless the table is rebuilt).
+	 */
+	static final class Step {
+		final String table;
+		final int action;
+		final List<String> statements;
+		final List<String> rebuild;
+		final long estimatedRows;
+
+		Step(String table, int action, List<String> statements, List<String> rebuild, long estimatedRows){
+			this.table = table;
+			this.action = action;
+			this.statements = statements;
+			this.rebuild = rebuild;
+			this.estimatedRows = estimatedRows;
+		}
+	}
+
+	private final int fromVersion;
+	private final int toVersion;
+	private final List<Step> steps;
+
+
+	private MigrationPlan(int fromVersion, int toVersion, List<Step> steps){
+		this.fromVersion = fromVersion;
+		this.toVersion = toVersion;
+		this.steps = Collections.unmodifiableList( steps );
+	}
+
+	/*	Function: forUpgrade
+	 * 	Description: Works out the steps to bring a database up from one
+	 * 		version to a newer one.  For each table in the schema, all of the
+	 * 		columns added from oldVersion to newVersion are gathered:
+	 * 			- no new columns: nothing is done
+	 * 			- not in the database yet: the table is created
+	 * 			- new columns that ALTER TABLE can add: one ALTER per column
+	 * 			  (schema only, no rows are touched)
+	 * 			- otherwise: the table is rebuilt once in the new shape
+	 * 		Indexes are worked out as described for the class.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)		- the database
+	 * 		schema (CompiledSchema)	- the schema
+	 * 		oldVersion (int)		- the current version (lower)
+	 * 		newVersion (int)		- the target version (higher)
+	 * 	Output: MigrationPlan
+	 * 		The plan
+	 * 	Throws: SQLException if the database could not be read
+	 */
+	static MigrationPlan forUpgrade( SQLiteDatabase db, CompiledSchema schema, int oldVersion, int newVersion ){
+		List<Step> steps = new ArrayList<Step>();
+		List<Step> indexSteps = new ArrayList<Step>();
+		Set<String> existing = getExistingTables( db );
+		List<String> added;
+		boolean canAlter;
+
+		for( CompiledSchema.Table thisTable : schema.getTables() ){
+			if( !thisTable.existsAt(newVersion) )
+				continue;
+
+			if( !thisTable.existsAt(oldVersion) || !existing.contains(thisTable.getName().toLowerCase(Locale.US)) ){
+				steps.add( new Step(thisTable.getName(), ACTION_CREATE,
+						Collections.singletonList(thisTable.getCreateSQL(newVersion)), null, 0) );
+				addIndexSteps( steps, indexSteps, thisTable, oldVersion, newVersion, true );
+				continue;
+			}
+
+			added = thisTable.getAlterSQL( oldVersion, newVersion );
+			if( added.isEmpty() ){
+				addIndexSteps( steps, indexSteps, thisTable, oldVersion, newVersion, false );
+				continue;
+			}
+
+			canAlter = true;
+			String[] columns = thisTable.getColumnsAt( newVersion );
+			for( int x = thisTable.getColumnCount(oldVersion); x<columns.length && canAlter; ++x){
+				canAlter = canAddColumn( columns[x] );
+			}
+
+			if( canAlter ){
+				steps.add( new Step(thisTable.getName(), ACTION_ALTER, added, null, 0) );
+			}else{
+				steps.add( new Step(thisTable.getName(), ACTION_REBUILD,
+						getRebuildSQL(thisTable, newVersion, thisTable.getColumnNamesAt(oldVersion)), null,
+						estimateRows(db, thisTable.getName())) );
+			}
+			addIndexSteps( steps, indexSteps, thisTable, oldVersion, newVersion, !canAlter );
+		}
+
+		return new MigrationPlan( oldVersion, newVersion, orderSteps(steps, indexSteps) );
+	}
+
+	/*	Function: forDowngrade
+	 * 	Description: Works out the steps to bring a database down to an
+	 * 		older version.  The tables, columns and indexes in the database
+	 * 		are compared with the ones declared for the target version:
+	 * 			- same columns: nothing is done
+	 * 			- not declared at the target: the table is dropped
+	 * 			- not in the database: the table is created
+	 * 			- columns the target does not have: they are dropped in place
+	 * 			  if possible, otherwise the table is rebuilt
+	 * 			- columns missing from the database: the table is rebuilt
+	 * 		Indexes on the kept tables that the target does not declare are
+	 * 		dropped first, and the declared ones that are missing (all of
+	 * 		them for a created or rebuilt table) are created last.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)		- the database
+	 * 		schema (CompiledSchema)	- the schema
+	 * 		oldVersion (int)		- the current version (higher)
+	 * 		newVersion (int)		- the target version (lower)
+	 * 	Output: MigrationPlan
+	 * 		The plan
+	 * 	Throws: SQLException if the database could not be read
+	 */
+	static MigrationPlan forDowngrade( SQLiteDatabase db, CompiledSchema schema, int oldVersion, int newVersion ){
+		List<Step> steps = new ArrayList<Step>();
+		List<Step> indexSteps = new ArrayList<Step>();
+		Map<String, String> existing = getDataTables( db );
+		Map<String, List<String>> indexes = getExistingIndexes( db );
+		Set<String> kept = new HashSet<String>();
+		boolean canDropColumns = getSQLiteVersion( db ) >= SQLITE_DROP_COLUMN_VERSION;
+		Set<String> realColumns;
+		List<String> extra;
+		List<String> common;
+		String[] newColumns;
+		List<String> statements;
+		List<String> rebuild;
+		String key;
+
+		for( CompiledSchema.Table thisTable : schema.getTables() ){
+			if( !thisTable.existsAt(newVersion) )
+				continue;
+			key = thisTable.getName().toLowerCase( Locale.US );
+			kept.add( key );
+
+			if( !existing.containsKey(key) ){
+				steps.add( new Step(thisTable.getName(), ACTION_CREATE,
+						Collections.singletonList(thisTable.getCreateSQL(newVersion)), null, 0) );
+				addExistingIndexSteps( steps, indexSteps, thisTable, newVersion, null, true );
+				continue;
+			}
+
+			// the columns the table really has, whatever version added them
+			realColumns = new LinkedHashSet<String>();
+			for( String thisColumn : getColumnNames(db, thisTable.getName()) ){
+				realColumns.add( thisColumn.toLowerCase(Locale.US) );
+			}
+			newColumns = thisTable.getColumnNamesAt( newVersion );
+			common = new ArrayList<String>();
+			for( String thisColumn : newColumns ){
+				if( realColumns.remove(thisColumn.toLowerCase(Locale.US)) )
+					common.add( thisColumn );
+			}
+			extra = new ArrayList<String>( realColumns );
+
+			if( extra.isEmpty() && common.size() == newColumns.length ){
+				addExistingIndexSteps( steps, indexSteps, thisTable, newVersion, indexes.get(key), false );
+				continue;
+			}
+
+			rebuild = getRebuildSQL( thisTable, newVersion, common.toArray(new String[common.size()]) );
+			if( canDropColumns && common.size() == newColumns.length ){
+				statements = new ArrayList<String>();
+				for( String thisColumn : extra ){
+					statements.add( "ALTER TABLE " + thisTable.getName() + " DROP COLUMN " + quote(thisColumn) );
+				}
+				steps.add( new Step(thisTable.getName(), ACTION_ALTER, statements, rebuild, 0) );
+			}else{
+				steps.add( new Step(thisTable.getName(), ACTION_REBUILD, rebuild, null,
+						estimateRows(db, thisTable.getName())) );
+			}
+			// the drop can fall back to a rebuild, which loses every index
+			addExistingIndexSteps( steps, indexSteps, thisTable, newVersion, indexes.get(key), true );
+		}
+
+		// tables the target does not declare, including ones from newer versions
+		for( Map.Entry<String, String> thisTable : existing.entrySet() ){
+			if( !kept.contains(thisTable.getKey()) )
+				steps.add( new Step(thisTable.getValue(), ACTION_DROP,
+						Collections.singletonList("DROP TABLE " + quote(thisTable.getValue())), null, 0) );
+		}
+
+		return new MigrationPlan( oldVersion, newVersion, orderSteps(steps, indexSteps) );
+	}
+
+	/*	Function: addExistingIndexSteps
+	 * 	Description: Works out the index statements of one table for a
+	 * 		downgrade from the indexes it really has.  Indexes the version
+	 * 		does not declare are dropped.  Declared indexes are created: all
+	 * 		of them if the table is created or rebuilt, otherwise the ones
+	 * 		that are missing.
+	 * 	Inputs:
+	 * 		steps (List<Step>)				- the table steps (drops are put
+	 * 											first when the plan is ordered)
+	 * 		indexSteps (List<Step>)			- the steps that create indexes
+	 * 		table (CompiledSchema.Table)	- the table
+	 * 		version (int)					- the target version
+	 * 		existing (List<String>)			- the indexes the table has (null
+	 * 											for none)
+	 * 		all (boolean)					- true if the table is created or
+	 * 											rebuilt
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	private static void addExistingIndexSteps( List<Step> steps, List<Step> indexSteps, CompiledSchema.Table table,
+			int version, List<String> existing, boolean all ){
+		List<CompiledSchema.Index> newIndexes = table.getIndexesAt( version );
+		Set<String> declared = new HashSet<String>();
+		Set<String> present = new HashSet<String>();
+		List<String> drops = new ArrayList<String>();
+		List<String> creates = new ArrayList<String>();
+
+		for( CompiledSchema.Index thisIndex : newIndexes ){
+			declared.add( thisIndex.getName().toLowerCase(Locale.US) );
+		}
+		if( existing != null ){
+			for( String thisIndex : existing ){
+				present.add( thisIndex.toLowerCase(Locale.US) );
+				if( !declared.contains(thisIndex.toLowerCase(Locale.US)) )
+					drops.add( "DROP INDEX IF EXISTS " + quote(thisIndex) );
+			}
+		}
+		for( CompiledSchema.Index thisIndex : newIndexes ){
+			if( all || !present.contains(thisIndex.getName().toLowerCase(Locale.US)) )
+				creates.add( thisIndex.getCreateSQL() );
+		}
+
+		if( !drops.isEmpty() )
+			steps.add( new Step(table.getName(), ACTION_INDEX, drops, null, 0) );
+		if( !creates.isEmpty() )
+			indexSteps.add( new Step(table.getName(), ACTION_INDEX, creates, null, 0) );
+	}
+
+	/*	Function: addIndexSteps
+	 * 	Description: Works out the index statements of one table.  Indexes
+	 * 		at the old version that are not at the new one are dropped.
+	 * 		Indexes at the new version are created: all of them if the table
+	 * 		is created or rebuilt, otherwise the ones not at the old version.
+	 * 	Inputs:
+	 * 		steps (List<Step>)				- the table steps (drops are put
+	 * 											first when the plan is ordered)
+	 * 		indexSteps (List<Step>)			- the steps that create indexes
+	 * 		table (CompiledSchema.Table)	- the table
+	 * 		oldVersion (int)				- the current version
+	 * 		newVersion (int)				- the target version
+	 * 		all (boolean)					- true if the table is created or
+	 * 											rebuilt
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	private static void addIndexSteps( List<Step> steps, List<Step> indexSteps, CompiledSchema.Table table,
+			int oldVersion, int newVersion, boolean all ){
+		List<CompiledSchema.Index> oldIndexes = table.getIndexesAt( oldVersion );
+		List<CompiledSchema.Index> newIndexes = table.getIndexesAt( newVersion );
+		List<String> drops = new ArrayList<String>();
+		List<String> creates = new ArrayList<String>();
+
+		for( CompiledSchema.Index thisIndex : oldIndexes ){
+			if( !newIndexes.contains(thisIndex) )
+				drops.add( thisIndex.getDropSQL() );
+		}
+		for( CompiledSchema.Index thisIndex : newIndexes ){
+			if( all || !oldIndexes.contains(thisIndex) )
+				creates.add( thisIndex.getCreateSQL() );
+		}
+
+		if( !drops.isEmpty() )
+			steps.add( new Step(table.getName(), ACTION_INDEX, drops, null, 0) );
+		if( !creates.isEmpty() )
+			indexSteps.add( new Step(table.getName(), ACTION_INDEX, creates, null, 0) );
+	}
+
+	// puts the index drops first and the index creates last
+	private static List<Step> orderSteps( List<Step> steps, List<Step> indexSteps ){
+		List<Step> rval = new ArrayList<Step>( steps.size() + indexSteps.size() );
+		for( Step thisStep : steps ){
+			if( thisStep.action == ACTION_INDEX )
+				rval.add( thisStep );
+		}
+		for( Step thisStep : steps ){
+			if( thisStep.action != ACTION_INDEX )
+				rval.add( thisStep );
+		}
+		rval.addAll( indexSteps );
+		return rval;
+	}
+
+	/*	Function: getRebuildSQL
+	 * 	Description: Builds the statements that rebuild a table in the shape
+	 * 		of a given version: a new table is created under a temporary
+	 * 		name, the given columns are copied into it, the old table is
+	 * 		dropped and the new one takes its name.
+	 * 	Inputs:
+	 * 		table (CompiledSchema.Table)	- the table
+	 * 		version (int)					- the version to rebuild it as
+	 * 		columns (String[])				- the column names to copy (in
+	 * 											both the old and new shape)
+	 * 	Output: List<String>
+	 * 		The statements, in order
+	 * 	Throws: None
+	 */
+	static List<String> getRebuildSQL( CompiledSchema.Table table, int version, String[] columns ){
+		List<String> rval = new ArrayList<String>( 4 );
+		String tempName = REBUILD_PREFIX + table.getName();
+		String columnList = TextUtils.join( ",", columns );
+
+		rval.add( "DROP TABLE IF EXISTS " + tempName );
+		rval.add( table.getCreateSQL(version, tempName) );
+		rval.add( "INSERT INTO " + tempName + " (" + columnList + ") SELECT " + columnList +
+				" FROM " + table.getName() );
+		rval.add( "DROP TABLE " + table.getName() );
+		rval.add( "ALTER TABLE " + tempName + " RENAME TO " + table.getName() );
+		return rval;
+	}
+
+	// Returns the version this plan moves the database from
+	public int getFromVersion(){
+		return fromVersion;
+	}
+
+	// Returns the version this plan moves the database to
+	public int getToVersion(){
+		return toVersion;
+	}
+
+	// Returns true if the plan has nothing to do
+	public boolean isEmpty(){
+		return steps.isEmpty();
+	}
+
+	// Returns the steps of this plan, one per table that changes
+	List<Step> getSteps(){
+		return steps;
+	}
+
+	/*	Function: getStatements
+	 * 	Description: Gets the SQL the plan will run, in order.  If an ALTER
+	 * 		is refused when the plan runs, the table's rebuild statements are
+	 * 		run instead (see getFallbackStatements).
+	 * 	Inputs: None
+	 * 	Output: List<String>
+	 * 		The statements
+	 * 	Throws: None
+	 */
+	public List<String> getStatements(){
+		List<String> rval = new ArrayList<String>();
+		for( Step thisStep : steps ){
+			rval.addAll( thisStep.statements );
+		}
+		return rval;
+	}
+
+	/*	Function: getFallbackStatements
+	 * 	Description: Gets the rebuild statements that run for a table if its
+	 * 		ALTER statements are refused.
+	 * 	Inputs:
+	 * 		table (String)	- the table
+	 * 	Output: List<String>
+	 * 		The statements (empty if the table has no fallback)
+	 * 	Throws: None
+	 */
+	public List<String> getFallbackStatements( String table ){
+		for( Step thisStep : steps ){
+			if( thisStep.table.equalsIgnoreCase(table) && thisStep.rebuild != null )
+				return thisStep.rebuild;
+		}
+		return Collections.emptyList();
+	}
+
+	// Returns the tables that are rebuilt by the plan (their rows copied)
+	public List<String> getRebuiltTables(){
+		List<String> rval = new ArrayList<String>();
+		for( Step thisStep : steps ){
+			if( thisStep.action == ACTION_REBUILD )
+				rval.add( thisStep.table );
+		}
+		return rval;
+	}
+
+	// Returns the estimated number of rows the plan copies
+	public long getEstimatedRows(){
+		long rval = 0;
+		for( Step thisStep : steps ){
+			rval += thisStep.estimatedRows;
+		}
+		return rval;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder rval = new StringBuilder();
+		rval.append( "v" ).append( fromVersion ).append( " -> v" ).append( toVersion )
+			.append( ", ~" ).append( getEstimatedRows() ).append( " rows copied" );
+		for( String sql : getStatements() ){
+			rval.append( '\n' ).append( sql ).append( ';' );
+		}
+		return rval.toString();
+	}
+
+	/*	Function: execute
+	 * 	Description: Runs the plan in a single transaction.  If an ALTER step
+	 * 		is refused by SQLite, the table is rebuilt instead.  If anything
+	 * 		else fails, the whole plan is rolled back and the error is
+	 * 		thrown.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: int
+	 * 		The number of statements executed
+	 * 	Throws: SQLException if a step could not be run
+	 */
+	int execute( SQLiteDatabase db ) throws SQLException{
+		int executed = 0;
+
+		db.beginTransaction();
+		try{
+			for( Step thisStep : steps ){
+				try{
+					for( String sql : thisStep.statements ){
+						db.execSQL( sql );
+						++executed;
+					}
+				}catch( SQLException e ){
+					if( thisStep.rebuild == null )
+						throw e;
+					for( String sql : thisStep.rebuild ){
+						db.execSQL( sql );
+						++executed;
+					}
+				}
+			}
+			db.setTransactionSuccessful();
+		}finally{
+			db.endTransaction();
+		}
+
+		return executed;
+	}
+
+	/*	Function: canAddColumn
+	 * 	Description: Checks if ALTER TABLE ... ADD COLUMN accepts a column
+	 * 		definition.  SQLite refuses PRIMARY KEY and UNIQUE columns, NOT
+	 * 		NULL columns without a default, defaults that are not constant
+	 * 		(CURRENT_TIME/DATE/TIMESTAMP or an expression in parentheses) and
+	 * 		stored generated columns.  The check is by keyword, so it can
+	 * 		refuse a column that would have been accepted, which only costs
+	 * 		a rebuild.
+	 * 	Inputs:
+	 * 		definition (String)	- the column definition
+	 * 	Output: boolean
+	 * 		True if the column can be added in place
+	 * 		False if the table must be rebuilt
+	 * 	Throws: None
+	 */
+	static boolean canAddColumn( String definition ){
+		String def = definition.toUpperCase(Locale.US).replaceAll( "\\s+", " " );
+
+		if( def.contains("PRIMARY KEY") || def.contains("UNIQUE") || def.contains("STORED")
+				|| def.contains("CURRENT_TIME") || def.contains("CURRENT_DATE")
+				|| def.matches(".* DEFAULT ?\\(.*") )
+			return false;
+		return !def.contains("NOT NULL") || def.contains(" DEFAULT ");
+	}
+
+	/*	Function: estimateRows
+	 * 	Description: Estimates the number of rows in a table without scanning
+	 * 		it, using the largest rowid.  Tables without a rowid are counted.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 		table (String)		- the table
+	 * 	Output: long
+	 * 		The estimated number of rows
+	 * 	Throws: None
+	 */
+	static long estimateRows( SQLiteDatabase db, String table ){
+		Cursor cur = null;
+		try{
+			try{
+				cur = db.rawQuery( "SELECT max(rowid) FROM " + table, null );
+			}catch( SQLException e ){
+				cur = db.rawQuery( "SELECT count(*) FROM " + table, null );
+			}
+			return (cur.moveToFirst())? cur.getLong(0) : 0;
+		}catch( SQLException e ){
+			return 0;
+		}finally{
+			if( cur != null )
+				cur.close();
+		}
+	}
+
+	/*	Function: getExistingTables
+	 * 	Description: Gets the names of all tables in the database.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: Set<String>
+	 * 		The table names in lower case
+	 * 	Throws: SQLException if the database could not be read
+	 */
+	static Set<String> getExistingTables( SQLiteDatabase db ){
+		Set<String> rval = new HashSet<String>();
+		Cursor cur = db.rawQuery( "SELECT name FROM sqlite_master WHERE type='table'", null );
+		try{
+			while( cur.moveToNext() ){
+				rval.add( cur.getString(0).toLowerCase(Locale.US) );
+			}
+		}finally{
+			cur.close();
+		}
+		return rval;
+	}
+
+	/*	Function: getDataTables
+	 * 	Description: Gets the tables of the database that hold app data:
+	 * 		every table except SQLite's own, android_metadata and the
+	 * 		changelog.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: Map<String, String>
+	 * 		The table names as stored, keyed by their lower case name
+	 * 	Throws: SQLException if the database could not be read
+	 */
+	static Map<String, String> getDataTables( SQLiteDatabase db ){
+		Map<String, String> rval = new LinkedHashMap<String, String>();
+		Cursor cur = db.rawQuery( "SELECT name FROM sqlite_master WHERE type='table' AND name NOT LIKE 'sqlite\\_%' ESCAPE '\\' " +
+				"AND name != 'android_metadata' AND name != '" + ChangeTracker.CHANGELOG_TABLE + "' ORDER BY name", null );
+		try{
+			while( cur.moveToNext() ){
+				rval.put( cur.getString(0).toLowerCase(Locale.US), cur.getString(0) );
+			}
+		}finally{
+			cur.close();
+		}
+		return rval;
+	}
+
+	/*	Function: getExistingIndexes
+	 * 	Description: Gets the indexes created with CREATE INDEX (not the
+	 * 		ones SQLite makes for keys and UNIQUE constraints) of every table.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: Map<String, List<String>>
+	 * 		The index names, keyed by the lower case name of their table
+	 * 	Throws: SQLException if the database could not be read
+	 */
+	static Map<String, List<String>> getExistingIndexes( SQLiteDatabase db ){
+		Map<String, List<String>> rval = new HashMap<String, List<String>>();
+		Cursor cur = db.rawQuery( "SELECT name, tbl_name FROM sqlite_master WHERE type='index' AND sql IS NOT NULL", null );
+		List<String> theseIndexes;
+		String table;
+
+		try{
+			while( cur.moveToNext() ){
+				table = cur.getString(1).toLowerCase( Locale.US );
+				theseIndexes = rval.get( table );
+				if( theseIndexes == null ){
+					theseIndexes = new ArrayList<String>();
+					rval.put( table, theseIndexes );
+				}
+				theseIndexes.add( cur.getString(0) );
+			}
+		}finally{
+			cur.close();
+		}
+		return rval;
+	}
+
+	// Returns the names of a table's columns as the database has them
+	static List<String> getColumnNames( SQLiteDatabase db, String table ){
+		List<String> rval = new ArrayList<String>();
+		Cursor cur = db.rawQuery( "PRAGMA table_info(" + quote(table) + ")", null );
+		try{
+			int nameColumn = cur.getColumnIndexOrThrow( "name" );
+			while( cur.moveToNext() ){
+				rval.add( cur.getString(nameColumn) );
+			}
+		}finally{
+			cur.close();
+		}
+		return rval;
+	}
+
+	// Returns a name quoted for use as an SQL identifier
+	private static String quote( String name ){
+		return "\"" + name.replace( "\"", "\"\"" ) + "\"";
+	}
+
+	/*	Function: getSQLiteVersion
+	 * 	Description: Gets the version of the SQLite library the database runs
+	 * 		on as a single number (3.35.5 is 3035005).
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: int
+	 * 		The version number
+	 * 		0 if it could not be read
+	 * 	Throws: None
+	 */
+	static int getSQLiteVersion( SQLiteDatabase db ){
+		int rval = 0;
+		Cursor cur = null;
+		try{
+			cur = db.rawQuery( "SELECT sqlite_version()", null );
+			if( cur.moveToFirst() ){
+				String[] parts = cur.getString(0).split( "\\." );
+				for( int x = 0; x<3; ++x){
+					rval = rval * 1000 + ((x < parts.length)? Integer.parseInt(parts[x]) : 0);
+				}
+			}
+		}catch( RuntimeException e ){
+			rval = 0;
+		}finally{
+			if( cur != null )
+				cur.close();
+		}
+		return rval;
+	}
+}
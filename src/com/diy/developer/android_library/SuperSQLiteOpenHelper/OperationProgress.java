@@ -0,0 +1,148 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.concurrent.CancellationException;
+
+/*	Class: OperationProgress
+ * 	Description: This class counts the progress of one asynchronous
+ * 		operation, passes it on to a ProgressListener no more often than
+ * 		every REPORT_INTERVAL_NANOS, and carries its cancel flag.
+ *
+ * 		The worker counts tables and rows as it goes; every count checks
+ * 		the flag and throws CancellationException once it is set, so the
+ * 		operation stops at the next row and unwinds through its usual
+ * 		error handling (an import rolls back its transaction).  Bytes are
+ * 		read from the counting stream being watched, which may be filled on
+ * 		another thread.
+ *
+ * 		Only cancel may be called from other threads.
+ */
+final class OperationProgress {
+	// Least time between two progress callbacks
+	static final long REPORT_INTERVAL_NANOS = 250L * 1000 * 1000;
+	// Rows between two looks at the clock
+	private static final int CLOCK_ROWS = 64;
+
+	private final ProgressListener listener;
+	private volatile boolean cancelled = false;
+	private CountingInputStream input = null;
+	private CountingOutputStream output = null;
+	private int tablesDone = 0;
+	private long rowsDone = 0;
+	private long lastReport;
+
+
+	/*	Function: OperationProgress (Constructor)
+	 * 	Description: Creates the progress of a new operation.
+	 * 	Inputs:
+	 * 		listener (ProgressListener)	- where to send progress (may be null)
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	OperationProgress(ProgressListener listener){
+		this.listener = listener;
+		this.lastReport = System.nanoTime();
+	}
+
+	// Reads the bytes done from a stream being imported
+	void watch( CountingInputStream in ){
+		input = in;
+	}
+
+	// Reads the bytes done from a stream being exported to
+	void watch( CountingOutputStream out ){
+		output = out;
+	}
+
+	// Asks the operation to stop at the next row (any thread)
+	void cancel(){
+		cancelled = true;
+	}
+
+	// Returns true once the operation was asked to stop
+	boolean isCancelled(){
+		return cancelled;
+	}
+
+	/*	Function: check
+	 * 	Description: Stops the operation if it was cancelled.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: CancellationException if the operation was cancelled
+	 */
+	void check(){
+		if( cancelled )
+			throw new CancellationException( "Operation was cancelled" );
+	}
+
+	/*	Function: rowDone
+	 * 	Description: Counts a row, stops the operation if it was cancelled
+	 * 		and sends progress if it is time to.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: CancellationException if the operation was cancelled
+	 */
+	void rowDone(){
+		check();
+		if( ++rowsDone % CLOCK_ROWS == 0 )
+			report( false );
+	}
+
+	/*	Function: tableDone
+	 * 	Description: Counts a table, stops the operation if it was cancelled
+	 * 		and sends progress if it is time to.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: CancellationException if the operation was cancelled
+	 */
+	void tableDone(){
+		check();
+		++tablesDone;
+		report( false );
+	}
+
+	// Sends the final progress
+	void finish(){
+		report( true );
+	}
+
+	// sends progress if the interval has passed (or always if forced)
+	private void report( boolean force ){
+		long now;
+
+		if( listener == null )
+			return;
+		now = System.nanoTime();
+		if( force || now - lastReport >= REPORT_INTERVAL_NANOS ){
+			lastReport = now;
+			listener.onProgress( tablesDone, rowsDone, getBytesDone() );
+		}
+	}
+
+	// returns the bytes read or written so far
+	private long getBytesDone(){
+		if( input != null )
+			return input.getCount();
+		if( output != null )
+			return output.getCount();
+		return 0;
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Xml;
+
+/*	Class: ParallelExporter
+ * 	Description: This class writes the records of many tables at once for
+ * 		the parallel xml export.  Each table, or each rowid range of a large
+ * 		table, is a segment that is written to its own temporary file on a
+ * 		read-only connection from the pool, by a fixed number of threads.
+ * 		The segments are then copied into the output in the order they were
+ * 		submitted, so the output is the same as the sequential export.
+ *
+ * 		The caller must keep the pool's writer leased from before the first
+ * 		submit until the last segment is stitched.  The helper's own writes
+ * 		wait for that lease, so every reader sees the same committed data
+ * 		unless the app writes on the active connection without it.
+ *
+ * 		Tables are submitted and stitched on one thread.  The exporter must
+ * 		be closed when done, which stops the threads and deletes any
+ * 		temporary files that are left.
+ */
+final class ParallelExporter {
+	// Tables with more rows than this are split into rowid ranges of about
+	//	this many rows
+	static final long SEGMENT_ROWS = 50000;
+
+	private final ConnectionPool pool;
+	private final File tempDir;
+	private final ExecutorService executor;
+	// the segments of each submitted table that has not been stitched yet
+	private final Queue<List<Future<Segment>>> pending = new LinkedList<List<Future<Segment>>>();
+	// temporary files written and not yet stitched (deleted on close)
+	private final List<File> files = new ArrayList<File>();
+	private boolean closed = false;
+
+
+	/*	Function: ParallelExporter (Constructor)
+	 * 	Description: Creates an exporter and its threads.
+	 * 	Inputs:
+	 * 		pool (ConnectionPool)	- the pool to lease readers from
+	 * 		threads (int)			- the most segments to write at once
+	 * 		tempDir (File)			- where to write the segments
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	ParallelExporter(ConnectionPool pool, int threads, File tempDir){
+		this.pool = pool;
+		this.tempDir = tempDir;
+		this.executor = Executors.newFixedThreadPool( Math.max(1, Math.min(threads, pool.getMaxReaders())) );
+	}
+
+	/*	Function: submit
+	 * 	Description: Splits a table into segments and queues them to be
+	 * 		written.  Tables without rowids are always one segment.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the leased writer (to plan the ranges)
+	 * 		table (String)		- the table to export
+	 * 	Output: None
+	 * 	Throws: SQLException if the table could not be read
+	 */
+	void submit( SQLiteDatabase db, String table ){
+		List<Future<Segment>> segments = new ArrayList<Future<Segment>>();
+		long[] range = getRowidRange( db, table );
+		long count;
+		long width;
+		long low;
+
+		// split the rowids into equal ranges, one per SEGMENT_ROWS rows
+		count = (range == null)? 1 : (range[2] + SEGMENT_ROWS - 1) / SEGMENT_ROWS;
+		if( count <= 1 || range[1] - range[0] < count ){
+			segments.add( executor.submit(new Segment(table, null, null)) );
+		}else{
+			width = (range[1] - range[0]) / count + 1;
+			for( long x = 0; x<count; ++x){
+				low = range[0] + x * width;
+				if( low > range[1] )
+					break;
+				segments.add( executor.submit(new Segment(table, low, (x == count-1)? range[1] : Math.min(low + width - 1, range[1]))) );
+			}
+		}
+		pending.add( segments );
+	}
+
+	/*	Function: awaitNext
+	 * 	Description: Waits for the segments of the next submitted table
+	 * 		without stitching them, so the caller knows whether the table has
+	 * 		any records before it writes the table's start tag.
+	 * 	Inputs: None
+	 * 	Output: int
+	 * 		The number of records in the table's segments
+	 * 	Throws: IOException if a segment could not be written, SQLException
+	 * 		if a segment could not be read
+	 */
+	int awaitNext() throws IOException{
+		int rows = 0;
+
+		for( Future<Segment> thisFuture : pending.element() ){
+			rows += waitFor( thisFuture ).rows;
+		}
+
+		return rows;
+	}
+
+	/*	Function: stitchNext
+	 * 	Description: Waits for the segments of the next submitted table and
+	 * 		copies them to the output in order.  The caller writes the
+	 * 		table's start and end tags around them and must flush its
+	 * 		serializer before calling this if there are records (an empty
+	 * 		table copies nothing, so its tag can stay self-closing).
+	 * 	Inputs:
+	 * 		out (OutputStream)	- the stream the export is written to
+	 * 	Output: int
+	 * 		The number of records copied
+	 * 	Throws: IOException if a segment could not be written or copied,
+	 * 		SQLException if a segment could not be read
+	 */
+	int stitchNext( OutputStream out ) throws IOException{
+		List<Future<Segment>> segments = pending.remove();
+		byte[] copyBuffer = new byte[ 64 * 1024 ];
+		int rows = 0;
+		Segment thisSegment;
+		InputStream in;
+		int count;
+
+		for( Future<Segment> thisFuture : segments ){
+			thisSegment = waitFor( thisFuture );
+			in = new FileInputStream( thisSegment.file );
+			try{
+				while( (count = in.read(copyBuffer)) >= 0 ){
+					out.write( copyBuffer, 0, count );
+				}
+			}finally{
+				in.close();
+				forget( thisSegment.file );
+			}
+			rows += thisSegment.rows;
+		}
+
+		return rows;
+	}
+
+	/*	Function: close
+	 * 	Description: Stops the threads and deletes the temporary files that
+	 * 		have not been stitched.  Segments still being written delete their
+	 * 		own file when they finish.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	void close(){
+		executor.shutdownNow();
+		synchronized( files ){
+			closed = true;
+			for( File thisFile : files ){
+				thisFile.delete();
+			}
+			files.clear();
+		}
+	}
+
+	// waits for a segment, passing on its error
+	private static Segment waitFor( Future<Segment> segment ) throws IOException{
+		try{
+			return segment.get();
+		}catch( InterruptedException e ){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Export was interrupted" );
+		}catch( ExecutionException e ){
+			if( e.getCause() instanceof IOException )
+				throw (IOException) e.getCause();
+			if( e.getCause() instanceof RuntimeException )
+				throw (RuntimeException) e.getCause();
+			throw new IOException( e.getCause().toString() );
+		}
+	}
+
+	// deletes a stitched segment file
+	private void forget( File segment ){
+		synchronized( files ){
+			files.remove( segment );
+		}
+		segment.delete();
+	}
+
+	/*	Function: getRowidRange
+	 * 	Description: Gets the smallest and largest rowid of a table and its
+	 * 		number of rows.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 		table (String)		- the table
+	 * 	Output: long[]
+	 * 		The smallest rowid, largest rowid and row count
+	 * 		Null if the table is empty or has no rowids
+	 * 	Throws: None
+	 */
+	private static long[] getRowidRange( SQLiteDatabase db, String table ){
+		Cursor cur = null;
+		try{
+			cur = db.rawQuery( "SELECT min(rowid), max(rowid), count(*) FROM " + table, null );
+			if( !cur.moveToFirst() || cur.isNull(0) )
+				return null;
+			return new long[]{ cur.getLong(0), cur.getLong(1), cur.getLong(2) };
+		}catch( SQLException e ){
+			// WITHOUT ROWID table
+			return null;
+		}finally{
+			if( cur != null )
+				cur.close();
+		}
+	}
+
+	/*	Class: Segment
+	 * 	Description: Writes the records of a table, or of one rowid range of
+	 * 		it, to a temporary file on a leased reader.  The task returns
+	 * 		itself with the file and record count filled in.
+	 */
+	private final class Segment implements Callable<Segment> {
+		private final String table;
+		private final Long low;
+		private final Long high;
+		private File file;
+		private int rows = 0;
+
+		Segment(String table, Long low, Long high){
+			this.table = table;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		public Segment call() throws IOException{
+			File rval = File.createTempFile( "export", ".xml", tempDir );
+			SQLiteDatabase reader = pool.acquireReader();
+			OutputStream out = null;
+			Cursor thisCur = null;
+			boolean done = false;
+
+			try{
+				if( low == null ){
+					thisCur = reader.rawQuery( "SELECT * FROM " + table, null );
+				}else{
+					thisCur = reader.rawQuery( "SELECT * FROM " + table + " WHERE rowid BETWEEN ? AND ? ORDER BY rowid",
+							new String[]{ low.toString(), high.toString() } );
+				}
+
+				out = new BufferedOutputStream( new FileOutputStream(rval), 64 * 1024 );
+				XmlSerializer serializer = Xml.newSerializer();
+				serializer.setOutput( out, "UTF-8" );
+				rows = SuperSQLiteOpenHelper.writeRecordsXML( serializer, thisCur );
+				serializer.flush();
+				out.close();
+				out = null;
+				done = true;
+			}finally{
+				if( out != null )
+					out.close();
+				if( thisCur != null )
+					thisCur.close();
+				pool.releaseReader( reader );
+
+				synchronized( files ){
+					if( done && !closed ){
+						files.add( rval );
+					}else{
+						rval.delete();
+					}
+				}
+			}
+
+			file = rval;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+/*	Interface: ProgressListener
+ * 	Description: Receives progress from the asynchronous exports, imports
+ * 		and cleans of a SuperSQLiteOpenHelper (exportToFileAsync,
+ * 		importFromFileAsync and cleanDatabaseAsync).  Progress is sent at
+ * 		most every few hundred milliseconds while the operation runs, and
+ * 		once more when it ends, whether it succeeded, failed or was
+ * 		cancelled.  It is sent on the thread doing the work, so listeners
+ * 		should return quickly (post to the UI thread to show it).
+ */
+public interface ProgressListener {
+	/*	Function: onProgress
+	 * 	Description: Called with the progress of an operation so far.
+	 * 	Inputs:
+	 * 		tablesDone (int)	- tables finished
+	 * 		rowsDone (long)		- rows written (exports, imports) so far
+	 * 		bytesDone (long)	- bytes of the file written or read so far
+	 * 								(0 for cleans)
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	void onProgress( int tablesDone, long rowsDone, long bytesDone );
+}
@@ -0,0 +1,314 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.database.Cursor;
+
+/*	Class: QueryCache
+ * 	Description: This class keeps the results of read queries in memory,
+ * 		keyed by the SQL and its arguments, up to a number of bytes.  When
+ * 		it is full the least recently used results are evicted.  Each
+ * 		result remembers the schema tables its SQL names, and writing to a
+ * 		table drops every result that depends on it.
+ *
+ * 		A result that was being read while one of its tables was written
+ * 		is not stored: every invalidation moves the cache to a new
+ * 		generation, and a result read in an older one is thrown away.
+ *
+ * 		All methods are thread safe.
+ */
+final class QueryCache {
+	// Estimated bytes of a result with no rows, a row and a cell
+	private static final long ENTRY_OVERHEAD = 128;
+	private static final long ROW_OVERHEAD = 32;
+	private static final long CELL_OVERHEAD = 16;
+
+	/*	Class: Entry
+	 * 	Description: One cached result.
+	 */
+	static final class Entry {
+		final String[] columns;
+		final Object[][] rows;
+		final String[] tables;
+		final long bytes;
+
+		Entry(String[] columns, Object[][] rows, String[] tables, long bytes){
+			this.columns = columns;
+			this.rows = rows;
+			this.tables = tables;
+			this.bytes = bytes;
+		}
+
+		// Returns a new cursor over the result
+		Cursor newCursor(){
+			return new CachedCursor( columns, rows );
+		}
+	}
+
+	private final long maxBytes;
+	// in access order, so the first entry is the least recently used
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+	private long bytes = 0;
+	private long generation = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+
+	/*	Function: QueryCache (Constructor)
+	 * 	Description: Creates an empty cache.
+	 * 	Inputs:
+	 * 		maxBytes (long)	- the most estimated bytes of results to keep
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	QueryCache(long maxBytes){
+		this.maxBytes = maxBytes;
+	}
+
+	/*	Function: getKey
+	 * 	Description: Builds the cache key of a query.
+	 * 	Inputs:
+	 * 		sql (String)		- the SQL
+	 * 		args (String[])		- the arguments (may be null)
+	 * 	Output: String
+	 * 		The key
+	 * 	Throws: None
+	 */
+	static String getKey( String sql, String[] args ){
+		StringBuilder rval;
+
+		if( args == null || args.length == 0 )
+			return sql;
+		rval = new StringBuilder( sql );
+		// a null argument is told apart from the text "null"
+		for( String thisArg : args ){
+			rval.append( '\u0000' );
+			if( thisArg == null )
+				rval.append( '\u0001' );
+			else
+				rval.append( thisArg.replace("\u0000", "\u0000\u0000") );
+		}
+		return rval.toString();
+	}
+
+	/*	Function: findTables
+	 * 	Description: Finds the tables a query reads, from the table names it
+	 * 		contains as whole words (case-insensitive).
+	 * 	Inputs:
+	 * 		sql (String)		- the SQL
+	 * 		names (String[])	- the lower case names of the schema tables
+	 * 	Output: String[]
+	 * 		The lower case names found (empty if none)
+	 * 	Throws: None
+	 */
+	static String[] findTables( String sql, String[] names ){
+		String lower = sql.toLowerCase( Locale.US );
+		List<String> rval = new ArrayList<String>();
+		int at;
+		int end;
+
+		for( String thisName : names ){
+			at = lower.indexOf( thisName );
+			while( at >= 0 ){
+				end = at + thisName.length();
+				if( (at == 0 || !isNameChar(lower.charAt(at-1)))
+						&& (end == lower.length() || !isNameChar(lower.charAt(end))) ){
+					rval.add( thisName );
+					break;
+				}
+				at = lower.indexOf( thisName, at + 1 );
+			}
+		}
+		return rval.toArray( new String[rval.size()] );
+	}
+
+	// Returns true if a character can be part of an unquoted name
+	private static boolean isNameChar( char c ){
+		return Character.isLetterOrDigit( c ) || c == '_' || c == '$';
+	}
+
+	/*	Function: read
+	 * 	Description: Reads every row of a cursor into a result.
+	 * 	Inputs:
+	 * 		cur (Cursor)		- the rows (not closed)
+	 * 		tables (String[])	- the tables the query reads
+	 * 	Output: Entry
+	 * 		The result
+	 * 	Throws: SQLException if the rows could not be read
+	 */
+	static Entry read( Cursor cur, String[] tables ){
+		String[] columns = cur.getColumnNames();
+		Object[][] rows = new Object[ cur.getCount() ][];
+		long size = ENTRY_OVERHEAD;
+		Object[] thisRow;
+		int x = 0;
+
+		for( String thisColumn : columns ){
+			size += CELL_OVERHEAD + 2 * thisColumn.length();
+		}
+		while( cur.moveToNext() ){
+			thisRow = new Object[ columns.length ];
+			size += ROW_OVERHEAD;
+			for( int y = 0; y<columns.length; ++y){
+				switch( cur.getType(y) ){
+				case Cursor.FIELD_TYPE_INTEGER:
+					thisRow[y] = cur.getLong( y );
+					size += CELL_OVERHEAD + 8;
+					break;
+				case Cursor.FIELD_TYPE_FLOAT:
+					thisRow[y] = cur.getDouble( y );
+					size += CELL_OVERHEAD + 8;
+					break;
+				case Cursor.FIELD_TYPE_STRING:
+					thisRow[y] = cur.getString( y );
+					size += CELL_OVERHEAD + 24 + 2 * ((String) thisRow[y]).length();
+					break;
+				case Cursor.FIELD_TYPE_BLOB:
+					thisRow[y] = cur.getBlob( y );
+					size += CELL_OVERHEAD + ((byte[]) thisRow[y]).length;
+					break;
+				default:
+					size += 4;
+					break;
+				}
+			}
+			rows[x++] = thisRow;
+		}
+
+		return new Entry( columns, rows, tables, size );
+	}
+
+	/*	Function: get
+	 * 	Description: Looks up a result and counts the hit or miss.
+	 * 	Inputs:
+	 * 		key (String)	- the key of the query (see getKey)
+	 * 	Output: Cursor
+	 * 		A new cursor over the cached result
+	 * 		Null if it is not cached
+	 * 	Throws: None
+	 */
+	synchronized Cursor get( String key ){
+		Entry thisEntry = entries.get( key );
+
+		if( thisEntry == null ){
+			++misses;
+			return null;
+		}
+		++hits;
+		return thisEntry.newCursor();
+	}
+
+	// Returns the current generation (read before running a query to store)
+	synchronized long getGeneration(){
+		return generation;
+	}
+
+	/*	Function: put
+	 * 	Description: Stores a result and evicts the least recently used
+	 * 		results until it fits.  The result is not stored if a table was
+	 * 		written since its query started, or if it is bigger than the
+	 * 		whole cache.
+	 * 	Inputs:
+	 * 		key (String)		- the key of the query
+	 * 		thisEntry (Entry)	- the result
+	 * 		started (long)		- the generation when the query started
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	synchronized void put( String key, Entry thisEntry, long started ){
+		Iterator<Entry> oldest;
+		Entry replaced;
+
+		if( started != generation || thisEntry.bytes > maxBytes )
+			return;
+
+		replaced = entries.put( key, thisEntry );
+		if( replaced != null )
+			bytes -= replaced.bytes;
+		bytes += thisEntry.bytes;
+
+		oldest = entries.values().iterator();
+		while( bytes > maxBytes && oldest.hasNext() ){
+			bytes -= oldest.next().bytes;
+			oldest.remove();
+			++evictions;
+		}
+	}
+
+	/*	Function: invalidate
+	 * 	Description: Drops every result that reads a table.
+	 * 	Inputs:
+	 * 		table (String)	- the table that was written
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	synchronized void invalidate( String table ){
+		Iterator<Entry> thisEntry = entries.values().iterator();
+		String name = table.toLowerCase( Locale.US );
+		Entry current;
+
+		++generation;
+		while( thisEntry.hasNext() ){
+			current = thisEntry.next();
+			for( String thisTable : current.tables ){
+				if( thisTable.equals(name) ){
+					bytes -= current.bytes;
+					thisEntry.remove();
+					break;
+				}
+			}
+		}
+	}
+
+	// Drops every result
+	synchronized void clear(){
+		++generation;
+		entries.clear();
+		bytes = 0;
+	}
+
+	// Returns the number of lookups that found a result
+	synchronized long getHits(){
+		return hits;
+	}
+
+	// Returns the number of lookups that had to run the query
+	synchronized long getMisses(){
+		return misses;
+	}
+
+	// Returns the number of results evicted to make room
+	synchronized long getEvictions(){
+		return evictions;
+	}
+
+	// Returns the estimated bytes of the results kept
+	synchronized long getBytes(){
+		return bytes;
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.Xml;
+
+/*	Class: RecordPipeline
+ * 	Description: This class parses an xml export on its own thread and
+ * 		hands the records to the importing thread through a bounded queue.
+ * 		Parsing and inserting then overlap, and when the inserts fall behind
+ * 		the parser waits for room in the queue instead of reading ahead, so
+ * 		memory use stays bounded by the queue's capacity.
+ *
+ * 		Only tables and columns known to the database are queued.  Each
+ * 		record carries the bind index (see BulkInserter) and text of every
+ * 		column it has; a record without bind indexes marks the end of a
+ * 		table.  Parse errors are passed to the importing thread when it
+ * 		reaches them.
+ *
+ * 		The parser runs on a thread of its own rather than on the caller's
+ * 		executor, which may have a single thread already busy importing.
+ * 		The pipeline must be closed when done, which lets the parser thread
+ * 		finish early if the import stopped.
+ */
+final class RecordPipeline {
+	// Records that can wait in the queue
+	static final int DEFAULT_CAPACITY = 1024;
+	// How long the parser waits for room before checking if it was closed
+	private static final long PUT_WAIT_MS = 250;
+
+	/*	Class: Record
+	 * 	Description: One queued record, or the end of a table.
+	 */
+	static final class Record {
+		final String table;
+		final int[] bindIndexes;
+		final String[] values;
+
+		Record(String table, int[] bindIndexes, String[] values){
+			this.table = table;
+			this.bindIndexes = bindIndexes;
+			this.values = values;
+		}
+
+		// Returns true if this marks the end of its table
+		boolean isEndOfTable(){
+			return bindIndexes == null;
+		}
+	}
+
+	// Queued when the Data element is found, and at the end of the document
+	private static final Record DATA_FOUND = new Record( null, null, null );
+	private static final Record END = new Record( null, null, null );
+
+	private final CountingInputStream in;
+	private final Map<String, String[]> tableColumns;
+	private final BlockingQueue<Record> queue;
+	private final Thread thread;
+	private volatile boolean closed = false;
+	private volatile Exception error = null;
+	private boolean ended = false;
+
+
+	/*	Function: RecordPipeline (Constructor)
+	 * 	Description: Creates a pipeline for a stream.  Nothing is read until
+	 * 		start is called.
+	 * 	Inputs:
+	 * 		in (InputStream)					- the xml to import (should be
+	 * 												buffered)
+	 * 		tableColumns (Map<String, String[]>)	- the columns of each table
+	 * 												in the database
+	 * 		capacity (int)						- the most records to queue
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	RecordPipeline(InputStream in, Map<String, String[]> tableColumns, int capacity){
+		this.in = new CountingInputStream( in );
+		this.tableColumns = tableColumns;
+		this.queue = new ArrayBlockingQueue<Record>( capacity );
+		this.thread = new Thread( new Runnable(){
+			@Override
+			public void run(){
+				parse();
+			}
+		}, "RecordPipeline" );
+		this.thread.setDaemon( true );
+	}
+
+	// Returns the stream being parsed (to count the bytes read)
+	CountingInputStream getInput(){
+		return in;
+	}
+
+	// Starts parsing
+	void start(){
+		thread.start();
+	}
+
+	/*	Function: awaitData
+	 * 	Description: Waits until the parser finds the Data element.
+	 * 	Inputs: None
+	 * 	Output: boolean
+	 * 		True if the Data element was found
+	 * 		False if the document has none
+	 * 	Throws: XmlPullParserException or IOException if the data could not be
+	 * 		read
+	 */
+	boolean awaitData() throws XmlPullParserException, IOException{
+		return next() == DATA_FOUND;
+	}
+
+	/*	Function: next
+	 * 	Description: Waits for the next record.
+	 * 	Inputs: None
+	 * 	Output: Record
+	 * 		The record
+	 * 		Null at the end of the document
+	 * 	Throws: XmlPullParserException or IOException if the data could not be
+	 * 		read (InterruptedIOException if the thread was interrupted)
+	 */
+	Record next() throws XmlPullParserException, IOException{
+		Record rval;
+
+		if( ended )
+			return null;
+		try{
+			rval = queue.take();
+		}catch( InterruptedException e ){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Import was interrupted" );
+		}
+
+		if( rval == END ){
+			ended = true;
+			if( error instanceof XmlPullParserException )
+				throw (XmlPullParserException) error;
+			if( error instanceof IOException )
+				throw (IOException) error;
+			if( error instanceof RuntimeException )
+				throw (RuntimeException) error;
+			if( error != null )
+				throw new IOException( error.toString() );
+			return null;
+		}
+		return rval;
+	}
+
+	// Stops the parser at its next record (it does not close the stream)
+	void close(){
+		closed = true;
+		queue.clear();
+	}
+
+	/*	Function: parse
+	 * 	Description: Parses the document and queues its records, then the
+	 * 		end.  Runs on the pipeline's thread.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None (errors are passed on with the end)
+	 */
+	private void parse(){
+		XmlPullParser parser = Xml.newPullParser();
+		Map<String, Integer> bindIndexes = new HashMap<String, Integer>();
+		String[] columns;
+		String thisTable;
+		Integer bindIndex;
+		int[] indexes;
+		String[] values;
+		int count;
+
+		try{
+			parser.setInput( in, null );
+			if( !SuperSQLiteOpenHelper.skipToTag(parser, SuperSQLiteOpenHelper.XML_DATA_TAG) )
+				return;
+			put( DATA_FOUND );
+
+			// each child of the Data element is a table
+			while( parser.nextTag() == XmlPullParser.START_TAG ){
+				thisTable = parser.getName();
+				columns = tableColumns.get( thisTable );
+				if( columns == null ){
+					SuperSQLiteOpenHelper.skipElement( parser );
+					continue;
+				}
+				bindIndexes.clear();
+				for( int x = 0; x<columns.length; ++x){
+					bindIndexes.put( columns[x], x+1 );
+				}
+
+				// each child of the table is a single record
+				while( parser.nextTag() == XmlPullParser.START_TAG ){
+					indexes = new int[ columns.length ];
+					values = new String[ columns.length ];
+					count = 0;
+					// each child of the record is a single column
+					while( parser.nextTag() == XmlPullParser.START_TAG ){
+						bindIndex = bindIndexes.get( parser.getName() );
+						if( bindIndex == null ){
+							SuperSQLiteOpenHelper.skipElement( parser );
+							continue;
+						}
+						if( count == indexes.length ){
+							indexes = Arrays.copyOf( indexes, count * 2 + 1 );
+							values = Arrays.copyOf( values, count * 2 + 1 );
+						}
+						indexes[count] = bindIndex;
+						values[count++] = parser.nextText();
+					}
+					put( new Record(thisTable, Arrays.copyOf(indexes, count), values) );
+				}
+				put( new Record(thisTable, null, null) );
+			}
+		}catch( Exception e ){
+			if( !closed )
+				error = e;
+		}finally{
+			try{
+				put( END );
+			}catch( InterruptedIOException e ){
+				// closed, nobody is waiting for the end
+			}
+		}
+	}
+
+	// queues a record, waiting for room until the pipeline is closed
+	private void put( Record thisRecord ) throws InterruptedIOException{
+		try{
+			while( !closed ){
+				if( queue.offer(thisRecord, PUT_WAIT_MS, TimeUnit.MILLISECONDS) )
+					return;
+			}
+		}catch( InterruptedException e ){
+			Thread.currentThread().interrupt();
+		}
+		throw new InterruptedIOException( "Import was stopped" );
+	}
+}
@@ -0,0 +1,608 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/*	Class: SchemaCodeGenerator
+ * 	Description: This class writes Java sources for a schema at one
+ * 		version, to be run as a build step.  For every table it writes a row
+ * 		class with one typed field per column and a DAO that reads and
+ * 		writes those rows:
+ * 			<Table>Row	- public fields, typed from the column's declared type
+ * 						  (INTEGER as long, REAL as double, BLOB as byte[] and
+ * 						  everything else as String; nullable numbers are boxed)
+ * 			<Table>Dao	- the table's column list and fixed column indexes, a
+ * 						  read(Cursor, Row) that fills a row by index, and
+ * 						  insert, update, delete and get through statements
+ * 						  compiled once per DAO
+ *
+ * 		Update, delete and get are only written for tables with a one
+ * 		column primary key.  An INTEGER PRIMARY KEY is left out of inserts so
+ * 		SQLite picks it, and insert stores the new key in the row.
+ *
+ * 		The sources do not depend on this library and use no reflection.
+ * 		Running the generator on every build keeps them in step with the
+ * 		schema; each DAO checks the database is at the version it was
+ * 		generated for.
+ *
+ * 		From the command line (with the app's classes and android.jar on the
+ * 		class path):
+ * 			java ...SchemaCodeGenerator <helper class> <package> <source dir>
+ * 		reads the helper's static DATABASE_SCHEMA and DATABASE_VERSION
+ * 		fields.
+ */
+public final class SchemaCodeGenerator {
+	// Java types of the fields
+	private static final int TYPE_LONG = 0;
+	private static final int TYPE_DOUBLE = 1;
+	private static final int TYPE_STRING = 2;
+	private static final int TYPE_BLOB = 3;
+	private static final String[] JAVA_TYPES = { "long", "double", "String", "byte[]" };
+	private static final String[] BOXED_TYPES = { "Long", "Double", "String", "byte[]" };
+	private static final String[] CURSOR_GETTERS = { "getLong", "getDouble", "getString", "getBlob" };
+	private static final String[] STATEMENT_BINDERS = { "bindLong", "bindDouble", "bindString", "bindBlob" };
+	// Words that cannot be field names
+	private static final Set<String> JAVA_KEYWORDS = new HashSet<String>( Arrays.asList(
+			"abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+			"continue", "default", "do", "double", "else", "enum", "extends", "false", "final", "finally",
+			"float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long",
+			"native", "new", "null", "package", "private", "protected", "public", "return", "short", "static",
+			"strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "true",
+			"try", "void", "volatile", "while") );
+
+	private final CompiledSchema schema;
+	private final String packageName;
+
+
+	/*	Function: SchemaCodeGenerator (Constructor)
+	 * 	Description: Creates a generator for a schema at a version.
+	 * 	Inputs:
+	 * 		DB_Schema (String[][][])	- the schema (syntax in SuperSQLiteOpenHelper)
+	 * 		DB_Version (int)			- the version to generate for
+	 * 		packageName (String)		- the package of the generated classes
+	 * 	Output: The new object
+	 * 	Throws: IllegalArgumentException if the schema is not valid
+	 */
+	public SchemaCodeGenerator(String[][][] DB_Schema, int DB_Version, String packageName){
+		this.schema = new CompiledSchema( DB_Schema, DB_Version );
+		this.packageName = packageName;
+	}
+
+	/*	Function: main
+	 * 	Description: Generates the sources for a helper class's schema.
+	 * 	Inputs:
+	 * 		args (String[])	- the helper class name, the package of the
+	 * 							generated classes and the source directory
+	 * 	Output: None
+	 * 	Throws: Exception if the schema could not be read or a file could
+	 * 		not be written
+	 */
+	public static void main( String[] args ) throws Exception{
+		Class<?> helper;
+		Field schemaField;
+		Field versionField;
+
+		if( args.length != 3 ){
+			System.err.println( "Usage: SchemaCodeGenerator <helper class> <package> <source dir>" );
+			System.exit( 1 );
+		}
+
+		helper = Class.forName( args[0] );
+		schemaField = helper.getDeclaredField( "DATABASE_SCHEMA" );
+		versionField = helper.getDeclaredField( "DATABASE_VERSION" );
+		schemaField.setAccessible( true );
+		versionField.setAccessible( true );
+
+		for( File thisFile : new SchemaCodeGenerator( (String[][][]) schemaField.get(null), versionField.getInt(null),
+				args[1]).writeTo(new File(args[2])).keySet() ){
+			System.out.println( thisFile );
+		}
+	}
+
+	/*	Function: generate
+	 * 	Description: Generates the sources of every table that exists at
+	 * 		the version.
+	 * 	Inputs: None
+	 * 	Output: Map<String, String>
+	 * 		The source of each class, by class name, in schema order
+	 * 	Throws: None
+	 */
+	public Map<String, String> generate(){
+		Map<String, String> rval = new LinkedHashMap<String, String>();
+		TableModel model;
+
+		for( CompiledSchema.Table thisTable : schema.getTables() ){
+			if( !thisTable.existsAt(schema.getVersion()) )
+				continue;
+			model = new TableModel( thisTable, schema.getVersion() );
+			rval.put( model.rowClass, writeRowClass(model) );
+			rval.put( model.daoClass, writeDaoClass(model) );
+		}
+		return rval;
+	}
+
+	/*	Function: writeTo
+	 * 	Description: Generates the sources and writes them under a source
+	 * 		directory, in the folders of their package.  Existing files are
+	 * 		overwritten.
+	 * 	Inputs:
+	 * 		sourceDir (File)	- the root of the source tree
+	 * 	Output: Map<File, String>
+	 * 		The files written, with the class each holds
+	 * 	Throws: IOException if a file could not be written
+	 */
+	public Map<File, String> writeTo( File sourceDir ) throws IOException{
+		Map<File, String> rval = new LinkedHashMap<File, String>();
+		File dir = (packageName.length() == 0)? sourceDir : new File( sourceDir, packageName.replace('.', File.separatorChar) );
+		File thisFile;
+		Writer out;
+
+		if( !dir.isDirectory() && !dir.mkdirs() )
+			throw new IOException( "Could not create " + dir );
+		for( Map.Entry<String, String> thisClass : generate().entrySet() ){
+			thisFile = new File( dir, thisClass.getKey() + ".java" );
+			out = new OutputStreamWriter( new FileOutputStream(thisFile), "UTF-8" );
+			try{
+				out.write( thisClass.getValue() );
+			}finally{
+				out.close();
+			}
+			rval.put( thisFile, thisClass.getKey() );
+		}
+		return rval;
+	}
+
+	/*	Class: TableModel
+	 * 	Description: What the generated classes of one table are made from:
+	 * 		the Java names and types of its columns and its key.
+	 */
+	private static final class TableModel {
+		final String table;
+		final String rowClass;
+		final String daoClass;
+		final String[] columns;
+		final String[] fields;
+		final int[] types;
+		final boolean[] nullable;
+		// the column of the one column primary key (-1 if none)
+		final int key;
+		// true if the key is an INTEGER PRIMARY KEY (SQLite's rowid)
+		final boolean rowidKey;
+
+		TableModel(CompiledSchema.Table table, int version){
+			String[] definitions = table.getColumnsAt( version );
+			Set<String> usedFields = new HashSet<String>();
+			String baseName = toJavaName( table.getName(), true );
+			String def;
+			int keyColumn = -1;
+			boolean rowid = false;
+
+			this.table = table.getName();
+			this.rowClass = baseName + "Row";
+			this.daoClass = baseName + "Dao";
+			this.columns = table.getColumnNamesAt( version );
+			this.fields = new String[ columns.length ];
+			this.types = new int[ columns.length ];
+			this.nullable = new boolean[ columns.length ];
+
+			for( int x = 0; x<columns.length; ++x){
+				def = definitions[x].toUpperCase( Locale.US );
+				types[x] = getType( definitions[x].substring(columns[x].length()).trim() );
+				fields[x] = toJavaName( columns[x], false );
+				while( !usedFields.add(fields[x]) ){
+					fields[x] += x;
+				}
+				if( hasWords(def, "PRIMARY", "KEY") ){
+					keyColumn = x;
+					rowid = types[x] == TYPE_LONG && getTypeName( definitions[x].substring(columns[x].length()) )
+							.equalsIgnoreCase( "INTEGER" );
+				}
+				nullable[x] = !hasWords( def, "NOT", "NULL" ) && !(keyColumn == x && rowid);
+			}
+
+			// a key in the table constraint counts if it has one column
+			if( keyColumn < 0 )
+				keyColumn = getConstraintKey( table.getConstraint(), columns );
+			this.key = keyColumn;
+			this.rowidKey = rowid;
+		}
+
+		// Returns the declared type name of a column (what follows its name
+		//	up to the first constraint)
+		private static String getTypeName( String rest ){
+			StringBuilder rval = new StringBuilder();
+			for( String thisWord : rest.trim().split("\\s+") ){
+				if( thisWord.length() == 0 || thisWord.startsWith("(") )
+					break;
+				String upper = thisWord.toUpperCase( Locale.US );
+				if( upper.equals("PRIMARY") || upper.equals("NOT") || upper.equals("NULL") || upper.equals("UNIQUE")
+						|| upper.equals("DEFAULT") || upper.equals("CHECK") || upper.equals("REFERENCES")
+						|| upper.equals("COLLATE") || upper.equals("CONSTRAINT") || upper.equals("GENERATED")
+						|| upper.equals("AS") )
+					break;
+				if( rval.length() > 0 )
+					rval.append( ' ' );
+				rval.append( thisWord );
+			}
+			return rval.toString();
+		}
+
+		// Returns the Java type of a column from SQLite's type affinity rules
+		private static int getType( String rest ){
+			String type = getTypeName( rest ).toUpperCase( Locale.US );
+			if( type.contains("INT") )
+				return TYPE_LONG;
+			if( type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT") )
+				return TYPE_STRING;
+			if( type.contains("BLOB") )
+				return TYPE_BLOB;
+			if( type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB") )
+				return TYPE_DOUBLE;
+			// NUMERIC and untyped columns can hold anything, text keeps it all
+			return TYPE_STRING;
+		}
+
+		// Returns true if a definition has two words next to each other
+		private static boolean hasWords( String def, String first, String second ){
+			return def.matches( "(?s).*\\b" + first + "\\s+" + second + "\\b.*" );
+		}
+
+		// Returns the column of a one column PRIMARY KEY(...) constraint, -1 if none
+		private static int getConstraintKey( String constraint, String[] columns ){
+			String upper = constraint.toUpperCase( Locale.US );
+			int start = upper.indexOf( "PRIMARY" );
+			int open;
+			int close;
+			String keyColumn;
+
+			if( start < 0 || !hasWords(upper.substring(start), "PRIMARY", "KEY") )
+				return -1;
+			open = constraint.indexOf( '(', start );
+			close = (open < 0)? -1 : constraint.indexOf( ')', open );
+			if( close < 0 )
+				return -1;
+			keyColumn = constraint.substring( open+1, close ).trim();
+			if( keyColumn.indexOf(',') >= 0 )
+				return -1;
+			keyColumn = CompiledSchema.getColumnName( keyColumn );
+			for( int x = 0; x<columns.length; ++x){
+				if( columns[x].equalsIgnoreCase(keyColumn) )
+					return x;
+			}
+			return -1;
+		}
+
+		// Returns the Java type of a column's field
+		String getFieldType( int column ){
+			return (nullable[column]? BOXED_TYPES : JAVA_TYPES)[ types[column] ];
+		}
+	}
+
+	/*	Function: toJavaName
+	 * 	Description: Turns an SQL name into a Java name: quotes are removed,
+	 * 		words split on anything but letters and digits are joined in camel
+	 * 		case, and keywords get a trailing underscore.
+	 * 	Inputs:
+	 * 		name (String)		- the SQL name
+	 * 		upper (boolean)		- true for a class name (starts upper case)
+	 * 	Output: String
+	 * 		The Java name
+	 * 	Throws: None
+	 */
+	static String toJavaName( String name, boolean upper ){
+		StringBuilder rval = new StringBuilder();
+		boolean nextUpper = upper;
+		char c;
+
+		for( int x = 0; x<name.length(); ++x){
+			c = name.charAt( x );
+			if( !Character.isLetterOrDigit(c) ){
+				nextUpper = rval.length() > 0 || upper;
+				continue;
+			}
+			if( rval.length() == 0 && Character.isDigit(c) )
+				rval.append( '_' );
+			rval.append( nextUpper? Character.toUpperCase(c) : (rval.length() == 0)? Character.toLowerCase(c) : c );
+			nextUpper = false;
+		}
+
+		if( rval.length() == 0 )
+			rval.append( upper? "Table" : "column" );
+		if( JAVA_KEYWORDS.contains(rval.toString()) )
+			rval.append( '_' );
+		return rval.toString();
+	}
+
+	// Returns a string as a Java string literal
+	private static String quote( String value ){
+		StringBuilder rval = new StringBuilder( "\"" );
+		char c;
+		for( int x = 0; x<value.length(); ++x){
+			c = value.charAt( x );
+			if( c == '"' || c == '\\' )
+				rval.append( '\\' ).append( c );
+			else if( c < ' ' )
+				rval.append( String.format("\\u%04x", (int) c) );
+			else
+				rval.append( c );
+		}
+		return rval.append( '"' ).toString();
+	}
+
+	// Starts a generated file with its package and the note not to edit it
+	private StringBuilder startFile( String[] imports ){
+		StringBuilder rval = new StringBuilder();
+		rval.append( "// Generated by SchemaCodeGenerator for schema version " ).append( schema.getVersion() )
+				.append( ".  Do not edit.\n" );
+		if( packageName.length() > 0 )
+			rval.append( "package " ).append( packageName ).append( ";\n" );
+		rval.append( '\n' );
+		for( String thisImport : imports ){
+			rval.append( "import " ).append( thisImport ).append( ";\n" );
+		}
+		if( imports.length > 0 )
+			rval.append( '\n' );
+		return rval;
+	}
+
+	/*	Function: writeRowClass
+	 * 	Description: Writes the row class of a table.
+	 * 	Inputs:
+	 * 		model (TableModel)	- the table
+	 * 	Output: String
+	 * 		The source
+	 * 	Throws: None
+	 */
+	private String writeRowClass( TableModel model ){
+		StringBuilder src = startFile( new String[0] );
+
+		src.append( "// One row of " ).append( model.table ).append( '\n' );
+		src.append( "public final class " ).append( model.rowClass ).append( " {\n" );
+		for( int x = 0; x<model.columns.length; ++x){
+			src.append( "\tpublic " ).append( model.getFieldType(x) ).append( ' ' ).append( model.fields[x] )
+					.append( ";\t// " ).append( model.columns[x] ).append( '\n' );
+		}
+		src.append( "}\n" );
+		return src.toString();
+	}
+
+	/*	Function: writeDaoClass
+	 * 	Description: Writes the DAO class of a table.
+	 * 	Inputs:
+	 * 		model (TableModel)	- the table
+	 * 	Output: String
+	 * 		The source
+	 * 	Throws: None
+	 */
+	private String writeDaoClass( TableModel model ){
+		StringBuilder src = startFile( new String[]{ "android.database.Cursor", "android.database.sqlite.SQLiteDatabase",
+				"android.database.sqlite.SQLiteStatement" } );
+		String row = model.rowClass;
+		String keyType = null;
+		StringBuilder columnList = new StringBuilder();
+		StringBuilder insertColumns = new StringBuilder();
+		StringBuilder insertValues = new StringBuilder();
+		StringBuilder updateSet = new StringBuilder();
+		int param;
+
+		for( int x = 0; x<model.columns.length; ++x){
+			if( x > 0 )
+				columnList.append( ',' );
+			columnList.append( model.columns[x] );
+			if( x == model.key && model.rowidKey )
+				continue;
+			if( insertColumns.length() > 0 ){
+				insertColumns.append( ',' );
+				insertValues.append( ',' );
+			}
+			insertColumns.append( model.columns[x] );
+			insertValues.append( '?' );
+			if( x != model.key ){
+				if( updateSet.length() > 0 )
+					updateSet.append( ',' );
+				updateSet.append( model.columns[x] ).append( "=?" );
+			}
+		}
+		if( model.key >= 0 )
+			keyType = JAVA_TYPES[ model.types[model.key] ];
+
+		// constants
+		src.append( "// Reads and writes rows of " ).append( model.table ).append( " through statements compiled once.\n" );
+		src.append( "// The statements belong to the connection the DAO was made with; close the DAO\n" );
+		src.append( "// before closing the connection.\n" );
+		src.append( "public final class " ).append( model.daoClass ).append( " {\n" );
+		src.append( "\tpublic static final int SCHEMA_VERSION = " ).append( schema.getVersion() ).append( ";\n" );
+		src.append( "\tpublic static final String TABLE = " ).append( quote(model.table) ).append( ";\n" );
+		src.append( "\tpublic static final String COLUMNS = " ).append( quote(columnList.toString()) ).append( ";\n" );
+		for( int x = 0; x<model.columns.length; ++x){
+			src.append( "\tpublic static final int COLUMN_" )
+					.append( toJavaName(model.columns[x], false).replaceAll("([a-z0-9])([A-Z])", "$1_$2")
+							.toUpperCase(Locale.US) )
+					.append( " = " ).append( x ).append( ";\n" );
+		}
+		src.append( "\tprivate static final String SELECT_SQL = \"SELECT \" + COLUMNS + \" FROM \" + TABLE;\n" );
+		src.append( "\tprivate static final String INSERT_SQL = " )
+				.append( quote((insertColumns.length() == 0)? "INSERT INTO " + model.table + " DEFAULT VALUES"
+						: "INSERT INTO " + model.table + " (" + insertColumns + ") VALUES (" + insertValues + ")") )
+				.append( ";\n" );
+		if( model.key >= 0 ){
+			src.append( "\tprivate static final String GET_SQL = SELECT_SQL + " )
+					.append( quote(" WHERE " + model.columns[model.key] + "=?") ).append( ";\n" );
+			if( updateSet.length() > 0 )
+				src.append( "\tprivate static final String UPDATE_SQL = " ).append( quote("UPDATE " + model.table + " SET "
+						+ updateSet + " WHERE " + model.columns[model.key] + "=?") ).append( ";\n" );
+			src.append( "\tprivate static final String DELETE_SQL = " ).append( quote("DELETE FROM " + model.table
+					+ " WHERE " + model.columns[model.key] + "=?") ).append( ";\n" );
+		}
+		src.append( '\n' );
+		src.append( "\tprivate final SQLiteDatabase db;\n" );
+		src.append( "\tprivate SQLiteStatement insertStatement;\n" );
+		if( model.key >= 0 ){
+			if( updateSet.length() > 0 )
+				src.append( "\tprivate SQLiteStatement updateStatement;\n" );
+			src.append( "\tprivate SQLiteStatement deleteStatement;\n" );
+		}
+		src.append( '\n' );
+
+		// constructor
+		src.append( "\tpublic " ).append( model.daoClass ).append( "(SQLiteDatabase db) {\n" );
+		src.append( "\t\tif( db.getVersion() != SCHEMA_VERSION )\n" );
+		src.append( "\t\t\tthrow new IllegalStateException( \"Database is at version \" + db.getVersion() + \", " )
+				.append( model.daoClass ).append( " was generated for \" + SCHEMA_VERSION );\n" );
+		src.append( "\t\tthis.db = db;\n" );
+		src.append( "\t}\n\n" );
+
+		// reading
+		src.append( "\t// Returns every row, columns in COLUMNS order\n" );
+		src.append( "\tpublic Cursor queryAll() {\n" );
+		src.append( "\t\treturn db.rawQuery( SELECT_SQL, null );\n" );
+		src.append( "\t}\n\n" );
+		src.append( "\t// Returns the rows matching a WHERE clause, columns in COLUMNS order\n" );
+		src.append( "\tpublic Cursor query(String where, String[] args) {\n" );
+		src.append( "\t\treturn db.rawQuery( SELECT_SQL + \" WHERE \" + where, args );\n" );
+		src.append( "\t}\n\n" );
+		src.append( "\t// Fills a row from the cursor's current row (which must have the columns\n" );
+		src.append( "\t//	in COLUMNS order) and returns it, so one row can be reused for a whole cursor\n" );
+		src.append( "\tpublic static " ).append( row ).append( " read(Cursor cur, " ).append( row ).append( " row) {\n" );
+		for( int x = 0; x<model.columns.length; ++x){
+			src.append( "\t\trow." ).append( model.fields[x] ).append( " = " );
+			if( model.nullable[x] && (model.types[x] == TYPE_LONG || model.types[x] == TYPE_DOUBLE) )
+				src.append( "cur.isNull(" ).append( x ).append( ")? null : " );
+			src.append( "cur." ).append( CURSOR_GETTERS[model.types[x]] ).append( '(' ).append( x ).append( ");\n" );
+		}
+		src.append( "\t\treturn row;\n" );
+		src.append( "\t}\n\n" );
+
+		if( model.key >= 0 ){
+			src.append( "\t// Returns the row with a key, null if there is none\n" );
+			src.append( "\tpublic " ).append( row ).append( " get(" ).append( keyType ).append( " key) {\n" );
+			src.append( "\t\tCursor cur = db.rawQuery( GET_SQL, new String[]{ " )
+					.append( (model.types[model.key] == TYPE_STRING)? "key" : "String.valueOf(key)" ).append( " } );\n" );
+			src.append( "\t\ttry{\n" );
+			src.append( "\t\t\treturn cur.moveToFirst()? read( cur, new " ).append( row ).append( "() ) : null;\n" );
+			src.append( "\t\t}finally{\n" );
+			src.append( "\t\t\tcur.close();\n" );
+			src.append( "\t\t}\n" );
+			src.append( "\t}\n\n" );
+		}
+
+		// writing
+		src.append( "\t// Inserts a row and returns its rowid (-1 on a conflict that was ignored)\n" );
+		src.append( "\tpublic long insert(" ).append( row ).append( " row) {\n" );
+		src.append( "\t\tif( insertStatement == null )\n" );
+		src.append( "\t\t\tinsertStatement = db.compileStatement( INSERT_SQL );\n" );
+		param = 1;
+		for( int x = 0; x<model.columns.length; ++x){
+			if( x == model.key && model.rowidKey )
+				continue;
+			writeBind( src, model, "insertStatement", param++, x );
+		}
+		if( model.rowidKey ){
+			src.append( "\t\tlong id = insertStatement.executeInsert();\n" );
+			src.append( "\t\tif( id != -1 )\n" );
+			src.append( "\t\t\trow." ).append( model.fields[model.key] ).append( " = id;\n" );
+			src.append( "\t\treturn id;\n" );
+		}else{
+			src.append( "\t\treturn insertStatement.executeInsert();\n" );
+		}
+		src.append( "\t}\n\n" );
+
+		if( model.key >= 0 && updateSet.length() > 0 ){
+			src.append( "\t// Writes every column of a row over the row with the same key, returns the rows changed\n" );
+			src.append( "\tpublic int update(" ).append( row ).append( " row) {\n" );
+			src.append( "\t\tif( updateStatement == null )\n" );
+			src.append( "\t\t\tupdateStatement = db.compileStatement( UPDATE_SQL );\n" );
+			param = 1;
+			for( int x = 0; x<model.columns.length; ++x){
+				if( x != model.key )
+					writeBind( src, model, "updateStatement", param++, x );
+			}
+			writeBind( src, model, "updateStatement", param, model.key );
+			src.append( "\t\treturn updateStatement.executeUpdateDelete();\n" );
+			src.append( "\t}\n\n" );
+		}
+
+		if( model.key >= 0 ){
+			src.append( "\t// Deletes the row with a key, returns the rows deleted\n" );
+			src.append( "\tpublic int delete(" ).append( keyType ).append( " key) {\n" );
+			src.append( "\t\tif( deleteStatement == null )\n" );
+			src.append( "\t\t\tdeleteStatement = db.compileStatement( DELETE_SQL );\n" );
+			if( model.types[model.key] == TYPE_LONG || model.types[model.key] == TYPE_DOUBLE ){
+				src.append( "\t\tdeleteStatement." ).append( STATEMENT_BINDERS[model.types[model.key]] )
+						.append( "( 1, key );\n" );
+			}else{
+				src.append( "\t\tif( key == null )\n" );
+				src.append( "\t\t\tdeleteStatement.bindNull( 1 );\n" );
+				src.append( "\t\telse\n" );
+				src.append( "\t\t\tdeleteStatement." ).append( STATEMENT_BINDERS[model.types[model.key]] )
+						.append( "( 1, key );\n" );
+			}
+			src.append( "\t\treturn deleteStatement.executeUpdateDelete();\n" );
+			src.append( "\t}\n\n" );
+		}
+
+		// closing
+		src.append( "\t// Closes the compiled statements\n" );
+		src.append( "\tpublic void close() {\n" );
+		src.append( "\t\tif( insertStatement != null )\n" );
+		src.append( "\t\t\tinsertStatement.close();\n" );
+		src.append( "\t\tinsertStatement = null;\n" );
+		if( model.key >= 0 ){
+			if( updateSet.length() > 0 ){
+				src.append( "\t\tif( updateStatement != null )\n" );
+				src.append( "\t\t\tupdateStatement.close();\n" );
+				src.append( "\t\tupdateStatement = null;\n" );
+			}
+			src.append( "\t\tif( deleteStatement != null )\n" );
+			src.append( "\t\t\tdeleteStatement.close();\n" );
+			src.append( "\t\tdeleteStatement = null;\n" );
+		}
+		src.append( "\t}\n" );
+		src.append( "}\n" );
+		return src.toString();
+	}
+
+	// Writes the statement that binds one field of the row
+	private static void writeBind( StringBuilder src, TableModel model, String statement, int param, int column ){
+		String field = "row." + model.fields[column];
+		String bind = statement + "." + STATEMENT_BINDERS[ model.types[column] ] + "( " + param + ", " + field + " );\n";
+
+		if( !model.nullable[column] && (model.types[column] == TYPE_LONG || model.types[column] == TYPE_DOUBLE) ){
+			src.append( "\t\t" ).append( bind );
+			return;
+		}
+		src.append( "\t\tif( " ).append( field ).append( " == null )\n" );
+		src.append( "\t\t\t" ).append( statement ).append( ".bindNull( " ).append( param ).append( " );\n" );
+		src.append( "\t\telse\n" );
+		src.append( "\t\t\t" ).append( bind );
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/*	Class: SnapshotReader
+ * 	Description: This class reads the binary snapshot format written by
+ * 		SnapshotWriter (see there for the layout) through a buffered
+ * 		channel.  The header is read first, then the rows of each table in
+ * 		header order with nextRow and one bindCell per column.  Cells are
+ * 		bound straight into a BulkInserter with their stored type.
+ *
+ * 		A reader can also walk a buffer that holds the whole snapshot (a
+ * 		memory-mapped file).  Nothing is copied into Java memory except the
+ * 		values being bound, so heap use depends on the largest cell rather
+ * 		than on the size of the snapshot.
+ *
+ * 		Every length read from the data is checked against the bytes that
+ * 		are left, so a damaged snapshot is reported as a FormatException
+ * 		rather than by trying to allocate what it claims.
+ *
+ * 		The reader is not thread safe and does not close the channel.
+ */
+final class SnapshotReader {
+	/*	Class: FormatException
+	 * 	Description: Thrown when the data is not a valid snapshot (bad
+	 * 		values, unknown markers or a truncated file).
+	 */
+	static final class FormatException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		FormatException(String message){
+			super( message );
+		}
+	}
+
+	// null when the buffer holds the whole snapshot
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+	// bytes not yet read from the channel into the buffer
+	private long channelLeft;
+	private byte[] scratch = new byte[256];
+
+	private int schemaVersion;
+	private String[] tables;
+	private String[][] columns;
+
+
+	/*	Function: SnapshotReader (Constructor)
+	 * 	Description: Creates a reader for a channel.
+	 * 	Inputs:
+	 * 		channel (ReadableByteChannel)	- the channel to read from
+	 * 		size (long)						- the bytes left in the channel
+	 * 		bufferSize (int)				- size of the read buffer in bytes
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	SnapshotReader(ReadableByteChannel channel, long size, int bufferSize){
+		this.channel = channel;
+		this.channelLeft = size;
+		this.buffer = ByteBuffer.allocate( bufferSize );
+		buffer.limit( 0 );
+	}
+
+	/*	Function: SnapshotReader (Constructor)
+	 * 	Description: Creates a reader for a buffer that holds the whole
+	 * 		snapshot, such as a MappedByteBuffer.  The buffer is read from its
+	 * 		position to its limit and is never refilled.
+	 * 	Inputs:
+	 * 		contents (ByteBuffer)	- the snapshot
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	SnapshotReader(ByteBuffer contents){
+		this.channel = null;
+		this.buffer = contents;
+	}
+
+	/*	Function: readHeader
+	 * 	Description: Reads the snapshot header.  Nothing past the magic
+	 * 		number is read if the data is not a snapshot.
+	 * 	Inputs: None
+	 * 	Output: boolean
+	 * 		True if the header was read
+	 * 		False if the data is not a snapshot
+	 * 	Throws: FormatException if the header is not valid, IOException if
+	 * 		it could not be read
+	 */
+	boolean readHeader() throws IOException{
+		int count;
+
+		if( !fill(4) || buffer.getInt() != SnapshotWriter.MAGIC )
+			return false;
+		require( 10 );
+		if( buffer.getShort() != SnapshotWriter.FORMAT_VERSION )
+			throw new FormatException( "Unsupported snapshot format" );
+		schemaVersion = buffer.getInt();
+
+		// every table and column name takes at least its length
+		count = readLength( 4 );
+		tables = new String[ count ];
+		columns = new String[ count ][];
+		for( int x = 0; x<count; ++x){
+			tables[x] = readString();
+			columns[x] = new String[ readLength(4) ];
+			for( int y = 0; y<columns[x].length; ++y){
+				columns[x][y] = readString();
+			}
+		}
+
+		return true;
+	}
+
+	// Returns the schema version the snapshot was written at
+	int getSchemaVersion(){
+		return schemaVersion;
+	}
+
+	// Returns the number of tables in the snapshot
+	int getTableCount(){
+		return tables.length;
+	}
+
+	// Returns a table name by its position in the snapshot
+	String getTable( int index ){
+		return tables[index];
+	}
+
+	// Returns the column names of a table by its position in the snapshot
+	String[] getColumns( int index ){
+		return columns[index];
+	}
+
+	/*	Function: nextRow
+	 * 	Description: Moves to the next row of the current table.
+	 * 	Inputs: None
+	 * 	Output: boolean
+	 * 		True if there is a row (read its cells with bindCell)
+	 * 		False if the table has ended
+	 * 	Throws: FormatException if the marker is not valid, IOException if
+	 * 		it could not be read
+	 */
+	boolean nextRow() throws IOException{
+		require( 1 );
+		byte marker = buffer.get();
+		if( marker == SnapshotWriter.ROW )
+			return true;
+		if( marker == SnapshotWriter.END_OF_TABLE )
+			return false;
+		throw new FormatException( "Bad row marker " + marker );
+	}
+
+	/*	Function: bindCell
+	 * 	Description: Reads the next cell and binds it with its stored type.
+	 * 	Inputs:
+	 * 		inserter (BulkInserter)	- the inserter to bind into
+	 * 		bindIndex (int)			- the bind index (0 or less to skip the cell)
+	 * 	Output: None
+	 * 	Throws: FormatException if the cell is not valid, IOException if it
+	 * 		could not be read
+	 */
+	void bindCell( BulkInserter inserter, int bindIndex ) throws IOException{
+		int length;
+
+		require( 1 );
+		byte type = buffer.get();
+		switch( type ){
+		case SnapshotWriter.CELL_NULL:
+			if( bindIndex > 0 )
+				inserter.bindNull( bindIndex );
+			break;
+		case SnapshotWriter.CELL_INTEGER:
+			require( 8 );
+			if( bindIndex > 0 )
+				inserter.bindLong( bindIndex, buffer.getLong() );
+			else
+				buffer.position( buffer.position() + 8 );
+			break;
+		case SnapshotWriter.CELL_REAL:
+			require( 8 );
+			if( bindIndex > 0 )
+				inserter.bindDouble( bindIndex, buffer.getDouble() );
+			else
+				buffer.position( buffer.position() + 8 );
+			break;
+		case SnapshotWriter.CELL_TEXT:
+			if( bindIndex > 0 )
+				inserter.bindString( bindIndex, readString() );
+			else
+				skip( readLength(1) );
+			break;
+		case SnapshotWriter.CELL_BLOB:
+			length = readLength( 1 );
+			if( bindIndex > 0 ){
+				byte[] value = new byte[ length ];
+				readFully( value, 0, length );
+				inserter.bindBlob( bindIndex, value );
+			}else{
+				skip( length );
+			}
+			break;
+		default:
+			throw new FormatException( "Bad cell type " + type );
+		}
+	}
+
+	/*	Function: readTrailer
+	 * 	Description: Reads the trailer after the last table.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: FormatException if the trailer is missing, IOException if it
+	 * 		could not be read
+	 */
+	void readTrailer() throws IOException{
+		require( 4 );
+		if( buffer.getInt() != SnapshotWriter.END_MAGIC )
+			throw new FormatException( "Snapshot has no trailer" );
+	}
+
+	/*	Function: readLength
+	 * 	Description: Reads a length or count and checks that the data left
+	 * 		can hold that many items.
+	 * 	Inputs:
+	 * 		itemSize (int)	- the fewest bytes each item takes
+	 * 	Output: int
+	 * 		The length
+	 * 	Throws: FormatException if the length is negative or runs past the
+	 * 		end of the data, IOException if it could not be read
+	 */
+	private int readLength( int itemSize ) throws IOException{
+		require( 4 );
+		int rval = buffer.getInt();
+		if( rval < 0 )
+			throw new FormatException( "Bad length " + rval );
+		if( (long) rval * itemSize > buffer.remaining() + ((channel == null)? 0 : channelLeft) )
+			throw new FormatException( "Snapshot is truncated" );
+		return rval;
+	}
+
+	// reads a length-prefixed UTF-8 string
+	private String readString() throws IOException{
+		int length = readLength( 1 );
+		String rval;
+
+		// decode in place when the whole string is in a heap buffer, direct
+		//	(mapped) buffers are copied through the reusable scratch array
+		if( buffer.hasArray() && buffer.remaining() >= length ){
+			rval = new String( buffer.array(), buffer.arrayOffset() + buffer.position(), length, SnapshotWriter.UTF8 );
+			buffer.position( buffer.position() + length );
+			return rval;
+		}
+
+		if( scratch.length < length )
+			scratch = new byte[ Math.max(length, scratch.length * 2) ];
+		readFully( scratch, 0, length );
+		return new String( scratch, 0, length, SnapshotWriter.UTF8 );
+	}
+
+	// reads length bytes into an array, across refills of the buffer
+	private void readFully( byte[] dest, int offset, int length ) throws IOException{
+		int count;
+
+		while( length > 0 ){
+			require( 1 );
+			count = Math.min( buffer.remaining(), length );
+			buffer.get( dest, offset, count );
+			offset += count;
+			length -= count;
+		}
+	}
+
+	// skips length bytes, across refills of the buffer
+	private void skip( int length ) throws IOException{
+		int count;
+
+		while( length > 0 ){
+			require( 1 );
+			count = Math.min( buffer.remaining(), length );
+			buffer.position( buffer.position() + count );
+			length -= count;
+		}
+	}
+
+	// makes sure count bytes are in the buffer, the file is truncated if not
+	private void require( int count ) throws IOException{
+		if( !fill(count) )
+			throw new FormatException( "Snapshot is truncated" );
+	}
+
+	/*	Function: fill
+	 * 	Description: Reads from the channel until at least count bytes are
+	 * 		in the buffer.
+	 * 	Inputs:
+	 * 		count (int)	- the bytes needed (no more than the buffer size)
+	 * 	Output: boolean
+	 * 		True if the bytes are in the buffer
+	 * 		False if the end of the data was reached first
+	 * 	Throws: IOException if the channel could not be read
+	 */
+	private boolean fill( int count ) throws IOException{
+		int read;
+
+		if( buffer.remaining() >= count )
+			return true;
+		if( channel == null )
+			return false;
+
+		buffer.compact();
+		try{
+			while( buffer.position() < count ){
+				read = channel.read( buffer );
+				if( read < 0 )
+					return false;
+				channelLeft -= read;
+			}
+		}finally{
+			buffer.flip();
+		}
+		return true;
+	}
+}
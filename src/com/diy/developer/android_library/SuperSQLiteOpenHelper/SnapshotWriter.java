@@ -0,0 +1,231 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/*	Class: SnapshotWriter
+ * 	Description: This class writes a database to the binary snapshot
+ * 		format through a buffered channel.  Every value keeps the type
+ * 		SQLite stored it with, so a snapshot restores exactly (including
+ * 		BLOBs) and is much smaller than the xml export.
+ *
+ * 	Snapshot format (all numbers big-endian)
+ * 		header
+ * 			int		MAGIC
+ * 			short	FORMAT_VERSION
+ * 			int		schema version of the database
+ * 			int		table count
+ * 			for each table: string name, int column count, string per column
+ * 		body, for each table in header order
+ * 			byte ROW followed by one cell per column, for each row
+ * 			byte END_OF_TABLE
+ * 		trailer
+ * 			int		END_MAGIC (a missing trailer means the file is truncated)
+ *
+ * 		A string is an int byte length followed by its UTF-8 bytes.  A cell
+ * 		is a type byte followed by its value: nothing for CELL_NULL, a long
+ * 		for CELL_INTEGER, a double for CELL_REAL, a string for CELL_TEXT and
+ * 		an int length followed by the bytes for CELL_BLOB.
+ *
+ * 		The writer is not thread safe and does not close the channel.
+ */
+final class SnapshotWriter {
+	// File format
+	static final int MAGIC = 0x53514C53;		// "SQLS"
+	static final int END_MAGIC = 0x454E4453;	// "ENDS"
+	static final short FORMAT_VERSION = 1;
+	static final byte END_OF_TABLE = 0;
+	static final byte ROW = 1;
+	// Cell types
+	static final byte CELL_NULL = 0;
+	static final byte CELL_INTEGER = 1;
+	static final byte CELL_REAL = 2;
+	static final byte CELL_TEXT = 3;
+	static final byte CELL_BLOB = 4;
+
+	static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private long bytesWritten = 0;
+
+
+	/*	Function: SnapshotWriter (Constructor)
+	 * 	Description: Creates a writer for a channel.
+	 * 	Inputs:
+	 * 		channel (WritableByteChannel)	- the channel to write to
+	 * 		bufferSize (int)				- size of the write buffer in bytes
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	SnapshotWriter(WritableByteChannel channel, int bufferSize){
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate( bufferSize );
+	}
+
+	// Returns the number of bytes passed to the channel so far
+	long getBytesWritten(){
+		return bytesWritten;
+	}
+
+	/*	Function: writeHeader
+	 * 	Description: Writes the snapshot header.  The tables must then be
+	 * 		written with writeTable in the same order.
+	 * 	Inputs:
+	 * 		version (int)					- the schema version of the database
+	 * 		tables (Map<String, String[]>)	- the column names of each table
+	 * 	Output: None
+	 * 	Throws: IOException if the header could not be written
+	 */
+	void writeHeader( int version, Map<String, String[]> tables ) throws IOException{
+		ensure( 14 );
+		buffer.putInt( MAGIC );
+		buffer.putShort( FORMAT_VERSION );
+		buffer.putInt( version );
+		buffer.putInt( tables.size() );
+		for( Map.Entry<String, String[]> thisTable : tables.entrySet() ){
+			writeString( thisTable.getKey() );
+			ensure( 4 );
+			buffer.putInt( thisTable.getValue().length );
+			for( String thisColumn : thisTable.getValue() ){
+				writeString( thisColumn );
+			}
+		}
+	}
+
+	/*	Function: writeTable
+	 * 	Description: Writes every row of a table, one cursor row at a time.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database to read from
+	 * 		table (String)		- the table to write
+	 * 	Output: int
+	 * 		The number of rows written
+	 * 	Throws: IOException if the rows could not be written
+	 */
+	int writeTable( SQLiteDatabase db, String table ) throws IOException{
+		Cursor thisCur = db.rawQuery( "SELECT * FROM " + table, null );
+		int columnCount = thisCur.getColumnCount();
+		int rows = 0;
+
+		try{
+			while( thisCur.moveToNext() ){
+				ensure( 1 );
+				buffer.put( ROW );
+				for( int i = 0; i<columnCount; ++i){
+					writeCell( thisCur, i );
+				}
+				++rows;
+			}
+		}finally{
+			thisCur.close();
+		}
+		ensure( 1 );
+		buffer.put( END_OF_TABLE );
+
+		return rows;
+	}
+
+	/*	Function: finish
+	 * 	Description: Writes the trailer and flushes the buffer to the channel.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: IOException if the data could not be written
+	 */
+	void finish() throws IOException{
+		ensure( 4 );
+		buffer.putInt( END_MAGIC );
+		flush();
+	}
+
+	// writes one cell of the current cursor row with its stored type
+	private void writeCell( Cursor cur, int column ) throws IOException{
+		switch( cur.getType(column) ){
+		case Cursor.FIELD_TYPE_INTEGER:
+			ensure( 9 );
+			buffer.put( CELL_INTEGER );
+			buffer.putLong( cur.getLong(column) );
+			break;
+		case Cursor.FIELD_TYPE_FLOAT:
+			ensure( 9 );
+			buffer.put( CELL_REAL );
+			buffer.putDouble( cur.getDouble(column) );
+			break;
+		case Cursor.FIELD_TYPE_STRING:
+			ensure( 1 );
+			buffer.put( CELL_TEXT );
+			writeString( cur.getString(column) );
+			break;
+		case Cursor.FIELD_TYPE_BLOB:
+			ensure( 1 );
+			buffer.put( CELL_BLOB );
+			writeBytes( cur.getBlob(column) );
+			break;
+		default:
+			ensure( 1 );
+			buffer.put( CELL_NULL );
+			break;
+		}
+	}
+
+	// writes a length-prefixed UTF-8 string
+	private void writeString( String value ) throws IOException{
+		writeBytes( value.getBytes(UTF8) );
+	}
+
+	// writes a length-prefixed byte array, in pieces if it is larger than
+	//	the buffer
+	private void writeBytes( byte[] value ) throws IOException{
+		int offset = 0;
+		int length;
+
+		ensure( 4 );
+		buffer.putInt( value.length );
+		while( offset < value.length ){
+			if( !buffer.hasRemaining() )
+				flush();
+			length = Math.min( buffer.remaining(), value.length - offset );
+			buffer.put( value, offset, length );
+			offset += length;
+		}
+	}
+
+	// makes room for count bytes in the buffer
+	private void ensure( int count ) throws IOException{
+		if( buffer.remaining() < count )
+			flush();
+	}
+
+	// writes the buffer out to the channel
+	private void flush() throws IOException{
+		buffer.flip();
+		while( buffer.hasRemaining() ){
+			bytesWritten += channel.write( buffer );
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * SuperSQLiteOpenHelper is a Android library that extends the basic
+ * 	SQLiteOpenHelper  for ease of use and automatic management.
+ * Copyright(C) 2011 Evan Freilich (http://diy-developer.blogspot.com/)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.diy.developer.android_library.SuperSQLiteOpenHelper;
+
+// Includes
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/*	Class: StatementCache
+ * 	Description: This class keeps compiled statements for each connection,
+ * 		keyed by their SQL, so a statement run many times is only compiled
+ * 		once per connection.  Each connection keeps up to a set number of
+ * 		statements; when it is full the least recently used one is dropped.
+ * 		A dropped statement is not closed, since a caller may still be
+ * 		using it: it stays valid until its connection is closed and is
+ * 		then left to the garbage collector.
+ *
+ * 		A statement belongs to the connection it was compiled on, so the
+ * 		cache of a connection must be cleared before the connection is
+ * 		closed.  Connections found closed are dropped as a safety net.
+ *
+ * 		All methods are thread safe.  The statements themselves are not:
+ * 		one must be bound and run by one thread at a time.
+ */
+final class StatementCache {
+	// The statements of each connection, each in access order
+	private final Map<SQLiteDatabase, LinkedHashMap<String, SQLiteStatement>> connections =
+			new HashMap<SQLiteDatabase, LinkedHashMap<String, SQLiteStatement>>();
+	private int maxStatements;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+
+	/*	Function: StatementCache (Constructor)
+	 * 	Description: Creates an empty cache.
+	 * 	Inputs:
+	 * 		maxStatements (int)	- the most statements to keep per connection
+	 * 	Output: The new object
+	 * 	Throws: None
+	 */
+	StatementCache(int maxStatements){
+		this.maxStatements = maxStatements;
+	}
+
+	/*	Function: get
+	 * 	Description: Gets the compiled statement for some SQL on a
+	 * 		connection, compiling it if it is not cached.  A cached
+	 * 		statement has its bindings cleared.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the open connection
+	 * 		sql (String)		- the SQL
+	 * 	Output: SQLiteStatement
+	 * 		The statement (owned by the cache, must not be closed)
+	 * 	Throws: SQLException if the SQL could not be compiled
+	 */
+	synchronized SQLiteStatement get( SQLiteDatabase db, String sql ){
+		LinkedHashMap<String, SQLiteStatement> statements = connections.get( db );
+		SQLiteStatement rval = (statements == null)? null : statements.get( sql );
+
+		if( rval != null ){
+			++hits;
+			rval.clearBindings();
+			return rval;
+		}
+
+		++misses;
+		dropClosed();
+		if( statements == null ){
+			statements = new LinkedHashMap<String, SQLiteStatement>( 16, 0.75f, true );
+			connections.put( db, statements );
+		}
+		rval = db.compileStatement( sql );
+		statements.put( sql, rval );
+		trim( statements );
+		return rval;
+	}
+
+	/*	Function: setMaxStatements
+	 * 	Description: Changes the most statements kept per connection,
+	 * 		dropping the least recently used ones that no longer fit.
+	 * 	Inputs:
+	 * 		maxStatements (int)	- the most statements to keep per connection
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	synchronized void setMaxStatements( int maxStatements ){
+		this.maxStatements = maxStatements;
+		for( LinkedHashMap<String, SQLiteStatement> thisConnection : connections.values() ){
+			trim( thisConnection );
+		}
+	}
+
+	// drops the least recently used statements until the connection fits
+	//	(without closing them, as they may still be in use)
+	private void trim( LinkedHashMap<String, SQLiteStatement> statements ){
+		Iterator<SQLiteStatement> oldest = statements.values().iterator();
+		while( statements.size() > maxStatements && oldest.hasNext() ){
+			oldest.next();
+			oldest.remove();
+			++evictions;
+		}
+	}
+
+	// forgets connections that were closed without being cleared
+	private void dropClosed(){
+		Iterator<SQLiteDatabase> thisConnection = connections.keySet().iterator();
+		while( thisConnection.hasNext() ){
+			if( !thisConnection.next().isOpen() )
+				thisConnection.remove();
+		}
+	}
+
+	// Closes the statements of one connection
+	synchronized void clear( SQLiteDatabase db ){
+		LinkedHashMap<String, SQLiteStatement> statements = connections.remove( db );
+		if( statements != null )
+			closeAll( statements );
+	}
+
+	// Closes the statements of every connection
+	synchronized void clear(){
+		for( LinkedHashMap<String, SQLiteStatement> thisConnection : connections.values() ){
+			closeAll( thisConnection );
+		}
+		connections.clear();
+	}
+
+	// closes every statement of a connection
+	private static void closeAll( LinkedHashMap<String, SQLiteStatement> statements ){
+		for( SQLiteStatement thisStatement : statements.values() ){
+			thisStatement.close();
+		}
+		statements.clear();
+	}
+
+	// Returns the number of lookups that found a compiled statement
+	synchronized long getHits(){
+		return hits;
+	}
+
+	// Returns the number of lookups that had to compile the statement
+	synchronized long getMisses(){
+		return misses;
+	}
+
+	// Returns the number of statements dropped to make room
+	synchronized long getEvictions(){
+		return evictions;
+	}
+}
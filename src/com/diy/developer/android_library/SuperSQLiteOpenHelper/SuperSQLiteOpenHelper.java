@@ -19,26 +19,47 @@
 package com.diy.developer.android_library.SuperSQLiteOpenHelper;
 
 // Includes
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -46,13 +67,20 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Xml;
 
 public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	// Database data variables to be overridden when this abstract class
 	//		is implemented.
-	private static String DATABASE_NAME;
-	private static int DATABASE_VERSION;
-	private final String[][][] DATABASE_SCHEMA;
+	private final Context databaseContext;
+	private final String DATABASE_NAME;
+	private final int DATABASE_VERSION;
+	// DATABASE_SCHEMA is compiled once by the constructor into this model
+	private final CompiledSchema schema;
+	// True if changes to the schema tables are recorded in a changelog
+	private final boolean trackChanges;
 	/*	Schema syntax
 	 * 	DATABASE_SCHEMA = {
 	 * 		{	{"table_name","first_version","table_constrains"},
@@ -61,7 +89,8 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 			...
 	 * 			},
 	 * 			// v2
-	 * 			{"column4 TYPE"},
+	 * 			{"column4 TYPE",
+	 * 			"INDEX index_name (column1, column4)"},
 	 * 			...
 	 * 		},
 	 * 		...
@@ -107,6 +136,18 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 			If you want a combination of columns to define a unique record,
 	 * 			as with first_name and last_name in the example, this is where
 	 * 			you do it.  Plan and code for the conflict cause if applicable.
+	 * 		Indexes
+	 * 			A version list can add indexes along with columns:
+	 * 				"INDEX name (columns) [WHERE ...]"
+	 * 				"UNIQUE INDEX name (columns) [WHERE ...]"
+	 * 			The columns can be any list SQLite accepts in CREATE INDEX
+	 * 			(several columns, COLLATE, ASC/DESC, expressions) and the
+	 * 			WHERE clause makes a partial index.  "DROP INDEX name" drops
+	 * 			an index added in an earlier version; to change an index, drop
+	 * 			it and add it again in the same version.  Index names must be
+	 * 			unique across the database.  Indexes are created after the
+	 * 			rows are copied when tables are rebuilt and when a database is
+	 * 			restored by an import.
 	 * 		Check all syntax
 	 * 			Most if not all functions will fail if correct SQLite syntax
 	 * 			is not used for all columns and constraints.
@@ -125,6 +166,30 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 		static final int IMPORT_RESULT_ERROR_READING = 3;
 		static final int IMPORT_RESULT_ERROR_INSERTING = 4;
 		static final int IMPORT_RESULT_NO_DATA = 5;
+		static final int IMPORT_RESULT_CORRUPT_FILE = 6;
+		static final int IMPORT_RESULT_CANCELLED = 7;
+		static final int IMPORT_RESULT_WRONG_VERSION = 8;
+	// Merge modes for appending imports (see setMergeMode)
+		public static final int MERGE_MODE_NONE = 0;
+		public static final int MERGE_MODE_IGNORE = 1;
+		public static final int MERGE_MODE_REPLACE = 2;
+		public static final int MERGE_MODE_UPSERT = 3;
+	// Import/Export file format
+		private static final String XML_ENCODING = "UTF-8";
+		private static final String XML_ROOT_TAG = "Application_Export";
+		static final String XML_DATA_TAG = "Data";
+		static final String XML_RECORD_TAG = "record";
+		private static final int FILE_BUFFER_SIZE = 64 * 1024;
+	// Bulk insert defaults
+		private static final int DEFAULT_BULK_INSERT_CHUNK_SIZE = 1000;
+	// Compiled statements kept per connection by default (see setStatementCacheSize)
+		private static final int DEFAULT_STATEMENT_CACHE_SIZE = 25;
+	// First SQLite version with VACUUM INTO (3.27.0)
+		private static final int SQLITE_VACUUM_INTO_VERSION = 3027000;
+	// Tables that hold user data (everything but the Android locale table
+	//		and the changelog)
+		private static final String TABLE_LIST_QUERY = "SELECT name FROM sqlite_master " +
+				"WHERE type='table' AND name != 'android_metadata' AND name != '" + ChangeTracker.CHANGELOG_TABLE + "'";
 
 
 	/*	Function: SuperSQLiteOpenHelper (Constructor)
@@ -137,13 +202,43 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 		DB_Version (int)			- version of the database
 	 * 		DB_Schema (String[][][])	- schema of the database (syntax above)
 	 * 	Output: The new object
-	 * 	Throws: None
+	 * 	Throws: IllegalArgumentException if the schema is not valid (checked
+	 * 		here so errors show up when the helper is created rather than when
+	 * 		the database is first opened)
 	 */
 	public SuperSQLiteOpenHelper(Context context, String DB_Name, int DB_Version, String[][][] DB_Schema) {
-		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		this(context, DB_Name, DB_Version, DB_Schema, false);
+	}
+
+	/*	Function: SuperSQLiteOpenHelper (Constructor)
+	 * 	Description: Creates a new version of the database helper, optionally
+	 * 		with change tracking.  With change tracking on, a changelog table
+	 * 		and triggers on every table in the schema are created and kept up
+	 * 		to date with the tables, so exportChangesSince can export only
+	 * 		the rows that changed.
+	 * 	Inputs:
+	 * 		context (Context)			- the active context of the app
+	 * 		DB_Name (String)			- name of the database
+	 * 		DB_Version (int)			- version of the database
+	 * 		DB_Schema (String[][][])	- schema of the database (syntax above)
+	 * 		trackChanges (boolean)		- true to record changes in a changelog
+	 * 	Output: The new object
+	 * 	Throws: IllegalArgumentException if the schema is not valid
+	 */
+	public SuperSQLiteOpenHelper(Context context, String DB_Name, int DB_Version, String[][][] DB_Schema,
+			boolean trackChanges) {
+		this(context, DB_Name, DB_Version, new CompiledSchema( DB_Schema, DB_Version ), trackChanges);
+	}
+
+	// Creates a helper for an already compiled schema
+	private SuperSQLiteOpenHelper(Context context, String DB_Name, int DB_Version, CompiledSchema DB_Schema,
+			boolean trackChanges) {
+		super(context, DB_Name, null, DB_Version);
+		databaseContext = context;
 		DATABASE_NAME = DB_Name;
 		DATABASE_VERSION = DB_Version;
-		DATABASE_SCHEMA = DB_Schema;
+		schema = DB_Schema;
+		this.trackChanges = trackChanges;
 	}
 
 
@@ -161,9 +256,18 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 */
 	@Override
 	public void onCreate(SQLiteDatabase db){
-		for( int x = 0; x<DATABASE_SCHEMA.length; ++x){
-			createTable(db, x);
+		long start = startTimer();
+		int created = 0;
+
+		for( int x = 0; x<schema.getTableCount(); ++x){
+			if( createTable(db, x) )
+				++created;
 		}
+		if( trackChanges )
+			ChangeTracker.install( db, schema, DATABASE_VERSION );
+		clearQueryCache();
+
+		emitEvent( MetricsListener.EVENT_CREATE, null, created, start );
 	}
 
 
@@ -171,7 +275,12 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 	Description: This function handles the upgrade to a newer version
 	 * 		of the database.  If a table already existed in a previous
 	 * 		version, new columns are added to it.  If not, the table is
-	 * 		created from scratch.
+	 * 		created from scratch.  All of the columns a table gains across
+	 * 		the skipped versions are planned together: they are added with
+	 * 		ALTER TABLE where SQLite allows it, otherwise the table is rebuilt
+	 * 		once (see MigrationPlan).  The whole upgrade runs in one
+	 * 		transaction.  Use planMigration to see the plan without running
+	 * 		it.
 	 *
 	 * 		This function is automatically by Android when useWritableDatabase
 	 * 		or useReadableDatabase is called.
@@ -189,38 +298,30 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 			return;
 		}
 
-		String tableName;
-		int tableRev;
-		int end;
-
-		for( int x = 0; x<DATABASE_SCHEMA.length; ++x){
-			tableName = DATABASE_SCHEMA[x][0][0];
-			tableRev = Integer.parseInt(DATABASE_SCHEMA[x][0][1]);
-
-			// has the table been created before
-			if( tableRev <= oldVersion){
-				end = (newVersion+1<DATABASE_SCHEMA[x].length)? newVersion+1 : DATABASE_SCHEMA[x].length;
-				for( int y = oldVersion+1; y<end; ++y){
-					if( DATABASE_SCHEMA[x][y] != null ){
-						for( int z = 0; z<DATABASE_SCHEMA[x][y].length; ++z){
-							db.execSQL( "ALTER TABLE " + tableName +
-									" ADD COLUMN " + DATABASE_SCHEMA[x][y][z] + ";" );
-						}
-					}
-				}
-			}else{
-				createTable(db, x);
-			}
-		}
+		long start = startTimer();
+		int executed = MigrationPlan.forUpgrade( db, schema, oldVersion, newVersion ).execute( db );
+		// rebuilt and new tables need their triggers
+		if( trackChanges )
+			ChangeTracker.install( db, schema, newVersion );
+		clearQueryCache();
+		// statements compiled against the old tables
+		statementCache.clear();
+		emitEvent( MetricsListener.EVENT_UPGRADE, null, executed, start );
 	}
 
 
 	/*	Function: onDowngrade
 	 * 	Description: This function handles the downgrade to an older version
-	 * 		of the database.  Since dropping columns is not allowed in SQLite,
-	 * 		each existing table is renamed to a temporary name.  Then, the old
-	 * 		version of the tables are created and all old data is moved to the
-	 * 		old versions.  Lastly, the temp tables are deleted.
+	 * 		of the database.  A plan is worked out per table first, from the
+	 * 		tables, columns and indexes the database really has (this app's
+	 * 		schema has no entries for the newer versions): tables that
+	 * 		already match the older version are left alone, tables it does
+	 * 		not declare are dropped, and tables with extra columns have them
+	 * 		dropped in place where SQLite allows it (3.35.0 and up) or are
+	 * 		otherwise rebuilt by copying the kept columns into a table of
+	 * 		the old shape.  SQLite's own tables, android_metadata and the
+	 * 		changelog are not touched.  The whole downgrade runs in one
+	 * 		transaction.
 	 *
 	 * 		This function is automatically by Android when useWritableDatabase
 	 * 		or useReadableDatabase is called.
@@ -232,55 +333,78 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 	Throws: SQLException if error in database schema
 	 */
 	public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion){
-		List<String> allTables = new LinkedList<String>();
-		String oldCols;
-		String tableName;
-		boolean created;
-		int end;
-
-		Cursor cur = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' ORDER BY name",null);
-		while (cur.moveToNext()) {
-			allTables.add(cur.getString(cur.getColumnIndex("name")));
-		}
-
-		// create temp tables to save data
-		for( String thisTable : allTables){
-			db.execSQL( "ALTER TABLE " + thisTable + " RENAME TO __" + thisTable + ";" );
-		}
-
-		for( int x = 0; x<DATABASE_SCHEMA.length; ++x){
-			tableName = DATABASE_SCHEMA[x][0][0];
-
-			// create old version of table
-			created = createTable(db, x);
+		long start = startTimer();
+		int executed = MigrationPlan.forDowngrade( db, schema, oldVersion, newVersion ).execute( db );
+		// rebuilt and new tables need their triggers
+		if( trackChanges )
+			ChangeTracker.install( db, schema, newVersion );
+		clearQueryCache();
+		// statements compiled against the old tables
+		statementCache.clear();
+		emitEvent( MetricsListener.EVENT_DOWNGRADE, null, executed, start );
+	}
 
-			// is the table in the old version
-			if( created ){
-				// get list of old columns and copy data from temp table
-				oldCols = "";
-				end = (newVersion+1<DATABASE_SCHEMA[x].length)? newVersion+1 : DATABASE_SCHEMA[x].length;
-				for( int y = 1; y<end; ++y){
-					if( DATABASE_SCHEMA[x][y] != null ){
-						for( int z = 0; z<DATABASE_SCHEMA[x][y].length; ++z){
-							oldCols += DATABASE_SCHEMA[x][y][z].split(" ")[0] + ",";
-						}
-					}
-				}
+	/*	Function: onOpen
+	 * 	Description: This function turns on change tracking for a database
+	 * 		that was created without it.  Nothing is done if change tracking
+	 * 		is off, the connection is read-only or the changelog exists.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: None
+	 * 	Throws: SQLException if the changelog could not be created
+	 */
+	@Override
+	public void onOpen(SQLiteDatabase db){
+		super.onOpen( db );
+		if( trackChanges && !db.isReadOnly() && !ChangeTracker.isInstalled(db) )
+			ChangeTracker.install( db, schema, DATABASE_VERSION );
+	}
 
-				// trim off trailing comma
-				oldCols = oldCols.substring(0,oldCols.length()-1);
+	/*	Function: planMigration
+	 * 	Description: This function works out what onUpgrade or onDowngrade
+	 * 		would do to bring the database file on disk to DATABASE_VERSION,
+	 * 		without changing anything.  The file is opened read-only on its
+	 * 		own connection, so opening it does not start the upgrade.  The
+	 * 		plan lists the SQL that would run and estimates how many rows
+	 * 		would be copied, so the cost of an upgrade can be known before it
+	 * 		ships.
+	 * 	Inputs: None
+	 * 	Output: MigrationPlan
+	 * 		The plan (empty if the database is already at DATABASE_VERSION)
+	 * 		Null if the database file does not exist yet
+	 * 	Throws: SQLException if the database could not be read
+	 */
+	public MigrationPlan planMigration(){
+		File dbFile = databaseContext.getDatabasePath( DATABASE_NAME );
+		SQLiteDatabase db;
 
-				// copy old data back in
-				db.execSQL( "INSERT INTO " + tableName +
-						" SELECT " + oldCols + " FROM __" + DATABASE_SCHEMA[x][0][0] + ";" );
+		if( dbFile == null || !dbFile.exists() )
+			return null;
 
-			}
+		db = SQLiteDatabase.openDatabase( dbFile.getPath(), null, SQLiteDatabase.OPEN_READONLY );
+		try{
+			return planMigration( db, db.getVersion(), DATABASE_VERSION );
+		}finally{
+			db.close();
 		}
+	}
 
-		// delete temp tables
-		for( String thisTable : allTables){
-			db.execSQL( "DROP TABLE __" + thisTable + ";" );
-		}
+	/*	Function: planMigration
+	 * 	Description: This function works out what onUpgrade or onDowngrade
+	 * 		would do to a database between two versions, without changing
+	 * 		anything.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 		oldVersion (int)	- the current version
+	 * 		newVersion (int)	- the target version
+	 * 	Output: MigrationPlan
+	 * 		The plan
+	 * 	Throws: SQLException if the database could not be read
+	 */
+	public MigrationPlan planMigration( SQLiteDatabase db, int oldVersion, int newVersion ){
+		if( oldVersion > newVersion )
+			return MigrationPlan.forDowngrade( db, schema, oldVersion, newVersion );
+		return MigrationPlan.forUpgrade( db, schema, oldVersion, newVersion );
 	}
 
 	// START Helper Functions
@@ -290,7 +414,8 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 		onUpgrade/Downgrade functions to create individual tables.
 	 * 		This function takes an index into the schema array to the specific
 	 * 		table to be created.  This creates all columns and adds any listed
-	 * 		constraints.  If created successfully, the function returns true.
+	 * 		constraints, then creates the table's indexes.  If created
+	 * 		successfully, the function returns true.
 	 * 		If the table does not exist in the current version, it is skipped
 	 * 		and the function returns false.
 	 * 	Inputs:
@@ -302,41 +427,60 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 	Throws: SQLException if error in database schema
 	 */
 	private boolean createTable( SQLiteDatabase db, int index) throws SQLException{
-		String tableName = DATABASE_SCHEMA[index][0][0];
-		int tableRev = Integer.parseInt(DATABASE_SCHEMA[index][0][1]);
-		boolean rval = false;
+		String createSQL = schema.getTable(index).getCreateSQL( DATABASE_VERSION );
 
-		// create the table structure
-		String insertStr = "";
-		String tmp;
-		int end = (DATABASE_VERSION+1<DATABASE_SCHEMA[index].length)? DATABASE_VERSION+1 : DATABASE_SCHEMA[index].length;
-		for( int y = tableRev; y<end; ++y){
-			if( DATABASE_SCHEMA[index][y] != null ){
-				tmp = Arrays.toString(DATABASE_SCHEMA[index][y]);
-				// trim off []
-				insertStr += tmp.substring(1,tmp.length()-1) + ",";
+		// run the command
+		if( createSQL != null ){
+			db.execSQL( createSQL );
+			for( CompiledSchema.Index thisIndex : schema.getTable(index).getIndexesAt(DATABASE_VERSION) ){
+				db.execSQL( thisIndex.getCreateSQL() );
 			}
+			return true;
 		}
 
-		// detect and construct constraint statement
-		String constraintStr = "";
-		if( DATABASE_SCHEMA[index][0].length >= 3
-			&& DATABASE_SCHEMA[index][0][2].length() > 0){
-			constraintStr = "," + DATABASE_SCHEMA[index][0][2];
-		}
+		return false;
+	}
+	// END Helper Functions
 
-		// run the command
-		if( insertStr.length() > 0){
-			// trim off trailing comma
-			insertStr = insertStr.substring(0,insertStr.length()-1);
-			db.execSQL( "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
-					insertStr + constraintStr + ");" );
-			rval = true;
-		}
+	// START Metrics
+	// 		These functions time the helper's work for a MetricsListener.
+	// The listener (null if none, in which case nothing is timed)
+	private volatile MetricsListener metricsListener = null;
+	// When the helper was created, for the time to first connection
+	private final long createdNanos = System.nanoTime();
+	private long connectionsOpened = 0;
+	private long connectionsClosed = 0;
+
+	// Sets the listener that receives timed events (null to stop timing)
+	public void setMetricsListener( MetricsListener listener ){
+		metricsListener = listener;
+	}
 
-		return rval;
+	// Returns the listener that receives timed events
+	public MetricsListener getMetricsListener(){
+		return metricsListener;
 	}
-	// END Helper Functions
+
+	// Starts timing an event, returns 0 (not timed) if there is no listener
+	private long startTimer(){
+		return (metricsListener == null)? 0 : System.nanoTime();
+	}
+
+	// Sends an event timed from startTimer to the listener, if any
+	private void emitEvent( int event, String table, long count, long start ){
+		MetricsListener listener = metricsListener;
+		if( listener != null && start != 0 )
+			listener.onEvent( event, table, count, System.nanoTime() - start );
+	}
+
+	// Called after a connection has been opened
+	private void connectionOpened( long start ){
+		++connectionsOpened;
+		emitEvent( MetricsListener.EVENT_CONNECTION_OPENED, null, connectionsOpened, start );
+		if( connectionsOpened == 1 && start != 0 )
+			emitEvent( MetricsListener.EVENT_FIRST_CONNECTION, null, 1, createdNanos );
+	}
+	// END Metrics
 
 	// START Database Helpers
 	// 		These functions help the developer interact with the actual database.
@@ -344,244 +488,2016 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	private SQLiteDatabase activeDB;
 
 	// Returns the database object in case the developer wants to interact in a
-	//	non-supported way
+	//	non-supported way.  In pool mode, writes made on it should be made
+	//	between acquireWriter and releaseWriter so parallel exports stay
+	//	consistent.
 	public SQLiteDatabase getActiveDB(){
 		return activeDB;
 	}
 
+	// Connection management
+	//	When persistent, the connection is opened writable once and kept open
+	//	between calls.  Leases keep the connection open while they are held.
+	private boolean persistentConnection = false;
+	private int connectionLeases = 0;
+	private boolean closePending = false;
+
 	// Get a writeable version of the database
-	public void useWritableDatabase(){
-		close();
-		activeDB = this.getWritableDatabase();
+	public synchronized void useWritableDatabase(){
+		if( !canReuseConnection(true) ){
+			closeConnection();
+			long start = startTimer();
+			activeDB = this.getWritableDatabase();
+			connectionOpened( start );
+		}
 	}
 	// Get a readable version of the database
-	public void useReadableDatabase(){
-		close();
-		activeDB = this.getReadableDatabase();
+	public synchronized void useReadableDatabase(){
+		if( !canReuseConnection(false) ){
+			closeConnection();
+			long start = startTimer();
+			activeDB = (persistentConnection)? this.getWritableDatabase() : this.getReadableDatabase();
+			connectionOpened( start );
+		}
+	}
+
+	/*	Function: setPersistentConnection
+	 * 	Description: This function turns the persistent connection mode on
+	 * 		or off.  In persistent mode, the connection is opened once as
+	 * 		writable (which can also read) and useWritableDatabase and
+	 * 		useReadableDatabase no longer close and reopen it, so its page and
+	 * 		statement caches survive between calls.  An explicit close still
+	 * 		closes it once no leases are held, and the next call that needs
+	 * 		it opens it again.  Turning the mode off closes the connection as
+	 * 		soon as no leases are held.
+	 * 	Inputs:
+	 * 		keepOpen (boolean)	- true to keep the connection open
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	public synchronized void setPersistentConnection( boolean keepOpen ){
+		persistentConnection = keepOpen;
+		if( !keepOpen )
+			close();
+	}
+
+	/*	Function: acquireDatabase
+	 * 	Description: This function leases the writable connection.  The
+	 * 		connection will not be closed while any lease is held, even if
+	 * 		close is called; it is closed when the last lease is released
+	 * 		instead (unless in persistent mode).  Every call must be matched
+	 * 		by a call to releaseDatabase.
+	 * 	Inputs: None
+	 * 	Output: SQLiteDatabase
+	 * 		The leased connection
+	 * 	Throws: SQLiteException if the database cannot be opened
+	 */
+	public synchronized SQLiteDatabase acquireDatabase(){
+		useWritableDatabase();
+		++connectionLeases;
+		return activeDB;
+	}
+
+	/*	Function: releaseDatabase
+	 * 	Description: This function releases a lease taken with
+	 * 		acquireDatabase.  When the last lease is released, the connection
+	 * 		is closed if close was called while it was leased or if not in
+	 * 		persistent mode.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	public synchronized void releaseDatabase(){
+		if( connectionLeases > 0 && --connectionLeases == 0
+				&& (closePending || !persistentConnection) ){
+			closeConnection();
+		}
 	}
 
 	// Called when closing the database connection
+	//	Deferred while leases are held, in persistent mode too
 	@Override
-	public void close(){
-		if( activeDB.isOpen() )
-			activeDB.close();
-		super.close();
+	public synchronized void close(){
+		if( connectionLeases > 0 )
+			closePending = true;
+		else
+			closeConnection();
 	}
 
-	/*	Function: cleanDatabase
-	 * 	Description: This function cleans the database by deleted
-	 * 		all records in all tables.  This is not done in a
-	 * 		transaction and is not rolled back if there is an error.
+	// Connection pool (null unless enableConnectionPool was called)
+	private ConnectionPool connectionPool = null;
+	// Where each writer lease held by a thread came from, newest first
+	//	(a pool, or NO_POOL for a lease of the helper's connection)
+	private static final Object NO_POOL = new Object();
+	private final ThreadLocal<Deque<Object>> writerLeases = new ThreadLocal<Deque<Object>>(){
+		@Override
+		protected Deque<Object> initialValue(){
+			return new ArrayDeque<Object>();
+		}
+	};
+
+	/*	Function: enableConnectionPool
+	 * 	Description: This function turns on the connection pool mode.  The
+	 * 		database is switched to write-ahead logging, the writable
+	 * 		connection is kept open (persistent mode) and becomes the pool's
+	 * 		writer, and up to the given number of read-only connections are
+	 * 		opened as they are needed.  Readers and the writer can then be
+	 * 		leased from different threads and run at the same time instead of
+	 * 		sharing getActiveDB.  Requires API level 11.
 	 * 	Inputs:
-	 * 		activeDB_ (SQLiteDatabase)	- the database to clean
+	 * 		readers (int)	- the most read-only connections to open
 	 * 	Output: boolean
-	 * 		True if cleaned completely
-	 * 		False if an error occurred
-	 * 	Throws: SQLException if error in database schema
+	 * 		True if the pool is enabled
+	 * 		False if write-ahead logging could not be enabled
+	 * 	Throws: SQLiteException if the database cannot be opened
 	 */
-	public boolean cleanDatabase(SQLiteDatabase activeDB_) {
-		String[] tableList;
-		int x = 0;
-		boolean allDone = false;
-		int tablesEmptied = 0;
+	public synchronized boolean enableConnectionPool( int readers ){
+		if( readers < 1 )
+			throw new IllegalArgumentException( "A pool needs at least one reader" );
+
+		disableConnectionPool();
+		setPersistentConnection( true );
+		useWritableDatabase();
+		if( !activeDB.enableWriteAheadLogging() )
+			return false;
+
+		connectionPool = new ConnectionPool( activeDB, readers );
+		return true;
+	}
 
-		Cursor tblCur = activeDB.rawQuery("SELECT name FROM sqlite_master " +
-				"WHERE type='table' AND name != 'android_metadata'",null);
-		tableList = new String[ tblCur.getCount() ];
-		while (tblCur.moveToNext()){
-			tableList[x++] = tblCur.getString(tblCur.getColumnIndex("name"));
+	/*	Function: disableConnectionPool
+	 * 	Description: This function turns off the connection pool mode.  Idle
+	 * 		readers are closed now and leased readers when they are
+	 * 		released.  The writer stays open in persistent mode.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	public synchronized void disableConnectionPool(){
+		if( connectionPool != null ){
+			connectionPool.close();
+			connectionPool = null;
 		}
+	}
 
-		while( !allDone ){
-			allDone = true;
+	/*	Function: acquireReader
+	 * 	Description: This function leases a connection for reading.  In pool
+	 * 		mode, this is one of the pool's read-only connections and waits
+	 * 		if all of them are leased.  Otherwise, this is the same as
+	 * 		acquireDatabase.  Every call must be matched by a call to
+	 * 		releaseReader with the returned connection.
+	 * 	Inputs: None
+	 * 	Output: SQLiteDatabase
+	 * 		The leased connection
+	 * 	Throws: SQLiteException if the database cannot be opened
+	 */
+	public SQLiteDatabase acquireReader(){
+		ConnectionPool pool;
+		synchronized( this ){
+			pool = connectionPool;
+			if( pool == null )
+				return acquireDatabase();
+		}
+		return pool.acquireReader();
+	}
 
-			for( x=0; x<tableList.length; ++x){
-				try{
-					activeDB_.delete(tableList[x], "1", null);
-					++tablesEmptied;
-				}catch(Exception e){
-					allDone = false;
-				}
+	/*	Function: releaseReader
+	 * 	Description: This function releases a connection leased with
+	 * 		acquireReader.
+	 * 	Inputs:
+	 * 		reader (SQLiteDatabase)	- the connection to release
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	public void releaseReader( SQLiteDatabase reader ){
+		ConnectionPool pool;
+		synchronized( this ){
+			pool = connectionPool;
+			if( reader == activeDB ){
+				releaseDatabase();
+				return;
+			}
+		}
+		if( pool == null || !pool.releaseReader(reader) ){
+			// leased from a pool that was turned off since, so it is closed
+			//	rather than given to the current pool
+			statementCache.clear( reader );
+			reader.close();
+		}
+	}
+
+	/*	Function: acquireWriter
+	 * 	Description: This function leases the writable connection.  In pool
+	 * 		mode, only one thread holds the writer at a time and others wait;
+	 * 		the lease must be released on the same thread.  Otherwise, this
+	 * 		is the same as acquireDatabase.  Every call must be matched by a
+	 * 		call to releaseWriter.
+	 * 	Inputs: None
+	 * 	Output: SQLiteDatabase
+	 * 		The leased connection
+	 * 	Throws: SQLiteException if the database cannot be opened
+	 */
+	public SQLiteDatabase acquireWriter(){
+		ConnectionPool pool;
+		SQLiteDatabase rval;
+		synchronized( this ){
+			pool = connectionPool;
+			if( pool == null ){
+				rval = acquireDatabase();
+				writerLeases.get().push( NO_POOL );
+				return rval;
 			}
 		}
+		rval = pool.acquireWriter();
+		writerLeases.get().push( pool );
+		return rval;
+	}
+
+	// Takes the pool's writer lock, if there is a pool, around a write made
+	//	by the helper itself (returns the pool to unlock, or null)
+	private ConnectionPool lockPoolWriter(){
+		ConnectionPool pool;
+		synchronized( this ){
+			pool = connectionPool;
+		}
+		if( pool != null )
+			pool.acquireWriter();
+		return pool;
+	}
 
-		return (tablesEmptied == tableList.length);
+	// Releases a lock taken by lockPoolWriter
+	private static void unlockPoolWriter( ConnectionPool pool ){
+		if( pool != null )
+			pool.releaseWriter();
 	}
 
-	/*	Function: cleanDatabase
-	 * 	Description: This function cleans the database by deleted
-	 * 		all records in all tables.  This is not done in a
-	 * 		transaction and is not rolled back if there is an error.
+	/*	Function: releaseWriter
+	 * 	Description: This function releases a lease taken with
+	 * 		acquireWriter.  The lease is given back to where it came from,
+	 * 		even if the pool was turned on or off since.
 	 * 	Inputs: None
-	 * 	Output: boolean
-	 * 		True if cleaned completely
-	 * 		False if an error occurred
-	 * 	Throws: SQLException if error in database schema
+	 * 	Output: None
+	 * 	Throws: None
 	 */
-	public boolean cleanDatabase(){
-		useWritableDatabase();
-		return cleanDatabase( activeDB );
+	public void releaseWriter(){
+		Deque<Object> leases = writerLeases.get();
+		Object source = leases.poll();
+
+		// without a pool, a lease may be released on another thread
+		if( source == null || source == NO_POOL )
+			releaseDatabase();
+		else
+			((ConnectionPool) source).releaseWriter();
 	}
-	// END Database Helpers
 
-	// START Import/Export functions
-	/*	Function: exportToFile
-	 * 	Description: This function will export this database to a given file
-	 * 		in an xml format.
+	/*	Function: canReuseConnection
+	 * 	Description: This function checks if the open connection can be used
+	 * 		as is.  A leased connection is always writable and is always
+	 * 		reused.  Otherwise, it is only reused in persistent mode.
 	 * 	Inputs:
-	 * 		dest (File)	- the file to export to
+	 * 		writable (boolean)	- true if a writable connection is needed
 	 * 	Output: boolean
-	 * 		True if successful
-	 * 		False if not
+	 * 		True if the open connection can be reused
+	 * 		False if it must be (re)opened
 	 * 	Throws: None
 	 */
-	public boolean exportToFile( File dest ){
-		boolean success = false;
-		DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder;
-		try {
-			docBuilder = docFactory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
+	private boolean canReuseConnection( boolean writable ){
+		if( activeDB == null || !activeDB.isOpen() )
 			return false;
-		}
-
-		//root element
-		Document doc = docBuilder.newDocument();
-		Element rootElement = doc.createElement("Application_Export");
-		doc.appendChild(rootElement);
+		if( connectionLeases > 0 )
+			return true;
+		return persistentConnection && !(writable && activeDB.isReadOnly());
+	}
 
-		//Database elements
-		Element theDB = exportToElement();
-		if( theDB != null ){
-			rootElement.appendChild(theDB);
+	/*	Function: closeConnection
+	 * 	Description: This function closes the connection, ignoring leases
+	 * 		and persistent mode.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	private synchronized void closeConnection(){
+		closePending = false;
+		statementCache.clear();
+		if( connectionPool != null ){
+			connectionPool.close();
+			connectionPool = null;
+		}
+		if( activeDB != null && activeDB.isOpen() ){
+			long start = startTimer();
+			activeDB.close();
+			super.close();
+			emitEvent( MetricsListener.EVENT_CONNECTION_CLOSED, null, ++connectionsClosed, start );
+		}else{
+			super.close();
+		}
+		activeDB = null;
+	}
 
-			//write the document into xml file
-			try {
-				FileWriter writer = new FileWriter( dest );
-				writer.write( docNodeToXMLString( doc.getFirstChild() ) );
-				writer.close();
-				success = true;
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+	/*	Function: cleanDatabase
+	 * 	Description: This function cleans the database by deleting all
+	 * 		records in all tables.  The tables are emptied in one transaction,
+	 * 		children before the tables their foreign keys point to, so either
+	 * 		every table is emptied or nothing is.  AUTOINCREMENT keys start
+	 * 		over.
+	 * 	Inputs:
+	 * 		activeDB_ (SQLiteDatabase)	- the database to clean
+	 * 	Output: boolean
+	 * 		True if cleaned completely
+	 * 		False if an error occurred (nothing was deleted)
+	 * 	Throws: None
+	 */
+	public boolean cleanDatabase(SQLiteDatabase activeDB_) {
+		return cleanDatabase( activeDB_, true, false );
+	}
 
+	/*	Function: cleanDatabase
+	 * 	Description: This function cleans the database by deleting all
+	 * 		records in all tables, with the same rules as
+	 * 		cleanDatabase(SQLiteDatabase).  Each table is emptied with an
+	 * 		unconditional DELETE, which SQLite runs by dropping the table's
+	 * 		pages rather than visiting every row, so even a very large
+	 * 		database is emptied quickly.  (Tables with triggers, including
+	 * 		the change tracking ones, are still emptied row by row.)
+	 *
+	 * 		The freed pages stay in the file for reuse unless reclaimSpace is
+	 * 		true and the database was created with auto_vacuum=INCREMENTAL.
+	 * 	Inputs:
+	 * 		activeDB_ (SQLiteDatabase)	- the database to clean
+	 * 		resetSequences (boolean)	- true to restart AUTOINCREMENT keys
+	 * 		reclaimSpace (boolean)		- true to run an incremental vacuum
+	 * 	Output: boolean
+	 * 		True if cleaned completely
+	 * 		False if an error occurred (nothing was deleted)
+	 * 	Throws: None
+	 */
+	public boolean cleanDatabase(SQLiteDatabase activeDB_, boolean resetSequences, boolean reclaimSpace) {
+		try{
+			emptyTables( activeDB_, resetSequences, reclaimSpace, null );
+			return true;
+		}catch( SQLException e ){
+			return false;
 		}
-
-		return success;
 	}
 
-	/*	Function: exportToElement
-	 * 	Description: This function will export this database document element.
+	/*	Function: cleanDatabase
+	 * 	Description: This function cleans the database by deleting all
+	 * 		records in all tables, with the same rules as
+	 * 		cleanDatabase(SQLiteDatabase).  The writable connection is leased
+	 * 		while it runs.
 	 * 	Inputs: None
-	 * 	Output: Element
-	 * 		The document element containing the database
-	 * 		Null if error
+	 * 	Output: boolean
+	 * 		True if cleaned completely
+	 * 		False if an error occurred (nothing was deleted)
 	 * 	Throws: None
 	 */
-	public Element exportToElement(){
-		DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder;
-		try {
-			docBuilder = docFactory.newDocumentBuilder();
-		} catch (ParserConfigurationException e1) {
-			e1.printStackTrace();
-			return null;
+	public boolean cleanDatabase(){
+		SQLiteDatabase db = acquireDatabase();
+		try{
+			return cleanDatabase( db );
+		}finally{
+			releaseDatabase();
 		}
+	}
 
-		//Database elements
-		Document doc = docBuilder.newDocument();
-		Element DBElement = doc.createElement("Data");
-
+	/*	Function: emptyTables
+	 * 	Description: This function empties every data table of a database
+	 * 		in one transaction (part of the caller's if one is open).
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)			- the database to clean
+	 * 		resetSequences (boolean)	- true to restart AUTOINCREMENT keys
+	 * 		reclaimSpace (boolean)		- true to run an incremental vacuum
+	 * 		progress (OperationProgress)	- the progress to count (may be null)
+	 * 	Output: None
+	 * 	Throws: SQLException if a table could not be emptied (nothing is
+	 * 		deleted), CancellationException if the clean was cancelled
+	 */
+	private void emptyTables( SQLiteDatabase db, boolean resetSequences, boolean reclaimSpace,
+			OperationProgress progress ){
+		long start = startTimer();
+		List<String> tableList = new ArrayList<String>();
+		ConnectionPool pool;
+		int tablesEmptied;
+
+		Cursor tblCur = db.rawQuery( TABLE_LIST_QUERY, null );
 		try{
-			useReadableDatabase();
-			// Get a list of all current tables
-			Cursor tblCur = activeDB.rawQuery("SELECT name FROM sqlite_master " +
-					"WHERE type='table' AND name != 'android_metadata'",null);
-			// get all data from each table and append it to the document
-			String thisTable;
-			Cursor thisCur;
 			while (tblCur.moveToNext()){
-				thisTable = tblCur.getString(tblCur.getColumnIndex("name"));
-				Element thisTableElement = doc.createElement(thisTable);
-
-				thisCur = activeDB.rawQuery("SELECT * FROM " + thisTable,null);
-				int colCount = thisCur.getColumnCount();
-				while (thisCur.moveToNext()){
-
-					Element thisRecord = doc.createElement("record");
-					for( int i=0; i<colCount; ++i){
-						Element thisCol = doc.createElement(
-								thisCur.getColumnName(i) );
-						thisCol.appendChild(doc.createTextNode(
-								thisCur.getString(i) ));
+				tableList.add( tblCur.getString(0) );
+			}
+		}finally{
+			tblCur.close();
+		}
 
-						thisRecord.appendChild(thisCol);
-					}
+		pool = lockPoolWriter();
+		try{
+			tablesEmptied = DatabaseCleaner.clean( db, tableList, resetSequences, reclaimSpace, progress );
+		}finally{
+			clearQueryCache();
+			unlockPoolWriter( pool );
+		}
+		emitEvent( MetricsListener.EVENT_CLEAN, null, tablesEmptied, start );
+	}
 
-					thisTableElement.appendChild(thisRecord);
-				}
+	// Number of rows committed per transaction by insertAll
+	private int bulkInsertChunkSize = DEFAULT_BULK_INSERT_CHUNK_SIZE;
 
-				DBElement.appendChild(thisTableElement);
-			}
-		}catch(Exception e){
-			e.printStackTrace();
-			return null;
-		}
+	// Sets the number of rows committed per transaction by insertAll
+	public void setBulkInsertChunkSize( int rows ){
+		if( rows < 1 )
+			throw new IllegalArgumentException( "Chunk size must be at least 1" );
+		bulkInsertChunkSize = rows;
+	}
 
-		return DBElement;
+	/*	Function: insertAll
+	 * 	Description: This function inserts many rows into a table on a
+	 * 		single writable connection.  Rows are inserted through a compiled
+	 * 		statement that is reused for as long as the rows have the same
+	 * 		columns, and are committed in transactions of
+	 * 		setBulkInsertChunkSize rows.  A change in the set of columns ends
+	 * 		the current batch early.  If a row cannot be inserted, its batch
+	 * 		is rolled back and the exception is thrown; batches committed
+	 * 		before it are kept.
+	 * 	Inputs:
+	 * 		table (String)					- the table to insert into
+	 * 		rows (Iterable<ContentValues>)	- the rows to insert
+	 * 	Output: int[]
+	 * 		The number of rows committed in each batch
+	 * 	Throws: SQLException if a row could not be inserted
+	 */
+	public int[] insertAll( String table, Iterable<ContentValues> rows ) throws SQLException{
+		return insertAll( table, rows.iterator() );
 	}
 
-	/*	Function: docNodeToXMLString
-	 * 	Description: This is a recursive function that will convert an entire
-	 * 		document to an xml string.  If necessary, the function will call
-	 * 		itself for any children nodes.  If called on the root node, an
-	 * 		xml header will be inserted.  Attributes are supported but are
-	 * 		not used in the exportToFile function.
+	/*	Function: insertAll
+	 * 	Description: This function inserts many rows into a table on a
+	 * 		single writable connection, reading them from an iterator so
+	 * 		the rows never need to be held in memory at once.  See
+	 * 		insertAll(String, Iterable) for details.
 	 * 	Inputs:
-	 * 		root (Node)	- the node at which to start building xml
-	 * 	Output: String
-	 * 		The xml string representing the document
-	 * 	Throws: None
+	 * 		table (String)					- the table to insert into
+	 * 		rows (Iterator<ContentValues>)	- the rows to insert
+	 * 	Output: int[]
+	 * 		The number of rows committed in each batch
+	 * 	Throws: SQLException if a row could not be inserted
 	 */
-	private static String docNodeToXMLString(Node root){
-		StringBuilder result = new StringBuilder();
-		if (root.getNodeType() == 3){ // TEXT_NODE
-			result.append(root.getNodeValue());
-		}else{
-			if (root.getNodeType() != 9) { // not DOCUMENT_NODE
-				StringBuffer attrs = new StringBuffer();
-				for (int k = 0; k < root.getAttributes().getLength(); ++k) {
-					attrs.append(" ").append(
-					root.getAttributes().item(k).getNodeName()).append(
-					"=\"").append(
-					root.getAttributes().item(k).getNodeValue())
-					.append("\" ");
+	public int[] insertAll( String table, Iterator<ContentValues> rows ) throws SQLException{
+		List<Integer> batches = new ArrayList<Integer>();
+		Map<String, BulkInserter> inserters = new HashMap<String, BulkInserter>();
+		BulkInserter inserter = null;
+		String[] columns;
+		ContentValues thisRow;
+		ConnectionPool pool;
+		int batchRows;
+
+		pool = lockPoolWriter();
+		try{
+			useWritableDatabase();
+			while( rows.hasNext() ){
+				thisRow = rows.next();
+
+				// only look up another statement if the columns changed
+				if( inserter == null || !hasColumns(thisRow, inserter.getColumns()) ){
+					if( inserter != null && (batchRows = inserter.commitChunk()) > 0 )
+						batches.add( batchRows );
+
+					columns = getColumns( thisRow );
+					inserter = inserters.get( Arrays.toString(columns) );
+					if( inserter == null ){
+						inserter = new BulkInserter( activeDB, table, columns, bulkInsertChunkSize );
+						inserters.put( Arrays.toString(columns), inserter );
+					}
 				}
-				result	.append("<")
-							.append(root.getNodeName())
-							.append(" ")
-							.append(attrs)
-						.append(">");
-			} else {
-				result.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-			}
 
-			NodeList nodes = root.getChildNodes();
-			for (int i = 0, j = nodes.getLength(); i < j; i++) {
-				Node node = nodes.item(i);
-				result.append(docNodeToXMLString(node));
+				columns = inserter.getColumns();
+				for( int x = 0; x<columns.length; ++x){
+					inserter.bindValue( x+1, thisRow.get(columns[x]) );
+				}
+				inserter.insert();
+
+				if( inserter.getRowsInChunk() == 0 )
+					batches.add( bulkInsertChunkSize );
 			}
 
-			if (root.getNodeType() != 9) { // not DOCUMENT_NODE
-				result	.append("</")
-						.append(root.getNodeName())
-						.append(">");
+			if( inserter != null && (batchRows = inserter.commitChunk()) > 0 )
+				batches.add( batchRows );
+		}finally{
+			// rolls back any batch that was not committed
+			for( BulkInserter thisInserter : inserters.values() ){
+				thisInserter.close();
 			}
+			invalidateQueryCache( table );
+			unlockPoolWriter( pool );
 		}
-		return result.toString();
-	}
 
+		int[] rval = new int[ batches.size() ];
+		for( int x = 0; x<rval.length; ++x){
+			rval[x] = batches.get(x);
+		}
+		return rval;
+	}
+
+	/*	Function: getColumns
+	 * 	Description: This function gets the sorted column names of a row.
+	 * 	Inputs:
+	 * 		row (ContentValues)	- the row
+	 * 	Output: String[]
+	 * 		The column names in the row
+	 * 	Throws: None
+	 */
+	private static String[] getColumns( ContentValues row ){
+		String[] rval = new String[ row.size() ];
+		int x = 0;
+		for( Map.Entry<String, Object> thisValue : row.valueSet() ){
+			rval[x++] = thisValue.getKey();
+		}
+		Arrays.sort( rval );
+		return rval;
+	}
+
+	/*	Function: hasColumns
+	 * 	Description: This function checks if a row has exactly the given
+	 * 		columns.
+	 * 	Inputs:
+	 * 		row (ContentValues)	- the row
+	 * 		columns (String[])	- the column names
+	 * 	Output: boolean
+	 * 		True if the row has the same columns
+	 * 		False if not
+	 * 	Throws: None
+	 */
+	private static boolean hasColumns( ContentValues row, String[] columns ){
+		if( row.size() != columns.length )
+			return false;
+		for( int x = 0; x<columns.length; ++x){
+			if( !row.containsKey(columns[x]) )
+				return false;
+		}
+		return true;
+	}
+	// END Database Helpers
+
+	// START Query cache
+	// 		These functions keep the results of repeated reads in memory.  Writes
+	//		made through the helper drop the results of the tables they touch.
+	// The cache (null while off)
+	private volatile QueryCache queryCache = null;
+	// The lower case names of the schema tables, which queries are matched against
+	private String[] queryCacheTables = new String[0];
+
+	/*	Function: setQueryCacheSize
+	 * 	Description: This function turns the query cache on or off.  While
+	 * 		it is on, queryCached keeps the rows of each query it runs, keyed
+	 * 		by the SQL and its arguments, until one of the schema tables named
+	 * 		in the SQL is written through the helper (insert, update, delete,
+	 * 		insertAll, imports, cleanDatabase or a version change).  When the
+	 * 		results take up more than maxBytes (estimated), the least recently
+	 * 		used are dropped.  Setting a size starts a new, empty cache.
+	 *
+	 * 		Writes made directly on getActiveDB(), or that reach other tables
+	 * 		through triggers or ON DELETE/ON UPDATE actions, are not seen by
+	 * 		the cache; call invalidateQueryCache for those tables.
+	 *
+	 * 		The helper's writes drop results when they run, not when they
+	 * 		commit.  queryCached skips the cache while the calling thread is
+	 * 		in a transaction on the active connection, so rows that may yet
+	 * 		be rolled back are never kept.  Readers on other connections (in
+	 * 		write-ahead logging mode) can still cache the old rows while the
+	 * 		transaction is open, so call invalidateQueryCache for the tables
+	 * 		written after committing a transaction of your own.
+	 * 	Inputs:
+	 * 		maxBytes (long)	- the most memory to use for results (0 for off)
+	 * 	Output: None
+	 * 	Throws: IllegalArgumentException if maxBytes is negative
+	 */
+	public synchronized void setQueryCacheSize( long maxBytes ){
+		String[] names;
+
+		if( maxBytes < 0 )
+			throw new IllegalArgumentException( "Query cache size must not be negative" );
+		if( maxBytes == 0 ){
+			queryCache = null;
+			return;
+		}
+
+		names = new String[ schema.getTableCount() ];
+		for( int x = 0; x<names.length; ++x){
+			names[x] = schema.getTable(x).getName().toLowerCase( Locale.US );
+		}
+		queryCacheTables = names;
+		queryCache = new QueryCache( maxBytes );
+	}
+
+	/*	Function: queryCached
+	 * 	Description: This function runs a read query through the cache.  A
+	 * 		cached result is returned without touching the database.
+	 * 		Otherwise the query is run (opening a readable connection if none
+	 * 		is open, as useReadableDatabase does) and its rows are read into
+	 * 		the cache.  Queries that name no schema table, and queries run
+	 * 		while this thread is in a transaction on the active connection,
+	 * 		are never cached.  The cursor returned must be closed as usual.
+	 * 	Inputs:
+	 * 		sql (String)		- the query
+	 * 		args (String[])		- the arguments of the query (may be null)
+	 * 	Output: Cursor
+	 * 		The rows of the query
+	 * 	Throws: SQLException if the query could not be run
+	 */
+	public Cursor queryCached( String sql, String[] args ) throws SQLException{
+		QueryCache cache = queryCache;
+		SQLiteDatabase db = activeDB;
+		QueryCache.Entry result;
+		String[] tables;
+		String key;
+		long generation;
+		Cursor cur;
+
+		// uncommitted rows must not be served to, or kept from, anyone
+		if( cache == null || (db != null && db.isOpen() && db.inTransaction()) ){
+			openForQuery();
+			return activeDB.rawQuery( sql, args );
+		}
+
+		key = QueryCache.getKey( sql, args );
+		cur = cache.get( key );
+		if( cur != null )
+			return cur;
+
+		tables = QueryCache.findTables( sql, queryCacheTables );
+		// taken before the query, so a write during it keeps the rows out
+		generation = cache.getGeneration();
+		openForQuery();
+		cur = activeDB.rawQuery( sql, args );
+		if( tables.length == 0 )
+			return cur;
+		try{
+			result = QueryCache.read( cur, tables );
+		}finally{
+			cur.close();
+		}
+		cache.put( key, result, generation );
+		return result.newCursor();
+	}
+
+	/*	Function: queryCached
+	 * 	Description: This function builds a query the same way
+	 * 		SQLiteDatabase.query does and runs it through the cache (see
+	 * 		queryCached(String, String[])).
+	 * 	Inputs:
+	 * 		table (String)				- the table to read
+	 * 		columns (String[])			- the columns to return (null for all)
+	 * 		selection (String)			- the WHERE clause (null for all rows)
+	 * 		selectionArgs (String[])	- the arguments of the WHERE clause
+	 * 		groupBy (String)			- the GROUP BY clause (may be null)
+	 * 		having (String)				- the HAVING clause (may be null)
+	 * 		orderBy (String)			- the ORDER BY clause (may be null)
+	 * 	Output: Cursor
+	 * 		The rows of the query
+	 * 	Throws: SQLException if the query could not be run
+	 */
+	public Cursor queryCached( String table, String[] columns, String selection, String[] selectionArgs,
+			String groupBy, String having, String orderBy ) throws SQLException{
+		return queryCached( SQLiteQueryBuilder.buildQueryString(false, table, columns, selection, groupBy, having,
+				orderBy, null), selectionArgs );
+	}
+
+	// Inserts a row on the writable connection and drops the table's results
+	public long insert( String table, ContentValues values ){
+		ConnectionPool pool = lockPoolWriter();
+		try{
+			useWritableDatabase();
+			return activeDB.insert( table, null, values );
+		}finally{
+			invalidateQueryCache( table );
+			unlockPoolWriter( pool );
+		}
+	}
+
+	// Updates rows on the writable connection and drops the table's results
+	public int update( String table, ContentValues values, String whereClause, String[] whereArgs ){
+		ConnectionPool pool = lockPoolWriter();
+		try{
+			useWritableDatabase();
+			return activeDB.update( table, values, whereClause, whereArgs );
+		}finally{
+			invalidateQueryCache( table );
+			unlockPoolWriter( pool );
+		}
+	}
+
+	// Deletes rows on the writable connection and drops the table's results
+	public int delete( String table, String whereClause, String[] whereArgs ){
+		ConnectionPool pool = lockPoolWriter();
+		try{
+			useWritableDatabase();
+			return activeDB.delete( table, whereClause, whereArgs );
+		}finally{
+			invalidateQueryCache( table );
+			unlockPoolWriter( pool );
+		}
+	}
+
+	// Drops the cached results that read a table
+	public void invalidateQueryCache( String table ){
+		QueryCache cache = queryCache;
+		if( cache != null )
+			cache.invalidate( table );
+	}
+
+	// Drops every cached result
+	public void clearQueryCache(){
+		QueryCache cache = queryCache;
+		if( cache != null )
+			cache.clear();
+	}
+
+	// Returns the number of queryCached calls answered from the cache
+	public long getQueryCacheHits(){
+		QueryCache cache = queryCache;
+		return (cache == null)? 0 : cache.getHits();
+	}
+
+	// Returns the number of queryCached calls that ran their query
+	public long getQueryCacheMisses(){
+		QueryCache cache = queryCache;
+		return (cache == null)? 0 : cache.getMisses();
+	}
+
+	// Returns the number of results dropped to stay under the cache size
+	public long getQueryCacheEvictions(){
+		QueryCache cache = queryCache;
+		return (cache == null)? 0 : cache.getEvictions();
+	}
+
+	// Opens a readable connection for a query if none is open
+	private synchronized void openForQuery(){
+		if( activeDB == null || !activeDB.isOpen() )
+			useReadableDatabase();
+	}
+	// END Query cache
+
+	// START Statement cache
+	// 		These functions hand out compiled statements that are kept for reuse.
+	// The statements of each open connection
+	private final StatementCache statementCache = new StatementCache( DEFAULT_STATEMENT_CACHE_SIZE );
+
+	// Sets the most compiled statements kept per connection
+	public void setStatementCacheSize( int statements ){
+		if( statements < 1 )
+			throw new IllegalArgumentException( "Statement cache size must be at least 1" );
+		statementCache.setMaxStatements( statements );
+	}
+
+	/*	Function: getStatement
+	 * 	Description: This function leases the writable connection (see
+	 * 		acquireDatabase) and gets a compiled statement for a
+	 * 		parameterized SQL template on it.  Call releaseDatabase once done
+	 * 		with the statement, so the connection cannot be closed by another
+	 * 		thread while it is in use.  The statement is compiled the
+	 * 		first time and kept for the connection, so pass values as ?
+	 * 		arguments rather than building them into the SQL.  A cached
+	 * 		statement comes back with its bindings cleared.
+	 *
+	 * 		The statement belongs to the cache: do not close it.  Statements
+	 * 		are closed when their connection is closed and after an upgrade
+	 * 		or downgrade, so get the statement again rather than keeping it
+	 * 		past a close.  A statement pushed out of a full cache is not
+	 * 		closed, so it stays valid while it is being used.  Only one thread
+	 * 		may bind and run it at a time.
+	 * 	Inputs:
+	 * 		sql (String)	- the SQL template
+	 * 	Output: SQLiteStatement
+	 * 		The compiled statement
+	 * 	Throws: SQLException if the SQL could not be compiled
+	 */
+	public SQLiteStatement getStatement( String sql ) throws SQLException{
+		SQLiteDatabase db = acquireDatabase();
+
+		try{
+			return statementCache.get( db, sql );
+		}catch( RuntimeException e ){
+			// no statement, so nothing to release later
+			releaseDatabase();
+			throw e;
+		}
+	}
+
+	/*	Function: getStatement
+	 * 	Description: This function gets a compiled statement for a
+	 * 		parameterized SQL template on a leased connection (see
+	 * 		acquireReader and acquireWriter), with the same rules as
+	 * 		getStatement(String).
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the leased connection
+	 * 		sql (String)		- the SQL template
+	 * 	Output: SQLiteStatement
+	 * 		The compiled statement
+	 * 	Throws: SQLException if the SQL could not be compiled
+	 */
+	public SQLiteStatement getStatement( SQLiteDatabase db, String sql ) throws SQLException{
+		return statementCache.get( db, sql );
+	}
+
+	// Returns the number of getStatement calls that reused a statement
+	public long getStatementCacheHits(){
+		return statementCache.getHits();
+	}
+
+	// Returns the number of getStatement calls that compiled a statement
+	public long getStatementCacheMisses(){
+		return statementCache.getMisses();
+	}
+
+	// Returns the number of statements dropped to stay under the cache size
+	public long getStatementCacheEvictions(){
+		return statementCache.getEvictions();
+	}
+	// END Statement cache
+
+	// START Change tracking
+	/*	Function: getChangeSequence
+	 * 	Description: This function gets the sequence number of the newest
+	 * 		change in the changelog.  Pass it to exportChangesSince later to
+	 * 		export everything that changed after now.
+	 * 	Inputs: None
+	 * 	Output: long
+	 * 		The newest sequence number (0 if nothing has changed)
+	 * 	Throws: IllegalStateException if change tracking is off
+	 */
+	public long getChangeSequence(){
+		checkChangeTracking();
+		useWritableDatabase();
+		return ChangeTracker.getLastSequence( activeDB );
+	}
+
+	/*	Function: clearChangesThrough
+	 * 	Description: This function deletes changelog entries that have
+	 * 		already been exported, up to and including a sequence number
+	 * 		(usually the one returned by exportChangesSince).  The newest
+	 * 		entry is always kept so sequence numbers never go back.
+	 * 	Inputs:
+	 * 		seq (long)	- the last sequence number to delete
+	 * 	Output: None
+	 * 	Throws: IllegalStateException if change tracking is off
+	 */
+	public void clearChangesThrough( long seq ){
+		checkChangeTracking();
+		useWritableDatabase();
+		ChangeTracker.prune( activeDB, seq );
+	}
+
+	/*	Function: exportChangesSince
+	 * 	Description: This function will export the rows that changed after a
+	 * 		sequence number to a given file (see exportChangesSince with an
+	 * 		OutputStream).
+	 * 	Inputs:
+	 * 		seq (long)	- export changes after this sequence number (0 for all)
+	 * 		dest (File)	- the file to export to
+	 * 	Output: long
+	 * 		The sequence number of the last change exported
+	 * 		-1 if not successful
+	 * 	Throws: IllegalStateException if change tracking is off
+	 */
+	public long exportChangesSince( long seq, File dest ){
+		long rval = -1;
+		OutputStream out = null;
+
+		try {
+			out = new BufferedOutputStream( new FileOutputStream( dest ), FILE_BUFFER_SIZE );
+			rval = exportChangesSince( seq, out );
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if( out != null ){
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+					rval = -1;
+				}
+			}
+		}
+
+		return rval;
+	}
+
+	/*	Function: exportChangesSince
+	 * 	Description: This function will export the rows that changed after a
+	 * 		sequence number to a given stream.  Each changed row is written
+	 * 		once with its current values, or as deleted if it no longer
+	 * 		exists, so the time taken depends on how much changed rather
+	 * 		than on the size of the database.  The changelog and the rows are
+	 * 		read in one transaction, so the returned sequence number matches
+	 * 		the data written.  The stream is flushed but not closed.
+	 *
+	 * 		WITHOUT ROWID tables are not tracked and are left out.  A clean,
+	 * 		or an import that does not append, logs a delete for every row it
+	 * 		removes, so the next delta after one holds the whole database.
+	 * 	Inputs:
+	 * 		seq (long)			- export changes after this sequence number
+	 * 		out (OutputStream)	- the stream to export to (should be buffered)
+	 * 	Output: long
+	 * 		The sequence number of the last change exported (pass it to the
+	 * 			next call)
+	 * 		-1 if not successful
+	 * 	Throws: IllegalStateException if change tracking is off
+	 */
+	public long exportChangesSince( long seq, OutputStream out ){
+		XmlSerializer serializer = Xml.newSerializer();
+		SQLiteDatabase db;
+		long start = startTimer();
+		Set<String> untracked;
+		long tableStart;
+		long through;
+		int rows;
+
+		checkChangeTracking();
+		db = acquireDatabase();
+		try{
+			db.beginTransaction();
+		}catch( RuntimeException e ){
+			releaseDatabase();
+			throw e;
+		}
+		try{
+			through = ChangeTracker.getLastSequence( db );
+
+			serializer.setOutput( out, XML_ENCODING );
+			serializer.startDocument( XML_ENCODING, null );
+			serializer.startTag( null, XML_ROOT_TAG );
+			serializer.startTag( null, ChangeTracker.XML_CHANGES_TAG );
+			serializer.attribute( null, ChangeTracker.XML_SINCE_ATTRIBUTE, Long.toString(seq) );
+			serializer.attribute( null, ChangeTracker.XML_THROUGH_ATTRIBUTE, Long.toString(through) );
+			if( through > seq ){
+				untracked = ChangeTracker.getUntrackedTables( db );
+				for( String thisTable : getTableColumns(db).keySet() ){
+					if( untracked.contains(thisTable) )
+						continue;
+					tableStart = startTimer();
+					rows = ChangeTracker.writeChanges( serializer, db, thisTable, seq, through );
+					emitEvent( MetricsListener.EVENT_TABLE_EXPORTED, thisTable, rows, tableStart );
+				}
+			}
+			serializer.endTag( null, ChangeTracker.XML_CHANGES_TAG );
+			serializer.endTag( null, XML_ROOT_TAG );
+			serializer.endDocument();
+			serializer.flush();
+
+			db.setTransactionSuccessful();
+		}catch(Exception e){
+			e.printStackTrace();
+			return -1;
+		}finally{
+			try{
+				db.endTransaction();
+			}finally{
+				releaseDatabase();
+			}
+		}
+
+		emitEvent( MetricsListener.EVENT_EXPORT, null, 0, start );
+		return through;
+	}
+
+	/*	Function: importChanges
+	 * 	Description: This function will apply a file written by
+	 * 		exportChangesSince to this database.  Changed rows replace the
+	 * 		row with the same rowid (or are inserted), deleted rows are
+	 * 		deleted.  Only tables/columns that exist in the database are
+	 * 		used.  Everything happens in one transaction, so the changes are
+	 * 		applied completely or not at all.  Change tracking does not need
+	 * 		to be on in the database the changes are applied to.
+	 * 	Inputs:
+	 * 		source (File)	- the file to import from
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	public int importChanges( File source ){
+		int rval;
+		InputStream in = null;
+
+		try {
+			in = new BufferedInputStream( new FileInputStream(source), FILE_BUFFER_SIZE );
+			rval = importChanges( in );
+		} catch (FileNotFoundException e) {
+			rval = IMPORT_RESULT_FILE_NOT_FOUND;
+		} finally {
+			if( in != null ){
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return rval;
+	}
+
+	/*	Function: importChanges
+	 * 	Description: This function will apply changes written by
+	 * 		exportChangesSince from a given stream, with the same rules as
+	 * 		importChanges with a File.  The stream is not closed.
+	 * 	Inputs:
+	 * 		in (InputStream)	- the stream to import from (should be buffered)
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	public int importChanges( InputStream in ){
+		int rval = IMPORT_RESULT_SUCCESS;
+		XmlPullParser parser = Xml.newPullParser();
+		Map<String, String[]> tableColumns;
+		String thisTable;
+		boolean started = false;
+		long start = startTimer();
+		long transactionStart = 0;
+		long tableStart;
+		long rows = 0;
+		long tableRows;
+
+		try {
+			parser.setInput( in, null );
+
+			// nothing is touched until the Changes element is found
+			if( !skipToTag( parser, ChangeTracker.XML_CHANGES_TAG ) )
+				return IMPORT_RESULT_NO_DATA;
+
+			// Start a database transaction
+			transactionStart = beginImport( true );
+			started = true;
+
+			tableColumns = getTableColumns( importDB );
+			while( parser.nextTag() == XmlPullParser.START_TAG ){
+				thisTable = parser.getName();
+				if( tableColumns.containsKey(thisTable) ){
+					tableStart = startTimer();
+					tableRows = fillTableFromChanges( importDB, thisTable, tableColumns.get(thisTable), parser, importReport );
+					emitEvent( MetricsListener.EVENT_TABLE_IMPORTED, thisTable, tableRows, tableStart );
+					rows += tableRows;
+				}else{
+					skipElement( parser );
+				}
+			}
+
+			finishImport();
+		} catch (XmlPullParserException e) {
+			rval = IMPORT_RESULT_ERROR_IN_FILE;
+		} catch (IOException e) {
+			rval = IMPORT_RESULT_ERROR_READING;
+		} catch (SQLException e) {
+			rval = IMPORT_RESULT_ERROR_INSERTING;
+		} finally {
+			// Automatically rolled back if not marked successful
+			if( started )
+				endImport( rows, transactionStart );
+		}
+
+		emitEvent( MetricsListener.EVENT_IMPORT, null, 0, start );
+		return rval;
+	}
+
+	/*	Function: fillTableFromChanges
+	 * 	Description: This function will apply the changes of one table from
+	 * 		a pull parser positioned on the table's start tag.  Records are
+	 * 		inserted, replacing the row with the same rowid, and deleted
+	 * 		elements delete the row with that rowid.  When the function
+	 * 		returns, the parser is on the table's end tag.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase) 	- the database to change
+	 * 		thisTable (String)		- the table to change
+	 * 		theseColumns (String[])	- the columns in the table
+	 * 		parser (XmlPullParser)	- the changes
+	 * 		report (ImportReport)	- the report to add the records to
+	 * 	Output: long
+	 * 		The number of rows changed
+	 * 	Throws: XmlPullParserException or IOException if the data could not be
+	 * 		read, SQLException if a change could not be applied
+	 */
+	private static long fillTableFromChanges(SQLiteDatabase db, String thisTable, String[] theseColumns, XmlPullParser parser,
+			ImportReport report) throws XmlPullParserException, IOException{
+		String[] columns = new String[ theseColumns.length + 1 ];
+		BulkInserter inserter;
+		SQLiteStatement delete = null;
+		long rows = 0;
+		int bindIndex;
+
+		// the rowid is bound first, then the table's own columns
+		columns[0] = ChangeTracker.XML_ROWID_ATTRIBUTE;
+		System.arraycopy( theseColumns, 0, columns, 1, theseColumns.length );
+		inserter = new BulkInserter( db, thisTable, columns, 0, MERGE_MODE_REPLACE );
+		try{
+			delete = db.compileStatement( "DELETE FROM " + thisTable + " WHERE rowid = ?" );
+
+			while( parser.nextTag() == XmlPullParser.START_TAG ){
+				if( ChangeTracker.XML_DELETED_TAG.equals(parser.getName()) ){
+					delete.bindLong( 1, getRowid(parser) );
+					delete.execute();
+					skipElement( parser );
+				}else{
+					inserter.bindLong( 1, getRowid(parser) );
+					// each child of the record is a single column
+					while( parser.nextTag() == XmlPullParser.START_TAG ){
+						bindIndex = inserter.getBindIndex( parser.getName() );
+						if( bindIndex > 1 ){
+							inserter.bindString( bindIndex, parser.nextText() );
+						}else{
+							skipElement( parser );
+						}
+					}
+					inserter.insert();
+				}
+				++rows;
+			}
+			addToReport( report, inserter );
+			return rows;
+		}finally{
+			if( delete != null )
+				delete.close();
+			inserter.close();
+		}
+	}
+
+	// Reads the rowid attribute of the current change
+	private static long getRowid( XmlPullParser parser ) throws XmlPullParserException{
+		try{
+			return Long.parseLong( parser.getAttributeValue(null, ChangeTracker.XML_ROWID_ATTRIBUTE) );
+		}catch( NumberFormatException e ){
+			throw new XmlPullParserException( "Change without a rowid in " + parser.getName() );
+		}
+	}
+
+	// Checks that change tracking is on
+	private void checkChangeTracking(){
+		if( !trackChanges )
+			throw new IllegalStateException( "Change tracking is not enabled for this database" );
+	}
+	// END Change tracking
+
+	// START Asynchronous operations
+	/*	Class: AsyncOperation
+	 * 	Description: A task for an executor that runs an export, import or
+	 * 		clean.  Cancelling it asks the operation to stop at its next row
+	 * 		rather than interrupting the thread, since an interrupt would
+	 * 		close the file channel being read or written.  get() throws
+	 * 		CancellationException right away; the operation itself then
+	 * 		unwinds on its thread (an import rolls back).
+	 */
+	private static final class AsyncOperation<V> extends FutureTask<V> {
+		private final OperationProgress progress;
+
+		AsyncOperation(Callable<V> task, OperationProgress progress){
+			super( task );
+			this.progress = progress;
+		}
+
+		@Override
+		public boolean cancel( boolean mayInterruptIfRunning ){
+			progress.cancel();
+			return super.cancel( false );
+		}
+	}
+
+	// Runs an operation on an executor and returns its future
+	private static <V> Future<V> submit( Executor executor, Callable<V> task, OperationProgress progress ){
+		AsyncOperation<V> rval = new AsyncOperation<V>( task, progress );
+		executor.execute( rval );
+		return rval;
+	}
+
+	/*	Function: exportToFileAsync
+	 * 	Description: This function will export this database to a given file
+	 * 		like exportToFile, on a thread of the given executor.  Progress
+	 * 		is sent to the listener as tables and rows are written.  If the
+	 * 		returned future is cancelled, the export stops at the next row
+	 * 		and the partial file is deleted.
+	 *
+	 * 		Any Executor can be used, for example a single thread executor,
+	 * 		or a virtual thread per task executor on a JVM that has them.
+	 * 	Inputs:
+	 * 		dest (File)					- the file to export to
+	 * 		executor (Executor)			- runs the export
+	 * 		listener (ProgressListener)	- receives progress (may be null)
+	 * 	Output: Future<Boolean>
+	 * 		The result of exportToFile, when done
+	 * 	Throws: RejectedExecutionException if the executor does not take it
+	 */
+	public Future<Boolean> exportToFileAsync( final File dest, Executor executor, ProgressListener listener ){
+		final OperationProgress progress = new OperationProgress( listener );
+
+		return submit( executor, new Callable<Boolean>(){
+			@Override
+			public Boolean call(){
+				boolean success = false;
+
+				try{
+					success = writeExportFile( dest, progress );
+				}finally{
+					progress.finish();
+				}
+				// a cancelled export leaves nothing behind
+				if( !success && progress.isCancelled() )
+					dest.delete();
+				return success;
+			}
+		}, progress );
+	}
+
+	/*	Function: importFromFileAsync
+	 * 	Description: This function will import a given xml file like
+	 * 		importFromFile, on a thread of the given executor.  The file is
+	 * 		parsed on a thread of its own that passes records to the
+	 * 		importing thread through a bounded queue (see RecordPipeline),
+	 * 		so parsing and inserting overlap but the parser never gets more
+	 * 		than a queue's worth ahead.  Progress is sent to the listener as
+	 * 		tables and rows are imported.  If the returned future is
+	 * 		cancelled, the import stops at the next record and its
+	 * 		transaction is rolled back, leaving the database as it was.
+	 * 	Inputs:
+	 * 		source (File)				- the file to import from
+	 * 		append (boolean)			- append to database (false to clean it
+	 * 										first)
+	 * 		executor (Executor)			- runs the import
+	 * 		listener (ProgressListener)	- receives progress (may be null)
+	 * 	Output: Future<Integer>
+	 * 		The return code, when done (IMPORT_RESULT_CANCELLED once
+	 * 			cancelled, though get() throws CancellationException instead)
+	 * 	Throws: RejectedExecutionException if the executor does not take it
+	 */
+	public Future<Integer> importFromFileAsync( final File source, final boolean append, Executor executor,
+			ProgressListener listener ){
+		final OperationProgress progress = new OperationProgress( listener );
+
+		return submit( executor, new Callable<Integer>(){
+			@Override
+			public Integer call(){
+				InputStream in = null;
+
+				try {
+					in = new BufferedInputStream( new FileInputStream(source), FILE_BUFFER_SIZE );
+					return importRecords( in, append, progress );
+				} catch (FileNotFoundException e) {
+					return IMPORT_RESULT_FILE_NOT_FOUND;
+				} finally {
+					progress.finish();
+					if( in != null ){
+						try {
+							in.close();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+			}
+		}, progress );
+	}
+
+	/*	Function: cleanDatabaseAsync
+	 * 	Description: This function cleans the database like cleanDatabase(),
+	 * 		on a thread of the given executor.  Progress is sent to the
+	 * 		listener as tables are emptied.  If the returned future is
+	 * 		cancelled before the last table, the clean is rolled back.
+	 * 	Inputs:
+	 * 		executor (Executor)			- runs the clean
+	 * 		listener (ProgressListener)	- receives progress (may be null)
+	 * 	Output: Future<Boolean>
+	 * 		True if cleaned completely, when done
+	 * 	Throws: RejectedExecutionException if the executor does not take it
+	 */
+	public Future<Boolean> cleanDatabaseAsync( Executor executor, ProgressListener listener ){
+		final OperationProgress progress = new OperationProgress( listener );
+
+		return submit( executor, new Callable<Boolean>(){
+			@Override
+			public Boolean call(){
+				SQLiteDatabase db = null;
+
+				try{
+					// leased so other threads cannot close it under the clean
+					db = acquireDatabase();
+					emptyTables( db, true, false, progress );
+					return true;
+				}catch( SQLException e ){
+					return false;
+				}catch( CancellationException e ){
+					return false;
+				}finally{
+					if( db != null )
+						releaseDatabase();
+					progress.finish();
+				}
+			}
+		}, progress );
+	}
+
+	/*	Function: importRecords
+	 * 	Description: This function imports an xml stream through a record
+	 * 		pipeline for importFromFileAsync, with the same rules as
+	 * 		importFromStream.  The parser runs on the pipeline's thread while
+	 * 		this thread holds the transaction and does the inserts.
+	 * 	Inputs:
+	 * 		in (InputStream)				- the stream to import from (should
+	 * 											be buffered)
+	 * 		append (boolean)				- append to database (false to clean
+	 * 											it first)
+	 * 		progress (OperationProgress)	- the progress to count
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	private int importRecords( InputStream in, boolean append, OperationProgress progress ){
+		int rval = IMPORT_RESULT_SUCCESS;
+		RecordPipeline pipeline = null;
+		RecordPipeline.Record thisRecord;
+		Map<String, String[]> tableColumns;
+		BulkInserter inserter = null;
+		SQLiteDatabase db = null;
+		boolean started = false;
+		long start = startTimer();
+		long transactionStart = 0;
+		long tableStart = 0;
+		long rows = 0;
+		long tableRows;
+
+		try {
+			// the parser needs the tables before it can skip the others (the
+			//	lease keeps the connection they were read from until the end)
+			db = acquireDatabase();
+			tableColumns = getTableColumns( db );
+			pipeline = new RecordPipeline( in, tableColumns, RecordPipeline.DEFAULT_CAPACITY );
+			progress.watch( pipeline.getInput() );
+			pipeline.start();
+
+			// nothing is touched until the Data element is found
+			if( !pipeline.awaitData() )
+				return IMPORT_RESULT_NO_DATA;
+			progress.check();
+
+			// Start a database transaction
+			transactionStart = beginImport( append );
+			started = true;
+
+			while( (thisRecord = pipeline.next()) != null ){
+				if( thisRecord.isEndOfTable() ){
+					if( inserter != null ){
+						tableRows = addToReport( importReport, inserter );
+						inserter.close();
+						inserter = null;
+						emitEvent( MetricsListener.EVENT_TABLE_IMPORTED, thisRecord.table, tableRows, tableStart );
+						rows += tableRows;
+					}
+					progress.tableDone();
+					continue;
+				}
+
+				if( inserter == null ){
+					tableStart = startTimer();
+					inserter = new BulkInserter( importDB, thisRecord.table, tableColumns.get(thisRecord.table), 0,
+							importMergeMode );
+				}
+				for( int x = 0; x<thisRecord.bindIndexes.length; ++x){
+					inserter.bindString( thisRecord.bindIndexes[x], thisRecord.values[x] );
+				}
+				inserter.insert();
+				progress.rowDone();
+			}
+
+			finishImport();
+		} catch (XmlPullParserException e) {
+			rval = IMPORT_RESULT_ERROR_IN_FILE;
+		} catch (IOException e) {
+			rval = IMPORT_RESULT_ERROR_READING;
+		} catch (SQLException e) {
+			rval = IMPORT_RESULT_ERROR_INSERTING;
+		} catch (CancellationException e) {
+			rval = IMPORT_RESULT_CANCELLED;
+		} finally {
+			if( pipeline != null )
+				pipeline.close();
+			if( inserter != null )
+				inserter.close();
+			// Automatically rolled back if not marked successful
+			if( started )
+				endImport( rows, transactionStart );
+			if( db != null )
+				releaseDatabase();
+		}
+
+		if( pipeline != null )
+			emitEvent( MetricsListener.EVENT_IMPORT, null, pipeline.getInput().getCount(), start );
+		return rval;
+	}
+	// END Asynchronous operations
+
+	// START Import/Export functions
+	/*	Function: exportToFile
+	 * 	Description: This function will export this database to a given file
+	 * 		in an xml format.  The file is written as UTF-8 through a buffered
+	 * 		stream by exportToStream.
+	 * 	Inputs:
+	 * 		dest (File)	- the file to export to
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not
+	 * 	Throws: None
+	 */
+	public boolean exportToFile( File dest ){
+		return writeExportFile( dest, null );
+	}
+
+	/*	Function: writeExportFile
+	 * 	Description: This function exports to a file for exportToFile and
+	 * 		exportToFileAsync.
+	 * 	Inputs:
+	 * 		dest (File)						- the file to export to
+	 * 		progress (OperationProgress)	- the progress to count (may be null)
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not (or cancelled)
+	 * 	Throws: None
+	 */
+	private boolean writeExportFile( File dest, OperationProgress progress ){
+		boolean success = false;
+		OutputStream out = null;
+
+		try {
+			out = new BufferedOutputStream( new FileOutputStream( dest ), FILE_BUFFER_SIZE );
+			success = writeExport( out, progress );
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if( out != null ){
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+					success = false;
+				}
+			}
+		}
+
+		return success;
+	}
+
+	/*	Function: exportToCompressedFile
+	 * 	Description: This function will export this database to a given file
+	 * 		in the same xml format as exportToFile, compressed with gzip as it
+	 * 		is written.  The gzip trailer holds a CRC32 of the xml, which
+	 * 		importFromCompressedFile checks before it imports anything.
+	 * 	Inputs:
+	 * 		dest (File)		- the file to export to
+	 * 		level (int)		- compression level, 1 (fastest) to 9 (smallest),
+	 * 							0 for none or Deflater.DEFAULT_COMPRESSION
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not
+	 * 	Throws: IllegalArgumentException if the level is not valid
+	 */
+	public boolean exportToCompressedFile( File dest, int level ){
+		boolean success = false;
+		OutputStream out = null;
+
+		try {
+			out = new FileOutputStream( dest );
+			out = new BufferedOutputStream( new LeveledGZIPOutputStream(out, FILE_BUFFER_SIZE, level), FILE_BUFFER_SIZE );
+			success = exportToStream( out );
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			// closing writes the gzip trailer
+			if( out != null ){
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+					success = false;
+				}
+			}
+		}
+
+		return success;
+	}
+
+	/*	Function: exportToStream
+	 * 	Description: This function will export this database to a given
+	 * 		stream in the same xml format as exportToFile.  Each table is
+	 * 		read through its cursor and every record is written out as
+	 * 		soon as it is read, so no document or string of the whole
+	 * 		database is ever held in memory.  Null values are left out of
+	 * 		the record (the import inserts missing columns as null).
+	 * 		The stream is flushed but not closed.
+	 * 	Inputs:
+	 * 		out (OutputStream)	- the stream to export to (should be buffered)
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not
+	 * 	Throws: None
+	 */
+	public boolean exportToStream( OutputStream out ){
+		return writeExport( out, null );
+	}
+
+	/*	Function: writeExport
+	 * 	Description: This function exports to a stream for exportToStream
+	 * 		and the file exports, counting progress if asked to.  A reader
+	 * 		is leased for the whole export (see acquireReader), so calls on
+	 * 		other threads cannot close the connection under it.
+	 * 	Inputs:
+	 * 		out (OutputStream)				- the stream to export to
+	 * 		progress (OperationProgress)	- the progress to count (may be null)
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not (or cancelled)
+	 * 	Throws: None
+	 */
+	private boolean writeExport( OutputStream out, OperationProgress progress ){
+		XmlSerializer serializer = Xml.newSerializer();
+		SQLiteDatabase db = null;
+		Cursor tblCur = null;
+		long start = startTimer();
+		long tableStart;
+		String thisTable;
+		int rows;
+
+		// only count bytes for a listener
+		if( start != 0 || progress != null ){
+			out = new CountingOutputStream( out );
+			if( progress != null )
+				progress.watch( (CountingOutputStream) out );
+		}
+
+		try{
+			serializer.setOutput( out, XML_ENCODING );
+			serializer.startDocument( XML_ENCODING, null );
+			serializer.startTag( null, XML_ROOT_TAG );
+			serializer.startTag( null, XML_DATA_TAG );
+
+			db = acquireReader();
+			// write out all data from each table
+			tblCur = db.rawQuery( TABLE_LIST_QUERY, null );
+			while (tblCur.moveToNext()){
+				thisTable = tblCur.getString(0);
+				tableStart = startTimer();
+				rows = writeTableXML( serializer, db, thisTable, progress );
+				emitEvent( MetricsListener.EVENT_TABLE_EXPORTED, thisTable, rows, tableStart );
+				if( progress != null )
+					progress.tableDone();
+			}
+
+			serializer.endTag( null, XML_DATA_TAG );
+			serializer.endTag( null, XML_ROOT_TAG );
+			serializer.endDocument();
+			serializer.flush();
+			if( start != 0 )
+				emitEvent( MetricsListener.EVENT_EXPORT, null, ((CountingOutputStream) out).getCount(), start );
+		}catch(CancellationException e){
+			return false;
+		}catch(Exception e){
+			e.printStackTrace();
+			return false;
+		}finally{
+			if( tblCur != null )
+				tblCur.close();
+			if( db != null )
+				releaseReader( db );
+		}
+
+		return true;
+	}
+
+	/*	Function: writeTableXML
+	 * 	Description: This function writes a single table to the serializer
+	 * 		one record at a time (see writeRecordsXML).
+	 * 	Inputs:
+	 * 		serializer (XmlSerializer)	- the serializer to write to
+	 * 		db (SQLiteDatabase)			- the database to read from
+	 * 		thisTable (String)			- the table to write
+	 * 		progress (OperationProgress)	- the progress to count (may be null)
+	 * 	Output: int
+	 * 		The number of records written
+	 * 	Throws: IOException if the output could not be written,
+	 * 		CancellationException if the export was cancelled
+	 */
+	private static int writeTableXML( XmlSerializer serializer, SQLiteDatabase db, String thisTable,
+			OperationProgress progress ) throws IOException{
+		Cursor thisCur = db.rawQuery( "SELECT * FROM " + thisTable, null );
+		try{
+			int rows;
+
+			serializer.startTag( null, thisTable );
+			rows = writeRecordsXML( serializer, thisCur, progress );
+			serializer.endTag( null, thisTable );
+			return rows;
+		}finally{
+			thisCur.close();
+		}
+	}
+
+	/*	Function: writeRecordsXML
+	 * 	Description: This function writes every row of a cursor to the
+	 * 		serializer as a record element.  The column names are read once
+	 * 		from the cursor instead of once per cell.  Null values are left
+	 * 		out of the record.
+	 * 	Inputs:
+	 * 		serializer (XmlSerializer)	- the serializer to write to
+	 * 		thisCur (Cursor)			- the rows to write
+	 * 	Output: int
+	 * 		The number of records written
+	 * 	Throws: IOException if the output could not be written
+	 */
+	static int writeRecordsXML( XmlSerializer serializer, Cursor thisCur ) throws IOException{
+		return writeRecordsXML( serializer, thisCur, null );
+	}
+
+	/*	Function: writeRecordsXML
+	 * 	Description: This function writes every row of a cursor to the
+	 * 		serializer as a record element, counting each in the progress.
+	 * 	Inputs:
+	 * 		serializer (XmlSerializer)		- the serializer to write to
+	 * 		thisCur (Cursor)				- the rows to write
+	 * 		progress (OperationProgress)	- the progress to count (may be null)
+	 * 	Output: int
+	 * 		The number of records written
+	 * 	Throws: IOException if the output could not be written,
+	 * 		CancellationException if the export was cancelled
+	 */
+	static int writeRecordsXML( XmlSerializer serializer, Cursor thisCur, OperationProgress progress ) throws IOException{
+		String[] columnNames = thisCur.getColumnNames();
+		String value;
+		int rows = 0;
+
+		while (thisCur.moveToNext()){
+			serializer.startTag( null, XML_RECORD_TAG );
+			for( int i=0; i<columnNames.length; ++i){
+				value = thisCur.getString(i);
+				if( value != null ){
+					serializer.startTag( null, columnNames[i] );
+					serializer.text( value );
+					serializer.endTag( null, columnNames[i] );
+				}
+			}
+			serializer.endTag( null, XML_RECORD_TAG );
+			++rows;
+			if( progress != null )
+				progress.rowDone();
+		}
+		return rows;
+	}
+
+	/*	Function: exportToFile
+	 * 	Description: This function will export this database to a given file
+	 * 		with exportToStream(OutputStream, int), writing tables in
+	 * 		parallel when the connection pool is enabled.
+	 * 	Inputs:
+	 * 		dest (File)		- the file to export to
+	 * 		threads (int)	- the most tables (or parts of tables) to read at once
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not
+	 * 	Throws: None
+	 */
+	public boolean exportToFile( File dest, int threads ){
+		boolean success = false;
+		OutputStream out = null;
+
+		try {
+			out = new BufferedOutputStream( new FileOutputStream( dest ), FILE_BUFFER_SIZE );
+			success = exportToStream( out, threads );
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if( out != null ){
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+					success = false;
+				}
+			}
+		}
+
+		return success;
+	}
+
+	/*	Function: exportToStream
+	 * 	Description: This function will export this database to a given
+	 * 		stream in the same xml format as exportToStream(OutputStream),
+	 * 		reading the tables in parallel on the connection pool's readers.
+	 * 		Each table, or each rowid range of a large table, is written to a
+	 * 		temporary file in the cache directory by up to the given number
+	 * 		of threads, and the pieces are copied into the stream in table
+	 * 		order, so the output does not depend on the thread count.
+	 *
+	 * 		The pool's writer is leased for the whole export.  The helper's
+	 * 		own writes (insert, update, delete, insertAll, cleanDatabase and
+	 * 		the imports) and writes made through acquireWriter wait until it
+	 * 		is done, so every reader sees the same data.  Writes made on
+	 * 		getActiveDB without acquireWriter are not held back.  Without a
+	 * 		pool (or with fewer than 2 threads), the export runs
+	 * 		sequentially.
+	 * 	Inputs:
+	 * 		out (OutputStream)	- the stream to export to (should be buffered)
+	 * 		threads (int)		- the most tables (or parts of tables) to read at once
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not
+	 * 	Throws: None
+	 */
+	public boolean exportToStream( OutputStream out, int threads ){
+		ConnectionPool pool;
+		SQLiteDatabase writer;
+		ParallelExporter exporter = null;
+		XmlSerializer serializer = Xml.newSerializer();
+		Map<String, String[]> tableColumns;
+		long start = startTimer();
+		long tableStart;
+		int rows;
+
+		synchronized( this ){
+			pool = connectionPool;
+		}
+		if( pool == null || threads < 2 )
+			return exportToStream( out );
+
+		// only count bytes for a listener
+		if( start != 0 )
+			out = new CountingOutputStream( out );
+
+		writer = pool.acquireWriter();
+		try{
+			exporter = new ParallelExporter( pool, threads, databaseContext.getCacheDir() );
+			tableColumns = getTableColumns( writer );
+			for( String thisTable : tableColumns.keySet() ){
+				exporter.submit( writer, thisTable );
+			}
+
+			serializer.setOutput( out, XML_ENCODING );
+			serializer.startDocument( XML_ENCODING, null );
+			serializer.startTag( null, XML_ROOT_TAG );
+			serializer.startTag( null, XML_DATA_TAG );
+			for( String thisTable : tableColumns.keySet() ){
+				tableStart = startTimer();
+				serializer.startTag( null, thisTable );
+				// the records are copied in as bytes after the start tag (an
+				//	empty table keeps its tag self-closing, as sequentially)
+				if( exporter.awaitNext() > 0 )
+					serializer.flush();
+				rows = exporter.stitchNext( out );
+				serializer.endTag( null, thisTable );
+				emitEvent( MetricsListener.EVENT_TABLE_EXPORTED, thisTable, rows, tableStart );
+			}
+			serializer.endTag( null, XML_DATA_TAG );
+			serializer.endTag( null, XML_ROOT_TAG );
+			serializer.endDocument();
+			serializer.flush();
+			if( start != 0 )
+				emitEvent( MetricsListener.EVENT_EXPORT, null, ((CountingOutputStream) out).getCount(), start );
+		}catch(Exception e){
+			e.printStackTrace();
+			return false;
+		}finally{
+			if( exporter != null )
+				exporter.close();
+			pool.releaseWriter();
+		}
+
+		return true;
+	}
+
+	/*	Function: exportToElement
+	 * 	Description: This function will export this database document element.
+	 * 	Inputs: None
+	 * 	Output: Element
+	 * 		The document element containing the database
+	 * 		Null if error
+	 * 	Throws: None
+	 */
+	public Element exportToElement(){
+		DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
+		DocumentBuilder docBuilder;
+		try {
+			docBuilder = docFactory.newDocumentBuilder();
+		} catch (ParserConfigurationException e1) {
+			e1.printStackTrace();
+			return null;
+		}
+
+		//Database elements
+		Document doc = docBuilder.newDocument();
+		Element DBElement = doc.createElement(XML_DATA_TAG);
+		long start = startTimer();
+		SQLiteDatabase db = null;
+
+		try{
+			db = acquireReader();
+			// Get a list of all current tables
+			Cursor tblCur = db.rawQuery( TABLE_LIST_QUERY, null );
+			// get all data from each table and append it to the document
+			String thisTable;
+			Cursor thisCur;
+			while (tblCur.moveToNext()){
+				thisTable = tblCur.getString(tblCur.getColumnIndex("name"));
+				Element thisTableElement = doc.createElement(thisTable);
+
+				thisCur = db.rawQuery("SELECT * FROM " + thisTable,null);
+				int colCount = thisCur.getColumnCount();
+				while (thisCur.moveToNext()){
+
+					Element thisRecord = doc.createElement("record");
+					for( int i=0; i<colCount; ++i){
+						Element thisCol = doc.createElement(
+								thisCur.getColumnName(i) );
+						thisCol.appendChild(doc.createTextNode(
+								thisCur.getString(i) ));
+
+						thisRecord.appendChild(thisCol);
+					}
+
+					thisTableElement.appendChild(thisRecord);
+				}
+
+				DBElement.appendChild(thisTableElement);
+			}
+		}catch(Exception e){
+			e.printStackTrace();
+			return null;
+		}finally{
+			if( db != null )
+				releaseReader( db );
+		}
+
+		emitEvent( MetricsListener.EVENT_EXPORT, null, 0, start );
+		return DBElement;
+	}
+
+	/*	Function: exportToSnapshot
+	 * 	Description: This function will export this database to a given file
+	 * 		in the binary snapshot format (see SnapshotWriter).  Unlike the
+	 * 		xml export, every value is written with the type SQLite stored it
+	 * 		with, so numbers, text and BLOBs all restore exactly.  The file is
+	 * 		written through a buffered FileChannel one row at a time.  Needs
+	 * 		API 11 (Cursor.getType).
+	 * 	Inputs:
+	 * 		dest (File)	- the file to export to
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not
+	 * 	Throws: None
+	 */
+	public boolean exportToSnapshot( File dest ){
+		boolean success = false;
+		FileOutputStream out = null;
+		SQLiteDatabase db = null;
+		SnapshotWriter writer;
+		Map<String, String[]> tableColumns;
+		long start = startTimer();
+		long tableStart;
+		int rows;
+
+		try {
+			out = new FileOutputStream( dest );
+			writer = new SnapshotWriter( out.getChannel(), FILE_BUFFER_SIZE );
+
+			db = acquireReader();
+			tableColumns = getTableColumns( db );
+			writer.writeHeader( DATABASE_VERSION, tableColumns );
+			for( String thisTable : tableColumns.keySet() ){
+				tableStart = startTimer();
+				rows = writer.writeTable( db, thisTable );
+				emitEvent( MetricsListener.EVENT_TABLE_EXPORTED, thisTable, rows, tableStart );
+			}
+			writer.finish();
+
+			emitEvent( MetricsListener.EVENT_EXPORT, null, writer.getBytesWritten(), start );
+			success = true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if( db != null )
+				releaseReader( db );
+			if( out != null ){
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+					success = false;
+				}
+			}
+		}
+
+		return success;
+	}
+
+	/*	Function: exportToDatabaseFile
+	 * 	Description: This function will copy this database to a given file
+	 * 		as a complete SQLite database, stamped with DATABASE_VERSION.  No
+	 * 		rows are read or written one by one, so this runs at disk speed
+	 * 		and is the fastest backup when it will be restored into the same
+	 * 		version of the app (see importFromDatabaseFile).
+	 *
+	 * 		On SQLite 3.27 and later (API 30) the copy is made with VACUUM
+	 * 		INTO, which also leaves out free pages.  Otherwise everything
+	 * 		committed is checkpointed into the database file and the file is
+	 * 		copied while the write lock is held.  Either way the writer is
+	 * 		leased for the whole copy, so nothing written through this helper
+	 * 		can tear it.
+	 * 	Inputs:
+	 * 		dest (File)	- the file to export to (overwritten)
+	 * 	Output: boolean
+	 * 		True if successful
+	 * 		False if not
+	 * 	Throws: None
+	 */
+	public boolean exportToDatabaseFile( File dest ){
+		boolean success = false;
+		File dbFile = databaseContext.getDatabasePath( DATABASE_NAME );
+		long start = startTimer();
+		SQLiteDatabase db = acquireWriter();
+
+		try {
+			dest.delete();
+			// any other failure (a full disk, say) fails the export
+			if( MigrationPlan.getSQLiteVersion(db) >= SQLITE_VACUUM_INTO_VERSION )
+				db.execSQL( "VACUUM INTO ?", new Object[]{ dest.getPath() } );
+			else
+				copyDatabaseFile( db, dbFile, dest );
+			DatabaseFile.writeUserVersion( dest, DATABASE_VERSION );
+
+			emitEvent( MetricsListener.EVENT_EXPORT, null, dest.length(), start );
+			success = true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			releaseWriter();
+			if( !success )
+				dest.delete();
+		}
+
+		return success;
+	}
+
+	/*	Function: copyDatabaseFile
+	 * 	Description: This function copies the database file for
+	 * 		exportToDatabaseFile when VACUUM INTO is not available.  All
+	 * 		committed pages are first checkpointed from the write-ahead log
+	 * 		(if there is one) into the file, then the file is copied inside
+	 * 		a transaction so no other connection can write during the copy.
+	 *
+	 * 		SQLite cannot checkpoint on a connection that is in a
+	 * 		transaction, so the write lock is only taken after the
+	 * 		checkpoint.  If data_version shows that another connection
+	 * 		committed in between, the lock is let go and both are done again.
+	 * 		(SQLite before 3.8.8 has no data_version, so there the gap is not
+	 * 		detected.)
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the leased writer
+	 * 		dbFile (File)		- the database file
+	 * 		dest (File)			- the copy
+	 * 	Output: None
+	 * 	Throws: IOException if the file could not be copied, SQLException if
+	 * 		the log could not be checkpointed completely
+	 */
+	private static void copyDatabaseFile( SQLiteDatabase db, File dbFile, File dest ) throws IOException{
+		long version;
+		Cursor cur;
+
+		for( int attempt = 1; ; ++attempt ){
+			// read first, so a commit during the checkpoint counts too
+			version = getDataVersion( db );
+			cur = db.rawQuery( "PRAGMA wal_checkpoint(FULL)", null );
+			try{
+				// busy, frames in the log, frames checkpointed (0, -1, -1 without WAL)
+				if( !cur.moveToFirst() || cur.getInt(0) != 0 || cur.getInt(1) != cur.getInt(2) )
+					throw new SQLException( "Could not checkpoint " + dbFile );
+			}finally{
+				cur.close();
+			}
+
+			db.beginTransaction();
+			try{
+				if( getDataVersion(db) == version ){
+					DatabaseFile.copy( dbFile, dest );
+					return;
+				}
+			}finally{
+				// nothing was written, this only releases the lock
+				db.endTransaction();
+			}
+			if( attempt >= 3 )
+				throw new SQLException( "Could not checkpoint " + dbFile + " (other connections kept writing)" );
+		}
+	}
+
+	// Returns a number that changes when another connection commits (-1
+	//	if SQLite is too old to tell)
+	private static long getDataVersion( SQLiteDatabase db ){
+		Cursor cur = db.rawQuery( "PRAGMA data_version", null );
+		try{
+			return cur.moveToFirst()? cur.getLong(0) : -1;
+		}finally{
+			cur.close();
+		}
+	}
 
 	/*	Function: importFromFile
 	 * 	Description: This function will import data from a given xml file
@@ -607,41 +2523,185 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 * 		return code
 	 * 	Throws: None
 	 */
-	public int importFromFile( File source, boolean append ){
-		int rval;
-		InputStream in;
-		DocumentBuilder builder;
-		Document doc;
-		Element dbTables = null;
+	public int importFromFile( File source, boolean append ){
+		int rval;
+		InputStream in = null;
+
+		try {
+			in = new BufferedInputStream( new FileInputStream(source), FILE_BUFFER_SIZE );
+			rval = importFromStream( in, append );
+		} catch (FileNotFoundException e) {
+			rval = IMPORT_RESULT_FILE_NOT_FOUND;
+		} finally {
+			if( in != null ){
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return rval;
+	}
+
+	/*	Function: importFromCompressedFile
+	 * 	Description: This function will import a file written by
+	 * 		exportToCompressedFile with the same rules as importFromFile.
+	 * 		The whole file is decompressed once first to check its CRC and
+	 * 		length, so a truncated or corrupt backup is rejected before
+	 * 		anything in the database is touched.
+	 * 	Inputs:
+	 * 		source (File) 		- the file to import from
+	 * 		append (boolean)	- append to database (false to clean it first)
+	 * 	Output: int
+	 * 		return code (IMPORT_RESULT_CORRUPT_FILE if the check fails)
+	 * 	Throws: None
+	 */
+	public int importFromCompressedFile( File source, boolean append ){
+		int rval;
+		InputStream in = null;
+
+		rval = verifyCompressedFile( source );
+		if( rval != IMPORT_RESULT_SUCCESS )
+			return rval;
+
+		try {
+			in = new BufferedInputStream( new GZIPInputStream(new FileInputStream(source), FILE_BUFFER_SIZE),
+					FILE_BUFFER_SIZE );
+			rval = importFromStream( in, append );
+		} catch (FileNotFoundException e) {
+			rval = IMPORT_RESULT_FILE_NOT_FOUND;
+		} catch (IOException e) {
+			rval = IMPORT_RESULT_ERROR_READING;
+		} finally {
+			if( in != null ){
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return rval;
+	}
+
+	/*	Function: verifyCompressedFile
+	 * 	Description: This function decompresses a gzip file to the end
+	 * 		without keeping the data.  GZIPInputStream checks the CRC32 and
+	 * 		length in the trailer when it reaches the end.
+	 * 	Inputs:
+	 * 		source (File)	- the file to check
+	 * 	Output: int
+	 * 		IMPORT_RESULT_SUCCESS if the file is intact
+	 * 		IMPORT_RESULT_CORRUPT_FILE if it is not gzip, truncated or corrupt
+	 * 		IMPORT_RESULT_FILE_NOT_FOUND or IMPORT_RESULT_ERROR_READING
+	 * 	Throws: None
+	 */
+	private static int verifyCompressedFile( File source ){
+		int rval = IMPORT_RESULT_SUCCESS;
+		InputStream in = null;
+		byte[] discard = new byte[ FILE_BUFFER_SIZE ];
+
+		try {
+			in = new GZIPInputStream( new FileInputStream(source), FILE_BUFFER_SIZE );
+			while( in.read(discard) >= 0 );
+		} catch (FileNotFoundException e) {
+			rval = IMPORT_RESULT_FILE_NOT_FOUND;
+		} catch (ZipException e) {
+			rval = IMPORT_RESULT_CORRUPT_FILE;
+		} catch (EOFException e) {
+			rval = IMPORT_RESULT_CORRUPT_FILE;
+		} catch (IOException e) {
+			rval = IMPORT_RESULT_ERROR_READING;
+		} finally {
+			if( in != null ){
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return rval;
+	}
+
+	/*	Function: importFromStream
+	 * 	Description: This function will import data from a given xml stream
+	 * 		into this database with the same rules as importFromFile.  The
+	 * 		stream is read with a pull parser one record at a time and each
+	 * 		record is inserted as soon as it has been read, so memory use is
+	 * 		bounded by a single record rather than the size of the file.
+	 * 		Everything happens inside one transaction, so an error in the
+	 * 		file or while inserting rolls back the whole import (including
+	 * 		the clean when append is false).  The stream is not closed.
+	 * 	Inputs:
+	 * 		in (InputStream)	- the stream to import from (should be buffered)
+	 * 		append (boolean)	- append to database (false to clean it first)
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	public int importFromStream( InputStream in, boolean append ){
+		int rval = IMPORT_RESULT_SUCCESS;
+		XmlPullParser parser = Xml.newPullParser();
+		Map<String, String[]> tableColumns;
+		String thisTable;
+		boolean started = false;
+		long start = startTimer();
+		long transactionStart = 0;
+		long tableStart;
+		long rows = 0;
+		long tableRows;
+
+		// only count bytes for a listener
+		if( start != 0 )
+			in = new CountingInputStream( in );
 
 		try {
-			// Read and parse the file (these functions throw all of the specific
-			//	exceptions listed below)
-			in = new FileInputStream(source);
-			builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			doc = builder.parse(in);
-
-			// Get database element, then get each table and input
-			dbTables = (Element) doc.getElementsByTagName("Data").item(0);
-		} catch (FileNotFoundException e) {
-			rval = IMPORT_RESULT_FILE_NOT_FOUND;
-		} catch (ParserConfigurationException e) {
-			rval = IMPORT_RESULT_ERROR_IN_FILE;
-		} catch (FactoryConfigurationError e) {
-			rval = IMPORT_RESULT_ERROR_IN_FILE;
-		} catch (SAXException e) {
+			parser.setInput( in, null );
+
+			// nothing is touched until the Data element is found
+			if( !skipToTag( parser, XML_DATA_TAG ) )
+				return IMPORT_RESULT_NO_DATA;
+
+			// Start a database transaction
+			transactionStart = beginImport( append );
+			started = true;
+
+			// each child of the Data element is a table, only import the
+			//	tables that exist in the database
+			tableColumns = getTableColumns( importDB );
+			while( parser.nextTag() == XmlPullParser.START_TAG ){
+				thisTable = parser.getName();
+				if( tableColumns.containsKey(thisTable) ){
+					tableStart = startTimer();
+					tableRows = fillTableFromParser( importDB, thisTable, tableColumns.get(thisTable), parser,
+							importMergeMode, importReport );
+					emitEvent( MetricsListener.EVENT_TABLE_IMPORTED, thisTable, tableRows, tableStart );
+					rows += tableRows;
+				}else{
+					skipElement( parser );
+				}
+			}
+
+			finishImport();
+		} catch (XmlPullParserException e) {
 			rval = IMPORT_RESULT_ERROR_IN_FILE;
 		} catch (IOException e) {
 			rval = IMPORT_RESULT_ERROR_READING;
+		} catch (SQLException e) {
+			rval = IMPORT_RESULT_ERROR_INSERTING;
+		} finally {
+			// Automatically rolled back if not marked successful
+			if( started )
+				endImport( rows, transactionStart );
 		}
 
-		// if successful so far, import from the Data Element
-		if( dbTables != null ){
-			rval = importFromElement( dbTables, append );
-		}else{
-			rval = IMPORT_RESULT_NO_DATA;
-		}
-
+		if( start != 0 )
+			emitEvent( MetricsListener.EVENT_IMPORT, null, ((CountingInputStream) in).getCount(), start );
 		return rval;
 	}
 
@@ -671,90 +2731,849 @@ public abstract class SuperSQLiteOpenHelper extends SQLiteOpenHelper{
 	 */
 	public int importFromElement( Element dbTables, boolean append ){
 		int rval = IMPORT_RESULT_SUCCESS;
-		boolean noErrors = true;
-		Cursor tblCur, thisCur;
-		String thisTable;
-		String[] columnNames;
-		NodeList myRecords;
+		Map<String, String[]> tableColumns;
+		Node tableNode;
+		boolean started = false;
+		long start = startTimer();
+		long transactionStart = 0;
+		long tableStart;
+		long rows = 0;
+		long tableRows;
 
-		// Start a database transaction
-		useWritableDatabase();
-		activeDB.beginTransaction();
-		if( !append )
-			cleanDatabase( activeDB );
-
-		// get tables and columns to import
-		tblCur = activeDB.rawQuery("SELECT name FROM sqlite_master " +
-				"WHERE type='table' AND name != 'android_metadata'",null);
-		while (tblCur.moveToNext()){
-			thisTable = tblCur.getString(tblCur.getColumnIndex("name"));
-
-			// get the columns in the table
-			thisCur = activeDB.rawQuery("SELECT * FROM " + thisTable + " WHERE FALSE",null);
-			columnNames = thisCur.getColumnNames();
-			thisCur.close();
+		try {
+			// Start a database transaction
+			transactionStart = beginImport( append );
+			started = true;
+
+			// get tables and columns to import and do it
+			tableColumns = getTableColumns( importDB );
+			for( Map.Entry<String, String[]> thisTable : tableColumns.entrySet() ){
+				tableNode = dbTables.getElementsByTagName(thisTable.getKey()).item(0);
+				if( tableNode != null && tableNode.hasChildNodes() ){
+					tableStart = startTimer();
+					tableRows = fillTableFromXML( importDB, thisTable.getKey(), thisTable.getValue(), tableNode.getChildNodes(),
+							importMergeMode, importReport );
+					emitEvent( MetricsListener.EVENT_TABLE_IMPORTED, thisTable.getKey(), tableRows, tableStart );
+					rows += tableRows;
+				}
+			}
+
+			finishImport();
+		} catch (SQLException e) {
+			rval = IMPORT_RESULT_ERROR_INSERTING;
+		} finally {
+			// Automatically rolled back if not marked successful
+			if( started )
+				endImport( rows, transactionStart );
+		}
+
+		emitEvent( MetricsListener.EVENT_IMPORT, null, 0, start );
+		return rval;
+	}
+
+	/*	Function: importFromSnapshot
+	 * 	Description: This function will import a snapshot written by
+	 * 		exportToSnapshot into this database with the same rules as
+	 * 		importFromFile: only tables/columns that exist in the database are
+	 * 		imported, missing columns are inserted as null and everything
+	 * 		happens in one transaction.  Values are bound with the type they
+	 * 		were exported with.  If the file is not a snapshot, nothing is
+	 * 		touched and IMPORT_RESULT_NO_DATA is returned.  A snapshot
+	 * 		exported at another DATABASE_VERSION is not imported either
+	 * 		(IMPORT_RESULT_WRONG_VERSION); restore it into an app at that
+	 * 		version, or use a database file backup, which is migrated.
+	 * 	Inputs:
+	 * 		source (File) 		- the file to import from
+	 * 		append (boolean)	- append to database (false to clean it first)
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	public int importFromSnapshot( File source, boolean append ){
+		int rval;
+		FileInputStream in = null;
 
-			// get all data to import and do it
-			myRecords = dbTables.getElementsByTagName(thisTable).item(0).getChildNodes();
-			if( myRecords.getLength() > 0 ){
+		try {
+			in = new FileInputStream( source );
+			rval = importSnapshot( new SnapshotReader(in.getChannel(), source.length(), FILE_BUFFER_SIZE), append, source.length() );
+		} catch (FileNotFoundException e) {
+			rval = IMPORT_RESULT_FILE_NOT_FOUND;
+		} finally {
+			if( in != null ){
 				try {
-					fillTableFromXML( activeDB, thisTable, columnNames, myRecords );
-				} catch (Exception e) {
-					noErrors = false;
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
 				}
 			}
+		}
 
-			if( !noErrors )
-				break;
+		return rval;
+	}
+
+	/*	Function: importFromMappedSnapshot
+	 * 	Description: This function imports a snapshot the same way as
+	 * 		importFromSnapshot, but memory-maps the file instead of reading it
+	 * 		through a buffer.  The rows are walked directly in the mapped
+	 * 		region and only the values being bound are copied, so heap use
+	 * 		does not grow with the size of the snapshot.  Files too large to
+	 * 		map (2GB and up) are read through a buffer instead.
+	 * 	Inputs:
+	 * 		source (File) 		- the file to import from
+	 * 		append (boolean)	- append to database (false to clean it first)
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	public int importFromMappedSnapshot( File source, boolean append ){
+		int rval;
+		FileInputStream in = null;
+		FileChannel channel;
+		SnapshotReader reader;
+
+		try {
+			in = new FileInputStream( source );
+			channel = in.getChannel();
+			if( channel.size() > Integer.MAX_VALUE )
+				reader = new SnapshotReader( channel, channel.size(), FILE_BUFFER_SIZE );
+			else
+				reader = new SnapshotReader( channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) );
+			rval = importSnapshot( reader, append, source.length() );
+		} catch (FileNotFoundException e) {
+			rval = IMPORT_RESULT_FILE_NOT_FOUND;
+		} catch (IOException e) {
+			rval = IMPORT_RESULT_ERROR_READING;
+		} finally {
+			if( in != null ){
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 		}
-		tblCur.close();
 
-		// Automatically rolled back if not marked successful
-		if( noErrors )
-			activeDB.setTransactionSuccessful();
-		else
+		return rval;
+	}
+
+	/*	Function: importFromDatabaseFile
+	 * 	Description: This function will restore this database from a file
+	 * 		written by exportToDatabaseFile.  The whole database is replaced
+	 * 		and nothing of what was in it is kept.
+	 *
+	 * 		If the file has the same version as this database, it is copied
+	 * 		over the database file at disk speed.  The connection is closed
+	 * 		and reopened around the copy, so this can only be done when no
+	 * 		connection is leased and the connection pool is off.
+	 *
+	 * 		Otherwise (or when the connections are in use), a temporary copy
+	 * 		of the file is brought to DATABASE_VERSION with the usual
+	 * 		onUpgrade or onDowngrade, and its rows are imported into this
+	 * 		database through a snapshot, with the same rules and return codes
+	 * 		as importFromSnapshot.
+	 * 	Inputs:
+	 * 		source (File)	- the database file to restore
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	public int importFromDatabaseFile( File source ){
+		long start = startTimer();
+		int version;
+
+		try {
+			version = DatabaseFile.readUserVersion( source );
+			if( version < 0 )
+				return IMPORT_RESULT_ERROR_IN_FILE;
+
+			if( version == DATABASE_VERSION && replaceDatabaseFile(source) ){
+				emitEvent( MetricsListener.EVENT_IMPORT, null, source.length(), start );
+				return IMPORT_RESULT_SUCCESS;
+			}
+		} catch (FileNotFoundException e) {
+			return IMPORT_RESULT_FILE_NOT_FOUND;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return IMPORT_RESULT_ERROR_READING;
+		}
+
+		return importDatabaseRows( source );
+	}
+
+	/*	Function: replaceDatabaseFile
+	 * 	Description: This function copies a database file over this
+	 * 		database's file.  The copy is written next to the database first
+	 * 		and renamed over it, so a failed copy leaves the database as it
+	 * 		was.
+	 * 	Inputs:
+	 * 		source (File)	- the database file to restore
+	 * 	Output: boolean
+	 * 		True if the database was replaced
+	 * 		False if a connection is leased or the pool is on (nothing was
+	 * 			changed)
+	 * 	Throws: IOException if the file could not be copied
+	 */
+	private synchronized boolean replaceDatabaseFile( File source ) throws IOException{
+		File dbFile = databaseContext.getDatabasePath( DATABASE_NAME );
+		File temp = new File( dbFile.getPath() + ".restore" );
+
+		if( connectionLeases > 0 || connectionPool != null )
+			return false;
+
+		if( dbFile.getParentFile() != null )
+			dbFile.getParentFile().mkdirs();
+		try{
+			DatabaseFile.copy( source, temp );
+			closeConnection();
+			clearQueryCache();
+			DatabaseFile.deleteSidecars( dbFile );
+			if( !temp.renameTo(dbFile) )
+				throw new IOException( "Could not replace " + dbFile );
+		}finally{
+			temp.delete();
+		}
+
+		// reopen now if the connection is meant to stay open
+		if( persistentConnection )
+			useWritableDatabase();
+		return true;
+	}
+
+	/*	Function: importDatabaseRows
+	 * 	Description: This function imports the rows of a database file of
+	 * 		any version.  A temporary copy of the file is opened through a
+	 * 		helper with this schema and version, which migrates it with this
+	 * 		helper's onUpgrade and onDowngrade (so the app's overrides run),
+	 * 		then is exported to a temporary snapshot that is imported into
+	 * 		this database (cleaning it first).  The temporary files are
+	 * 		deleted.
+	 * 	Inputs:
+	 * 		source (File)	- the database file to restore
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	private int importDatabaseRows( File source ){
+		File tempDir = databaseContext.getCacheDir();
+		File copy = null;
+		File snapshot = null;
+		SuperSQLiteOpenHelper migrator = null;
+
+		try {
+			copy = File.createTempFile( "restore", ".db", tempDir );
+			snapshot = File.createTempFile( "restore", ".snapshot", tempDir );
+			DatabaseFile.copy( source, copy );
+
+			// opening the copy at this version runs this helper's onUpgrade or
+			//	onDowngrade, with the app's overrides
+			migrator = new SuperSQLiteOpenHelper( databaseContext, copy.getPath(), DATABASE_VERSION, schema, false ){
+				@Override
+				public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion){
+					SuperSQLiteOpenHelper.this.onUpgrade( db, oldVersion, newVersion );
+				}
+
+				@Override
+				public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion){
+					SuperSQLiteOpenHelper.this.onDowngrade( db, oldVersion, newVersion );
+				}
+			};
+			migrator.useWritableDatabase();
+			if( !migrator.exportToSnapshot(snapshot) )
+				return IMPORT_RESULT_ERROR_READING;
+			migrator.close();
+			migrator = null;
+
+			return importFromSnapshot( snapshot, false );
+		} catch (IOException e) {
+			e.printStackTrace();
+			return IMPORT_RESULT_ERROR_READING;
+		} catch (SQLException e) {
+			// the file could not be opened or migrated
+			e.printStackTrace();
+			return IMPORT_RESULT_ERROR_IN_FILE;
+		} finally {
+			if( migrator != null )
+				migrator.close();
+			if( copy != null )
+				DatabaseFile.delete( copy );
+			if( snapshot != null )
+				snapshot.delete();
+		}
+	}
+
+	/*	Function: importSnapshot
+	 * 	Description: This function imports the tables of a snapshot reader
+	 * 		for importFromSnapshot and importFromMappedSnapshot.
+	 * 	Inputs:
+	 * 		reader (SnapshotReader)	- the snapshot to import
+	 * 		append (boolean)		- append to database (false to clean it first)
+	 * 		size (long)				- size of the snapshot in bytes (for metrics)
+	 * 	Output: int
+	 * 		return code
+	 * 	Throws: None
+	 */
+	private int importSnapshot( SnapshotReader reader, boolean append, long size ){
+		int rval = IMPORT_RESULT_SUCCESS;
+		Map<String, String[]> tableColumns;
+		String thisTable;
+		boolean started = false;
+		long start = startTimer();
+		long transactionStart = 0;
+		long tableStart;
+		long rows = 0;
+		long tableRows;
+
+		try {
+			// nothing is touched until the header has been read
+			if( !reader.readHeader() )
+				return IMPORT_RESULT_NO_DATA;
+			if( reader.getSchemaVersion() != DATABASE_VERSION )
+				return IMPORT_RESULT_WRONG_VERSION;
+
+			// Start a database transaction
+			transactionStart = beginImport( append );
+			started = true;
+
+			// tables that do not exist in the database are read and skipped
+			tableColumns = getTableColumns( importDB );
+			for( int x = 0; x<reader.getTableCount(); ++x){
+				thisTable = reader.getTable(x);
+				tableStart = startTimer();
+				tableRows = fillTableFromSnapshot( importDB, thisTable, tableColumns.get(thisTable), reader, x,
+						importMergeMode, importReport );
+				if( tableColumns.containsKey(thisTable) ){
+					emitEvent( MetricsListener.EVENT_TABLE_IMPORTED, thisTable, tableRows, tableStart );
+					rows += tableRows;
+				}
+			}
+			reader.readTrailer();
+
+			finishImport();
+		} catch (SnapshotReader.FormatException e) {
+			rval = IMPORT_RESULT_ERROR_IN_FILE;
+		} catch (IOException e) {
+			rval = IMPORT_RESULT_ERROR_READING;
+		} catch (SQLException e) {
 			rval = IMPORT_RESULT_ERROR_INSERTING;
-		activeDB.endTransaction();
+		} finally {
+			// Automatically rolled back if not marked successful
+			if( started )
+				endImport( rows, transactionStart );
+		}
 
+		emitEvent( MetricsListener.EVENT_IMPORT, null, size, start );
 		return rval;
 	}
 
+	/*	Function: fillTableFromSnapshot
+	 * 	Description: This function will insert the rows of one snapshot
+	 * 		table.  Snapshot columns are matched to the table's columns once,
+	 * 		then every cell is bound by position with its stored type.  If the
+	 * 		table is not in the database its rows are read and skipped.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase) 	- the database to insert into
+	 * 		thisTable (String)		- the table to insert into
+	 * 		theseColumns (String[])	- the columns in the table (null to skip it)
+	 * 		reader (SnapshotReader)	- the snapshot, positioned on the table
+	 * 		index (int)				- position of the table in the snapshot
+	 * 		mergeMode (int)			- what to do with rows that collide
+	 * 		report (ImportReport)	- the report to add the counts to
+	 * 	Output: long
+	 * 		The number of records written
+	 * 	Throws: IOException if the data could not be read, SQLException if a
+	 * 		record could not be inserted
+	 */
+	private static long fillTableFromSnapshot(SQLiteDatabase db, String thisTable, String[] theseColumns,
+			SnapshotReader reader, int index, int mergeMode, ImportReport report) throws IOException{
+		String[] snapshotColumns = reader.getColumns( index );
+		int[] bindIndexes = new int[ snapshotColumns.length ];
+		BulkInserter inserter;
+
+		if( theseColumns == null ){
+			while( reader.nextRow() ){
+				for( int y = 0; y<bindIndexes.length; ++y){
+					reader.bindCell( null, 0 );
+				}
+			}
+			return 0;
+		}
+
+		inserter = new BulkInserter( db, thisTable, theseColumns, 0, mergeMode );
+		try{
+			for( int y = 0; y<snapshotColumns.length; ++y){
+				bindIndexes[y] = inserter.getBindIndex( snapshotColumns[y] );
+			}
+
+			while( reader.nextRow() ){
+				for( int y = 0; y<bindIndexes.length; ++y){
+					reader.bindCell( inserter, bindIndexes[y] );
+				}
+				inserter.insert();
+			}
+			return addToReport( report, inserter );
+		}finally{
+			inserter.close();
+		}
+	}
+
 	/*	Function: fillTableFromXML
 	 * 	Description: This function will insert data into a database. The
 	 * 		database to be inserted into, the table and columns in insert
-	 * 		into, and the data to insert.
+	 * 		into, and the data to insert.  All records go through a single
+	 * 		compiled statement and each record's children are walked once,
+	 * 		binding every known column by its position in the statement.
 	 * 	Inputs:
 	 * 		db (SQLiteDatabase) 	- the database to insert into
 	 * 		thisTable (String)		- the table to insert into
 	 * 		theseColumns (String[])	- the columns to insert into the table
 	 * 		myRecords (NodeList)	- the data to fill the table
+	 * 		mergeMode (int)			- what to do with rows that collide
+	 * 		report (ImportReport)	- the report to add the counts to
+	 * 	Output: long
+	 * 		The number of records written
+	 * 	Throws: SQLException if a record could not be inserted
+	 */
+	private static long fillTableFromXML(SQLiteDatabase db, String thisTable, String[] theseColumns, NodeList myRecords,
+			int mergeMode, ImportReport report){
+		BulkInserter inserter = new BulkInserter( db, thisTable, theseColumns, 0, mergeMode );
+		Node thisRecord;
+		int bindIndex;
+
+		try{
+			// each element in the nodelist is a single record
+			for (int x = 0; x < myRecords.getLength(); x++){
+				thisRecord = myRecords.item(x);
+				if( thisRecord.getNodeType() != Node.ELEMENT_NODE )
+					continue;
+
+				// bind each column present in the record
+				for( Node thisCol = thisRecord.getFirstChild(); thisCol != null; thisCol = thisCol.getNextSibling() ){
+					if( thisCol.getNodeType() == Node.ELEMENT_NODE ){
+						bindIndex = inserter.getBindIndex( thisCol.getNodeName() );
+						if( bindIndex > 0 )
+							inserter.bindString( bindIndex, getElementText(thisCol) );
+					}
+				}
+
+				inserter.insert();
+			}
+			return addToReport( report, inserter );
+		}finally{
+			inserter.close();
+		}
+	}
+
+	/*	Function: getElementText
+	 * 	Description: This function gets the text inside an element.  It is
+	 * 		used in place of getTextContent, which is not available on all
+	 * 		supported API levels.
+	 * 	Inputs:
+	 * 		element (Node)	- the element
+	 * 	Output: String
+	 * 		The text of the element ("" if it has none)
+	 * 	Throws: None
+	 */
+	private static String getElementText( Node element ){
+		Node child = element.getFirstChild();
+
+		// the usual case is a single text node
+		if( child == null )
+			return "";
+		if( child.getNextSibling() == null )
+			return (child.getNodeValue() == null)? "" : child.getNodeValue();
+
+		StringBuilder rval = new StringBuilder();
+		for( ; child != null; child = child.getNextSibling() ){
+			if( child.getNodeValue() != null )
+				rval.append( child.getNodeValue() );
+		}
+		return rval.toString();
+	}
+
+	/*	Function: fillTableFromParser
+	 * 	Description: This function will insert the records of one table from
+	 * 		a pull parser positioned on the table's start tag.  Records are
+	 * 		inserted one at a time as they are read.  Columns that are not in
+	 * 		the table are skipped and missing columns are inserted as null.
+	 * 		All records go through a single compiled statement.
+	 * 		When the function returns, the parser is on the table's end tag.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase) 	- the database to insert into
+	 * 		thisTable (String)		- the table to insert into
+	 * 		theseColumns (String[])	- the columns in the table
+	 * 		parser (XmlPullParser)	- the data to fill the table
+	 * 		mergeMode (int)			- what to do with rows that collide
+	 * 		report (ImportReport)	- the report to add the counts to
+	 * 	Output: long
+	 * 		The number of records written
+	 * 	Throws: XmlPullParserException or IOException if the data could not be
+	 * 		read, SQLException if a record could not be inserted
+	 */
+	private static long fillTableFromParser(SQLiteDatabase db, String thisTable, String[] theseColumns, XmlPullParser parser,
+			int mergeMode, ImportReport report) throws XmlPullParserException, IOException{
+		BulkInserter inserter = new BulkInserter( db, thisTable, theseColumns, 0, mergeMode );
+		int bindIndex;
+
+		try{
+			// each child of the table is a single record
+			while( parser.nextTag() == XmlPullParser.START_TAG ){
+				// each child of the record is a single column
+				while( parser.nextTag() == XmlPullParser.START_TAG ){
+					bindIndex = inserter.getBindIndex( parser.getName() );
+					if( bindIndex > 0 ){
+						inserter.bindString( bindIndex, parser.nextText() );
+					}else{
+						skipElement( parser );
+					}
+				}
+
+				inserter.insert();
+			}
+			return addToReport( report, inserter );
+		}finally{
+			inserter.close();
+		}
+	}
+
+	/*	Function: addToReport
+	 * 	Description: This function adds what an inserter did to a table to
+	 * 		the import report.
+	 * 	Inputs:
+	 * 		report (ImportReport)	- the report
+	 * 		inserter (BulkInserter)	- the inserter, after its last row
+	 * 	Output: long
+	 * 		The number of records written (inserted or updated)
+	 * 	Throws: None
+	 */
+	private static long addToReport( ImportReport report, BulkInserter inserter ){
+		report.add( inserter.getTable(), inserter.getRowsInserted(), inserter.getRowsUpdated(), inserter.getRowsSkipped() );
+		return inserter.getRowsInserted() + inserter.getRowsUpdated();
+	}
+
+	// How appending imports handle rows that collide with existing rows
+	private int mergeMode = MERGE_MODE_NONE;
+	// Merge mode and report of the running import
+	private int importMergeMode = MERGE_MODE_NONE;
+	private ImportReport importReport = null;
+	private boolean importSuccessful = false;
+	// Report of the last import that was committed
+	private ImportReport lastImportReport = null;
+
+	/*	Function: setMergeMode
+	 * 	Description: This function sets how imports that append handle
+	 * 		records that collide with a row already in the database (on the
+	 * 		primary key or a UNIQUE constraint).
+	 *
+	 * 		MERGE_MODE_NONE		- fail the import (the default)
+	 * 		MERGE_MODE_IGNORE	- keep the existing row and skip the record
+	 * 		MERGE_MODE_REPLACE	- replace the existing row with the record
+	 * 		MERGE_MODE_UPSERT	- update the existing row with the columns in
+	 * 							the record, found by the key it collided on,
+	 * 							and keep its other columns
+	 *
+	 * 		Each record is first looked up by its keys (a rowid in the record,
+	 * 		the primary key and each UNIQUE index) through compiled queries.
+	 * 		Only a record that collides is skipped, replaced or updated, so
+	 * 		the counts in getLastImportReport are exact; the others are
+	 * 		inserted as usual, and a record that breaks a NOT NULL, CHECK or
+	 * 		foreign key constraint still fails the import.  A collision on an
+	 * 		index with a WHERE clause or on an expression is not looked for
+	 * 		and fails the import too.  Imports that clean the database first
+	 * 		always use MERGE_MODE_NONE.
+	 * 	Inputs:
+	 * 		mode (int)	- one of the MERGE_MODE_* constants
+	 * 	Output: None
+	 * 	Throws: IllegalArgumentException if the mode is not valid
+	 */
+	public void setMergeMode( int mode ){
+		if( mode < MERGE_MODE_NONE || mode > MERGE_MODE_UPSERT )
+			throw new IllegalArgumentException( "Unknown merge mode " + mode );
+		mergeMode = mode;
+	}
+
+	// Returns how appending imports handle rows that collide
+	public int getMergeMode(){
+		return mergeMode;
+	}
+
+	// Returns what the last committed import did to each table (null if
+	//		no import has been committed)
+	public ImportReport getLastImportReport(){
+		return lastImportReport;
+	}
+
+	// True if imports run in bulk restore mode
+	private boolean bulkRestoreMode = false;
+	// Settings and indexes put aside by the running import in bulk restore mode
+	private BulkRestore activeRestore = null;
+	// True if the running import dropped the schema's non-unique indexes to create them at the end
+	private boolean importIndexesDeferred = false;
+	// The pool whose writer lock the running import holds (null if none)
+	private ConnectionPool importPool = null;
+	// The connection leased by the running import (null if none)
+	private SQLiteDatabase importDB = null;
+
+	/*	Function: setBulkRestoreMode
+	 * 	Description: This function turns bulk restore mode on or off for all
+	 * 		imports.  In bulk restore mode, an import first switches the
+	 * 		connection to settings made for loading (journal kept in memory
+	 * 		unless the database uses WAL, no syncs to disk, a 64MB page cache
+	 * 		and foreign keys off) and drops the non-unique indexes (UNIQUE
+	 * 		ones stay to catch or merge duplicates).  After the rows are
+	 * 		loaded, the indexes are created again in one pass and the foreign
+	 * 		keys are checked (if they were on) before the commit.  If anything
+	 * 		fails, the import is rolled back, which brings the indexes back,
+	 * 		and the settings are put back either way (if they cannot be, the
+	 * 		connection is closed, like close does, rather than kept).
+	 *
+	 * 		This makes large restores of indexed tables several times faster.
+	 * 		Without the journal on disk, a crash during the restore can
+	 * 		damage the database, so only use it when the restore would be
+	 * 		redone from the backup anyway.
+	 * 	Inputs:
+	 * 		bulk (boolean)	- true to turn bulk restore mode on
 	 * 	Output: None
 	 * 	Throws: None
 	 */
-	private void fillTableFromXML(SQLiteDatabase db, String thisTable, String[] theseColumns, NodeList myRecords){
-		Element thisRecord;
-		NodeList myCols;
-		ContentValues myValues;
+	public void setBulkRestoreMode( boolean bulk ){
+		bulkRestoreMode = bulk;
+	}
+
+	// Returns true if imports run in bulk restore mode
+	public boolean isBulkRestoreMode(){
+		return bulkRestoreMode;
+	}
+
+	/*	Function: beginImport
+	 * 	Description: This function leases the writable connection (see
+	 * 		acquireDatabase) and starts the transaction an import runs in.
+	 * 		The import must work on importDB, which stays open until
+	 * 		endImport releases it, whatever other threads do.  If append is false, the
+	 * 		database is cleaned inside the same transaction and the non-unique
+	 * 		indexes declared in the schema are dropped, to be created once
+	 * 		the rows are in (by finishImport).  UNIQUE indexes are kept, since
+	 * 		foreign keys may point at them and a duplicate should be caught
+	 * 		on the record that brings it.  In bulk restore mode, the bulk
+	 * 		settings are applied before the transaction and the non-unique
+	 * 		indexes are dropped inside it, appending or not.  The caller must
+	 * 		mark the transaction successful with finishImport and end it with
+	 * 		endImport.
+	 * 	Inputs:
+	 * 		append (boolean)	- append to database (false to clean it first)
+	 * 	Output: long
+	 * 		The start time of the transaction (for endImport)
+	 * 	Throws: SQLException if the import could not be started (nothing is
+	 * 		left open or leased)
+	 */
+	private long beginImport( boolean append ){
+		long rval;
+		BulkRestore restore;
+
+		importDB = acquireDatabase();
+		if( bulkRestoreMode ){
+			restore = new BulkRestore( importDB );
+			try{
+				restore.applySettings();
+			}catch( RuntimeException e ){
+				importDB = null;
+				releaseDatabase();
+				throw e;
+			}
+			activeRestore = restore;
+		}
 
-		// each element in the nodelist is a single record
-		for (int x = 0; x < myRecords.getLength(); x++){
-			thisRecord = (Element) myRecords.item(x);
-			myValues = new ContentValues();
+		importMergeMode = append? mergeMode : MERGE_MODE_NONE;
+		importReport = new ImportReport();
+		// results read while the import runs are not kept either
+		clearQueryCache();
+		rval = startTimer();
+		// parallel exports must not see the import half done
+		try{
+			importPool = lockPoolWriter();
+			importDB.beginTransaction();
+		}catch( RuntimeException e ){
+			unlockPoolWriter( importPool );
+			importPool = null;
+			restoreImportSettings();
+			importDB = null;
+			releaseDatabase();
+			throw e;
+		}
+		try{
+			if( !append )
+				emptyTables( importDB, true, false, null );
+			if( activeRestore != null ){
+				activeRestore.dropIndexes();
+			}else if( !append ){
+				// the tables are empty, so this costs nothing
+				for( CompiledSchema.Table thisTable : schema.getTables() ){
+					for( CompiledSchema.Index thisIndex : thisTable.getIndexesAt(DATABASE_VERSION) ){
+						if( !thisIndex.isUnique() )
+							importDB.execSQL( thisIndex.getDropSQL() );
+					}
+				}
+				importIndexesDeferred = true;
+			}
+		}catch( RuntimeException e ){
+			endImport( 0, rval );
+			throw e;
+		}
 
-			// get all values for each column in the column list
-			for (int y = 0; y < theseColumns.length; y++){
-				myCols = thisRecord.getChildNodes();
+		return rval;
+	}
 
-				// get the column from the data
-				myCols = thisRecord.getElementsByTagName( theseColumns[y] );
-				// was the column present
-				if( myCols.getLength() > 0 ){
-					myValues.put(	theseColumns[y],
-									myCols.item(y).getNodeValue());
+	/*	Function: finishImport
+	 * 	Description: This function marks the import transaction successful.
+	 * 		The indexes dropped by beginImport are created again first.  In
+	 * 		bulk restore mode, the foreign keys are checked too.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: SQLException if an index could not be created or a foreign
+	 * 		key is broken (the transaction is then not marked successful)
+	 */
+	private void finishImport(){
+		if( activeRestore != null )
+			activeRestore.rebuild();
+		if( importIndexesDeferred ){
+			for( CompiledSchema.Table thisTable : schema.getTables() ){
+				for( CompiledSchema.Index thisIndex : thisTable.getIndexesAt(DATABASE_VERSION) ){
+					if( !thisIndex.isUnique() )
+						importDB.execSQL( thisIndex.getCreateSQL() );
 				}
 			}
+			importIndexesDeferred = false;
+		}
+		importDB.setTransactionSuccessful();
+		importSuccessful = true;
+	}
+
+	/*	Function: endImport
+	 * 	Description: This function ends the transaction started by
+	 * 		beginImport.  It is committed if it was marked successful and
+	 * 		rolled back otherwise.  A committed import's report becomes the
+	 * 		last import report.  In bulk restore mode, the settings are then
+	 * 		put back.  The connection's lease is released last.
+	 * 	Inputs:
+	 * 		rows (long)		- the number of rows written in the transaction
+	 * 		start (long)	- the start time returned by beginImport
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	private void endImport( long rows, long start ){
+		try{
+			importDB.endTransaction();
+		}finally{
+			unlockPoolWriter( importPool );
+			importPool = null;
+		}
+		clearQueryCache();
+		if( importSuccessful )
+			lastImportReport = importReport;
+		importSuccessful = false;
+		importIndexesDeferred = false;
+		importReport = null;
+		restoreImportSettings();
+		importDB = null;
+		releaseDatabase();
+		emitEvent( MetricsListener.EVENT_TRANSACTION, null, rows, start );
+	}
+
+	/*	Function: restoreImportSettings
+	 * 	Description: This function puts back the settings changed for the
+	 * 		running import in bulk restore mode.  If one cannot be put back,
+	 * 		the connection is closed (once no leases are held) instead of
+	 * 		being left with it, since the settings only last as long as the
+	 * 		connection; the next call opens a new one.
+	 * 	Inputs: None
+	 * 	Output: None
+	 * 	Throws: None
+	 */
+	private void restoreImportSettings(){
+		if( activeRestore == null )
+			return;
+		try{
+			activeRestore.restoreSettings();
+		}catch( SQLException e ){
+			close();
+		}finally{
+			activeRestore = null;
+		}
+	}
+
+	/*	Function: getTableColumns
+	 * 	Description: This function gets every data table in the database with
+	 * 		its column names.
+	 * 	Inputs:
+	 * 		db (SQLiteDatabase)	- the database
+	 * 	Output: Map<String, String[]>
+	 * 		The column names of each table, keyed by table name
+	 * 	Throws: SQLException if the tables could not be read
+	 */
+	private static Map<String, String[]> getTableColumns( SQLiteDatabase db ){
+		Map<String, String[]> rval = new LinkedHashMap<String, String[]>();
+		Cursor tblCur = db.rawQuery( TABLE_LIST_QUERY, null );
+		Cursor thisCur;
+		String thisTable;
+
+		try{
+			while (tblCur.moveToNext()){
+				thisTable = tblCur.getString(0);
+				thisCur = db.rawQuery( "SELECT * FROM " + thisTable + " WHERE 0", null );
+				rval.put( thisTable, thisCur.getColumnNames() );
+				thisCur.close();
+			}
+		}finally{
+			tblCur.close();
+		}
+
+		return rval;
+	}
+
+	/*	Function: skipToTag
+	 * 	Description: This function moves a pull parser forward to the next
+	 * 		start tag with the given name.
+	 * 	Inputs:
+	 * 		parser (XmlPullParser)	- the parser
+	 * 		name (String)			- the tag to find
+	 * 	Output: boolean
+	 * 		True if the tag was found
+	 * 		False if the end of the document was reached
+	 * 	Throws: XmlPullParserException or IOException if the data could not be read
+	 */
+	static boolean skipToTag( XmlPullParser parser, String name )
+			throws XmlPullParserException, IOException{
+		int event = parser.getEventType();
+		while( event != XmlPullParser.END_DOCUMENT ){
+			if( event == XmlPullParser.START_TAG && name.equals(parser.getName()) )
+				return true;
+			event = parser.next();
+		}
+		return false;
+	}
 
-			db.insert( thisTable, null, myValues );
+	/*	Function: skipElement
+	 * 	Description: This function skips the element a pull parser is on,
+	 * 		including all of its children.  The parser must be on a start
+	 * 		tag and is left on the matching end tag.
+	 * 	Inputs:
+	 * 		parser (XmlPullParser)	- the parser
+	 * 	Output: None
+	 * 	Throws: XmlPullParserException or IOException if the data could not be read
+	 */
+	static void skipElement( XmlPullParser parser )
+			throws XmlPullParserException, IOException{
+		int depth = 1;
+		while( depth > 0 ){
+			switch( parser.next() ){
+			case XmlPullParser.START_TAG:
+				++depth;
+				break;
+			case XmlPullParser.END_TAG:
+				--depth;
+				break;
+			case XmlPullParser.END_DOCUMENT:
+				throw new XmlPullParserException( "Unexpected end of document" );
+			}
 		}
 	}
 	// START Import/Export functions